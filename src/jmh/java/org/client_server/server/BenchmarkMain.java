@@ -0,0 +1,30 @@
+package org.client_server.server;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Main của benchmarks.jar: nhận tham số như org.openjdk.jmh.Main và luôn bật profiler GC
+ * (gc.alloc.rate.norm = số byte cấp phát mỗi op, gc.count...) để mọi thay đổi hiệu năng đều có số đo cấp phát đi kèm.
+ *   java -jar target/benchmarks.jar [regex benchmark] [tham số JMH, ví dụ -f 1 -wi 3 -i 5]
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    // các handler log INFO mỗi request, in ra console sẽ lấn hết thời gian đo
+    static void quietLogs() {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+}
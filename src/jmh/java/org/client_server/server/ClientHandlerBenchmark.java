@@ -0,0 +1,112 @@
+package org.client_server.server;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.client_server.util.WireFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Toàn bộ đường xử lý của ClientHandler với repository giả (không MySQL):
+ * - dispatch*: handleRequest trực tiếp trên 1 frame đã đọc, gồm giải mã, kiểm soát tải, metrics, ghi response
+ * - pipedFind: 1 vòng request/response qua FrameReader/FrameWriter trên PipedInputStream/PipedOutputStream,
+ *   handler chạy vòng serve() trên thread riêng như với 1 socket thật
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClientHandlerBenchmark {
+    private static final int STUDENTS = 1000;
+
+    private final ResponseWriteBenchmark.CountingOutputStream sink = new ResponseWriteBenchmark.CountingOutputStream();
+    private final FrameWriter writer = new FrameWriter(sink);
+    private ClientHandler handler;
+    private byte[] findFrame;
+    private byte[] pageFrame;
+    private byte[] insertFrame;
+
+    private Thread serveThread;
+    private OutputStream toServer;
+    private BufferedReader fromServer;
+    private byte[] findLine;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkMain.quietLogs();
+        StubStudentRepository repository = new StubStudentRepository(STUDENTS);
+        handler = new ClientHandler("bench", "127.0.0.1", repository, new StudentStats(repository));
+
+        WireFormat json = WireFormat.JSON;
+        ObjectNode find = json.mapper().createObjectNode().put("action", "FIND");
+        find.putObject("payload").put("id", 42);
+        findFrame = json.mapper().writeValueAsBytes(find);
+
+        ObjectNode page = json.mapper().createObjectNode().put("action", "LIST");
+        page.putObject("payload").put("afterId", 0).put("limit", 100);
+        pageFrame = json.mapper().writeValueAsBytes(page);
+
+        ObjectNode insert = json.mapper().createObjectNode().put("action", "INSERT");
+        ObjectNode student = json.mapper().valueToTree(StubStudentRepository.student(1));
+        student.remove("id");
+        insert.set("payload", student);
+        insertFrame = json.mapper().writeValueAsBytes(insert);
+
+        // handler riêng cho vòng qua pipe, buffer pipe đủ lớn cho response FIND
+        ClientHandler pipedHandler = new ClientHandler("bench-piped", "127.0.0.1", repository, new StudentStats(repository));
+        PipedOutputStream clientOut = new PipedOutputStream();
+        PipedInputStream serverIn = new PipedInputStream(clientOut, 64 * 1024);
+        PipedOutputStream serverOut = new PipedOutputStream();
+        PipedInputStream clientIn = new PipedInputStream(serverOut, 64 * 1024);
+        serveThread = new Thread(() -> {
+            try (serverIn; OutputStream out = new BufferedOutputStream(serverOut)) {
+                pipedHandler.serve(serverIn, out);
+            } catch (IOException ignored) {
+                // pipe bị đóng khi tear down
+            }
+        }, "bench-serve");
+        serveThread.setDaemon(true);
+        serveThread.start();
+        toServer = clientOut;
+        fromServer = new BufferedReader(new InputStreamReader(clientIn, StandardCharsets.UTF_8));
+        findLine = (new String(findFrame, StandardCharsets.UTF_8) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        toServer.write("{\"action\":\"QUIT\"}\n".getBytes(StandardCharsets.UTF_8));
+        toServer.flush();
+        fromServer.readLine();
+        toServer.close();
+        serveThread.join(1000);
+    }
+
+    @Benchmark
+    public long dispatchFind() throws IOException {
+        handler.handleRequest(findFrame, writer);
+        return sink.count;
+    }
+
+    @Benchmark
+    public long dispatchListPage100() throws IOException {
+        handler.handleRequest(pageFrame, writer);
+        return sink.count;
+    }
+
+    @Benchmark
+    public long dispatchInsert() throws IOException {
+        handler.handleRequest(insertFrame, writer);
+        return sink.count;
+    }
+
+    @Benchmark
+    public String pipedFind() throws IOException {
+        toServer.write(findLine);
+        toServer.flush();
+        return fromServer.readLine();
+    }
+}
@@ -0,0 +1,84 @@
+package org.client_server.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.client_server.model.Student;
+import org.client_server.util.WireFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Giải mã 1 frame request thành Request (parse + ánh xạ payload sang Student + kiểm tra).
+ * treeInsert là cách cũ (readTree rồi treeToValue payload) để so sánh với RequestDecoder đọc thẳng từ parser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestDecodeBenchmark {
+
+    @Param({"JSON", "SMILE"})
+    WireFormat format;
+
+    private final RequestDecoder decoder = new RequestDecoder();
+    private byte[] insertFrame;
+    private byte[] findFrame;
+    private byte[] batchFrame;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectNode insert = request("INSERT");
+        insert.set("payload", payload(StubStudentRepository.student(1)));
+        insertFrame = format.mapper().writeValueAsBytes(insert);
+
+        ObjectNode find = request("FIND");
+        find.putObject("payload").put("id", 42);
+        findFrame = format.mapper().writeValueAsBytes(find);
+
+        ObjectNode batch = request("BATCH_INSERT");
+        ArrayNode students = batch.putObject("payload").putArray("students");
+        for (int i = 1; i <= 100; i++) {
+            students.add(payload(StubStudentRepository.student(i)));
+        }
+        batchFrame = format.mapper().writeValueAsBytes(batch);
+    }
+
+    private ObjectNode request(String action) {
+        ObjectNode request = format.mapper().createObjectNode();
+        request.put("action", action);
+        request.put("requestId", 7);
+        return request;
+    }
+
+    private ObjectNode payload(Student student) {
+        ObjectNode payload = format.mapper().valueToTree(student);
+        payload.remove("id");
+        return payload;
+    }
+
+    @Benchmark
+    public Request decodeInsert() throws IOException {
+        return decoder.decode(insertFrame, format).request();
+    }
+
+    @Benchmark
+    public Request decodeFind() throws IOException {
+        return decoder.decode(findFrame, format).request();
+    }
+
+    @Benchmark
+    public Request decodeBatch100() throws IOException {
+        return decoder.decode(batchFrame, format).request();
+    }
+
+    @Benchmark
+    public Student treeInsert() throws IOException {
+        JsonNode request = format.mapper().readTree(insertFrame);
+        return format.mapper().treeToValue(request.get("payload"), Student.class);
+    }
+}
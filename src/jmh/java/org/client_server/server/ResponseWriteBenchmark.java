@@ -0,0 +1,71 @@
+package org.client_server.server;
+
+import org.client_server.model.Student;
+import org.client_server.util.WireFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ghi response qua FrameWriter như handleFind (1 student) và handleList (cả danh sách),
+ * không có I/O thật: byte được ghi vào 1 OutputStream chỉ đếm số byte.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseWriteBenchmark {
+
+    @Param({"JSON", "SMILE"})
+    WireFormat format;
+
+    @Param({"100", "1000"})
+    int rows;
+
+    private final CountingOutputStream out = new CountingOutputStream();
+    private FrameWriter writer;
+    private Student student;
+    private List<Student> students;
+
+    @Setup
+    public void setUp() {
+        writer = new FrameWriter(out);
+        writer.setFormat(format);
+        student = StubStudentRepository.student(1);
+        students = new StubStudentRepository(rows).findAll();
+    }
+
+    @Benchmark
+    public long writeFind() throws IOException {
+        writer.startData(student);
+        writer.endResponse(null);
+        return out.count;
+    }
+
+    @Benchmark
+    public long writeList() throws IOException {
+        writer.startData(students);
+        writer.endResponse(null);
+        return out.count;
+    }
+
+    // OutputStream giả, cộng số byte để JIT không bỏ được phần ghi
+    static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.client_server.server;
+
+import org.client_server.model.Sex;
+import org.client_server.model.Student;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Repository giả cho benchmark: dữ liệu cố định trong bộ nhớ, ghi không lưu gì,
+ * để số đo chỉ còn chi phí giải mã, xử lý và ghi response của server.
+ */
+final class StubStudentRepository implements StudentRepository {
+    private final List<Student> students;
+    private final AtomicLong nextId = new AtomicLong();
+
+    StubStudentRepository(int size) {
+        students = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            students.add(student(i));
+        }
+        nextId.set(size);
+    }
+
+    static Student student(long id) {
+        return Student.builder()
+                .id(id)
+                .name("Nguyễn Văn " + id)
+                .dob(LocalDate.of(2000, 1, 1).plusDays(id % 3650))
+                .gpa((id % 400) / 100.0)
+                .sex(id % 2 == 0 ? Sex.MALE : Sex.FEMALE)
+                .major("Công nghệ thông tin")
+                .build();
+    }
+
+    // bản sao như các engine thật
+    private static Student copy(Student s) {
+        return s.toBuilder().build();
+    }
+
+    @Override
+    public long insert(Student student) {
+        return nextId.incrementAndGet();
+    }
+
+    @Override
+    public List<BatchRowResult> insertAll(List<Student> students) {
+        List<BatchRowResult> results = new ArrayList<>(students.size());
+        for (int i = 0; i < students.size(); i++) {
+            results.add(new BatchRowResult(nextId.incrementAndGet(), null));
+        }
+        return results;
+    }
+
+    @Override
+    public List<BatchRowResult> upsertAll(List<Student> students) {
+        List<BatchRowResult> results = new ArrayList<>(students.size());
+        for (Student student : students) {
+            results.add(new BatchRowResult(student.getId(), null));
+        }
+        return results;
+    }
+
+    @Override
+    public List<Student> findAll() {
+        List<Student> all = new ArrayList<>(students.size());
+        for (Student student : students) {
+            all.add(copy(student));
+        }
+        return all;
+    }
+
+    @Override
+    public long streamAll(RowConsumer consumer) throws IOException {
+        for (Student student : students) {
+            consumer.accept(copy(student));
+        }
+        return students.size();
+    }
+
+    @Override
+    public List<Student> findPage(long afterId, int limit) {
+        List<Student> page = new ArrayList<>(limit);
+        for (int i = (int) Math.max(0, afterId); i < students.size() && page.size() < limit; i++) {
+            page.add(copy(students.get(i)));
+        }
+        return page;
+    }
+
+    @Override
+    public List<Student> query(StudentFilter filter, long afterId, int limit) {
+        List<Student> page = new ArrayList<>(limit);
+        for (int i = (int) Math.max(0, afterId); i < students.size() && page.size() < limit; i++) {
+            if (filter.test(students.get(i))) page.add(copy(students.get(i)));
+        }
+        return page;
+    }
+
+    @Override
+    public boolean update(Student student) {
+        return student.getId() >= 1 && student.getId() <= students.size();
+    }
+
+    @Override
+    public boolean delete(long id) {
+        return id >= 1 && id <= students.size();
+    }
+
+    @Override
+    public Optional<Student> findById(long id) {
+        if (id < 1 || id > students.size()) return Optional.empty();
+        return Optional.of(copy(students.get((int) id - 1)));
+    }
+
+    @Override
+    public List<Student> findByIds(long[] ids) {
+        List<Student> found = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            findById(id).ifPresent(found::add);
+        }
+        return found;
+    }
+
+    @Override
+    public List<Student> search(String query, int limit) {
+        return findPage(0, limit);
+    }
+}
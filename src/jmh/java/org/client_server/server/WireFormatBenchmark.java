@@ -0,0 +1,49 @@
+package org.client_server.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.client_server.util.WireFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * So sánh JSON text và Smile (nhị phân) trên response LIST dạng cây: encode và decode cả response.
+ * Kích thước response mỗi format xem ở gc.alloc.rate.norm của encode (mảng byte kết quả chiếm phần lớn).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WireFormatBenchmark {
+
+    @Param({"JSON", "SMILE"})
+    WireFormat format;
+
+    @Param({"100", "1000"})
+    int rows;
+
+    private ObjectNode response;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        response = format.mapper().createObjectNode();
+        response.put("status", "OK");
+        response.set("data", format.mapper().valueToTree(new StubStudentRepository(rows).findAll()));
+        encoded = format.mapper().writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return format.mapper().writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public JsonNode decode() throws IOException {
+        return format.mapper().readTree(encoded);
+    }
+}
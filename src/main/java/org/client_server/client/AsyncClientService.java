@@ -0,0 +1,239 @@
+package org.client_server.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.extern.slf4j.Slf4j;
+import org.client_server.model.Student;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Client bất đồng bộ: nhiều request cùng lúc trên 1 socket (pipelining).
+ * Mỗi request mang 1 requestId, server gửi lại requestId trong response để ghép đúng future.
+ * An toàn khi nhiều thread cùng gọi.
+ *
+ * Sau SUBSCRIBE, các sự kiện server đẩy tới (CHANGE, RESYNC, không có requestId) được giao cho listener trên reader thread.
+ *
+ * Không hỗ trợ LIST dạng stream, dùng ClientService.listStream cho trường hợp đó.
+ */
+@Slf4j
+public class AsyncClientService implements Closeable {
+    private static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private final ObjectMapper mapper;
+    private final Socket socket;
+    private final BufferedWriter writer;
+    private final BufferedReader reader;
+    private final Thread readerThread;
+    private final Semaphore inFlight;// giới hạn số request chưa có response
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final Map<Long, CompletableFuture<ObjectNode>> pending = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> disconnected = new CompletableFuture<>();
+    private volatile Consumer<ObjectNode> pushListener;
+    private volatile boolean closed;
+
+    public AsyncClientService(String host, int port) throws IOException {
+        this(host, port, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public AsyncClientService(String host, int port, int maxInFlight) throws IOException {
+        this.mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.socket = new Socket(host, port);
+        this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+        this.readerThread = new Thread(this::readLoop, "async-client-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Gửi 1 request, future hoàn thành khi có response cùng requestId.
+     * Khi đã có đủ maxInFlight request đang chờ thì thread gọi sẽ đợi.
+     */
+    public CompletableFuture<ObjectNode> send(String action, JsonNode payload) {
+        CompletableFuture<ObjectNode> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IOException("Client đã đóng"));
+            return future;
+        }
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        long requestId = nextRequestId.incrementAndGet();
+        pending.put(requestId, future);
+        future.whenComplete((response, error) -> inFlight.release());
+        if (closed && pending.remove(requestId) != null) {
+            // reader thread đã dừng trong lúc đăng ký
+            future.completeExceptionally(new IOException("Client đã đóng"));
+            return future;
+        }
+
+        ObjectNode request = mapper.createObjectNode();
+        request.put("action", action.toUpperCase());
+        request.put("requestId", requestId);
+        if (payload != null) {
+            request.set("payload", payload);
+        }
+        try {
+            String line = mapper.writeValueAsString(request);
+            synchronized (writer) {
+                writer.write(line);
+                writer.write("\n");
+                writer.flush();
+            }
+        } catch (IOException e) {
+            if (pending.remove(requestId) != null) {
+                future.completeExceptionally(e);
+            }
+        }
+        return future;
+    }
+
+    //Các api cho client
+    public CompletableFuture<ObjectNode> insert(Student student) {
+        return send("INSERT", mapper.valueToTree(student));
+    }
+
+    public CompletableFuture<ObjectNode> insertAll(List<Student> students) {
+        ObjectNode payload = mapper.createObjectNode();
+        payload.set("students", mapper.valueToTree(students));
+        return send("BATCH_INSERT", payload);
+    }
+
+    public CompletableFuture<ObjectNode> find(long id) {
+        return send("FIND", mapper.createObjectNode().put("id", id));
+    }
+
+    public CompletableFuture<ObjectNode> list() {
+        return send("LIST", null);
+    }
+
+    public CompletableFuture<ObjectNode> listPage(long afterId, int limit) {
+        return send("LIST", mapper.createObjectNode().put("afterId", afterId).put("limit", limit));
+    }
+
+    public CompletableFuture<ObjectNode> search(String query, int limit) {
+        return send("SEARCH", mapper.createObjectNode().put("query", query).put("limit", limit));
+    }
+
+    public CompletableFuture<ObjectNode> changesSince(long since, long epoch) {
+        return send("CHANGES_SINCE", mapper.createObjectNode().put("since", since).put("epoch", epoch));
+    }
+
+    /**
+     * Nhận thay đổi khớp filter (major null là mọi major, toId null là không giới hạn).
+     * Response có "version","epoch" như CHANGES_SINCE, sau đó listener nhận {"type":"CHANGE","op":"UPSERT"|"DELETE",...}
+     * theo thứ tự version, hoặc {"type":"RESYNC"} khi đã bị bỏ sự kiện. listener chạy trên reader thread, không được chặn lâu.
+     */
+    public CompletableFuture<ObjectNode> subscribe(String major, long fromId, Long toId, Consumer<ObjectNode> listener) {
+        pushListener = listener;
+        ObjectNode payload = mapper.createObjectNode().put("fromId", fromId);
+        if (major != null) payload.put("major", major);
+        if (toId != null) payload.put("toId", toId);
+        return send("SUBSCRIBE", payload);
+    }
+
+    public CompletableFuture<ObjectNode> unsubscribe() {
+        return send("UNSUBSCRIBE", null).whenComplete((response, error) -> pushListener = null);
+    }
+
+    // hoàn thành khi kết nối đóng (server đóng, lỗi mạng hoặc close())
+    public CompletableFuture<Void> disconnected() {
+        return disconnected;
+    }
+
+    public CompletableFuture<ObjectNode> stats() {
+        return send("STATS", null);
+    }
+
+    public CompletableFuture<ObjectNode> metrics() {
+        return send("METRICS", null);
+    }
+
+    // keepalive, gửi định kỳ ngắn hơn server.idleTimeoutMs khi không có request nào khác
+    public CompletableFuture<ObjectNode> ping() {
+        return send("PING", null);
+    }
+
+    public CompletableFuture<ObjectNode> update(Student student) {
+        return send("UPDATE", mapper.valueToTree(student));
+    }
+
+    public CompletableFuture<ObjectNode> delete(long id) {
+        return send("DELETE", mapper.createObjectNode().put("id", id));
+    }
+
+    public Student toStudent(JsonNode node) throws IOException {
+        return mapper.treeToValue(node, Student.class);
+    }
+
+    private void readLoop() {
+        IOException failure = null;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ObjectNode response = (ObjectNode) mapper.readTree(line);
+                // chỉ dòng có "status" mới là response hoàn chỉnh, còn lại là sự kiện server đẩy tới
+                if (!response.has("status")) {
+                    Consumer<ObjectNode> listener = pushListener;
+                    if (listener != null) {
+                        try {
+                            listener.accept(response);
+                        } catch (RuntimeException e) {
+                            log.warn("Lỗi khi xử lý sự kiện {}", line, e);
+                        }
+                    }
+                    continue;
+                }
+
+                CompletableFuture<ObjectNode> future = pending.remove(response.path("requestId").asLong(-1));
+                if (future != null) {
+                    future.complete(response);
+                } else {
+                    log.warn("Response không khớp request nào: {}", line);
+                }
+            }
+            failure = new IOException("Server đóng kết nối");
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            closed = true;
+            IOException cause = failure != null ? failure : new IOException("Server đóng kết nối");
+            pending.values().forEach(f -> f.completeExceptionally(cause));
+            pending.clear();
+            disconnected.complete(null);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        socket.close();
+        try {
+            readerThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.client_server.client;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Giữ 1 kết nối SUBSCRIBE riêng và giao các sự kiện thay đổi server đẩy tới cho listener, thay cho việc hỏi lại định kỳ.
+ * - PING định kỳ (ngắn hơn server.idleTimeoutMs) để server không đóng kết nối vì không có request
+ * - Mất kết nối thì thử lại sau RETRY_MS, đăng ký lại được thì listener nhận 1 {"type":"RESYNC"}
+ *   vì các sự kiện trong lúc mất kết nối đã bị lỡ
+ * listener chạy trên reader thread của kết nối (hoặc thread kết nối lại), không được chặn lâu.
+ */
+@Slf4j
+public class ChangeSubscription implements Closeable {
+    private static final long PING_INTERVAL_MS = 20_000;
+    private static final long RETRY_MS = 2_000;
+    private static final long REQUEST_TIMEOUT_MS = 5_000;
+
+    private final String host;
+    private final int port;
+    private final String major;
+    private final long fromId;
+    private final Long toId;
+    private final Consumer<ObjectNode> listener;
+    private final ScheduledExecutorService scheduler;
+    private volatile AsyncClientService client;
+    private volatile boolean closed;
+
+    /**
+     * @param major null là mọi major
+     * @param toId  null là không giới hạn
+     * @throws IOException không kết nối hoặc không đăng ký được lần đầu
+     */
+    public ChangeSubscription(String host, int port, String major, long fromId, Long toId,
+                              Consumer<ObjectNode> listener) throws IOException {
+        this.host = host;
+        this.port = port;
+        this.major = major;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.listener = listener;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "change-subscription");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            connect();
+        } catch (IOException e) {
+            scheduler.shutdownNow();
+            throw e;
+        }
+        scheduler.scheduleWithFixedDelay(this::ping, PING_INTERVAL_MS, PING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // false trong lúc mất kết nối, khi đó sự kiện không tới và người dùng phải tự cập nhật
+    public boolean isConnected() {
+        AsyncClientService current = client;
+        return !closed && current != null && !current.disconnected().isDone();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        AsyncClientService current = client;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.debug("Lỗi khi đóng kết nối SUBSCRIBE", e);
+            }
+        }
+    }
+
+    private void connect() throws IOException {
+        AsyncClientService created = new AsyncClientService(host, port);
+        try {
+            ObjectNode response = created.subscribe(major, fromId, toId, listener)
+                    .get(REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (!"OK".equals(response.path("status").asText())) {
+                throw new IOException("Không thể SUBSCRIBE: " + response.path("message").asText());
+            }
+        } catch (IOException e) {
+            created.close();
+            throw e;
+        } catch (InterruptedException e) {
+            created.close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Bị ngắt khi chờ SUBSCRIBE");
+        } catch (ExecutionException | TimeoutException e) {
+            created.close();
+            throw new IOException("Không thể SUBSCRIBE tới " + host + ":" + port, e);
+        }
+        client = created;
+        created.disconnected().thenRun(this::scheduleReconnect);
+    }
+
+    private void scheduleReconnect() {
+        if (closed) return;
+        log.warn("Mất kết nối SUBSCRIBE tới {}:{}, thử lại sau {} ms", host, port, RETRY_MS);
+        try {
+            scheduler.schedule(this::reconnect, RETRY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // đã close()
+        }
+    }
+
+    private void reconnect() {
+        if (closed) return;
+        try {
+            connect();
+            log.info("Đã SUBSCRIBE lại tới {}:{}", host, port);
+            listener.accept(JsonNodeFactory.instance.objectNode().put("type", "RESYNC"));
+        } catch (IOException e) {
+            log.debug("Chưa kết nối lại được: {}", e.toString());
+            scheduleReconnect();
+        }
+    }
+
+    private void ping() {
+        AsyncClientService current = client;
+        if (current != null && !current.disconnected().isDone()) {
+            current.ping();// lỗi thì reader thread thấy kết nối hỏng và kết nối lại
+        }
+    }
+}
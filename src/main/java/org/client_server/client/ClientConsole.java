@@ -29,6 +29,10 @@ public class ClientConsole {
                         + "\nINSERT : Ghi thêm sinh viên vào dữ liệu"
                         + "\nFIND : Tìm kiếm và hiển thị một sinh viên"
                         + "\nLIST : Hiển thị danh sách tất cả các sinh viên"
+                        + "\nSEARCH : Tìm sinh viên theo tên hoặc ngành học"
+                        + "\nSTATS : Thống kê GPA theo ngành học và giới tính"
+                        + "\nMETRICS : Số liệu vận hành của server (số request, độ trễ, lỗi...)"
+                        + "\nPING : Kiểm tra kết nối tới server"
                         + "\nQUIT : Thoát khỏi chương trình"
                         + "\nHiện tại chương trình chỉ hỗ trợ các chức năng trên.");
 
@@ -47,6 +51,19 @@ public class ClientConsole {
                     case "LIST":
                         printResponse(service.list());
                         break;
+                    case "SEARCH":
+                        System.out.println("Nhập tên hoặc ngành cần tìm (có dấu hoặc không dấu): ");
+                        printResponse(service.search(scanner.nextLine().trim(), 20));
+                        break;
+                    case "STATS":
+                        System.out.println(service.stats().toPrettyString());
+                        break;
+                    case "METRICS":
+                        System.out.println(service.metrics().toPrettyString());
+                        break;
+                    case "PING":
+                        printResponse(service.ping());
+                        break;
                     case "QUIT":
                         printResponse(service.quit());
                         return;
@@ -6,19 +6,33 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.client_server.model.Sex;
 import org.client_server.model.Student;
+import org.client_server.util.WireFormat;
 
 import java.io.*;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class ClientService implements Closeable {
+    // server đóng kết nối không có request quá server.idleTimeoutMs: rảnh quá mốc này thì PING trước khi gửi
+    private static final long VALIDATE_AFTER_IDLE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
     private final int port;
     private final String host;
     private final ObjectMapper mapper;
     private Socket socket;
     private BufferedWriter writer;
     private BufferedReader reader;
+    // sau HELLO định dạng nhị phân thì đọc/ghi frame có độ dài qua 2 stream dưới
+    private WireFormat format = WireFormat.JSON;
+    private DataOutputStream binaryOut;
+    private DataInputStream binaryIn;
+    private long lastUsedNanos;
 
     public ClientService(String host, int port) throws IOException {
         this.port = port;
@@ -33,10 +47,46 @@ public class ClientService implements Closeable {
         this.socket = new Socket(host, port);
         this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
         this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.lastUsedNanos = System.nanoTime();
+    }
+
+    // kết nối mới rồi thỏa thuận lại định dạng đang dùng
+    private void reconnect() throws IOException {
+        WireFormat previous = format;
+        try {
+            close();
+        } catch (IOException ignored) {
+        }
+        format = WireFormat.JSON;
+        binaryOut = null;
+        binaryIn = null;
+        connect();
+        if (previous != WireFormat.JSON) {
+            hello(previous);
+        }
+    }
+
+    /**
+     * Kết nối rảnh lâu có thể đã bị server đóng vì idle: PING trước, không có PONG thì kết nối lại.
+     * Chỉ PING (không lặp lại request thật) nên request ghi dữ liệu không bao giờ bị gửi 2 lần.
+     */
+    private void validateIfIdle() throws IOException {
+        if (System.nanoTime() - lastUsedNanos < VALIDATE_AFTER_IDLE_NANOS) return;
+        try {
+            writeRequest("PING", null);
+            readResponse();
+        } catch (IOException e) {
+            reconnect();
+        }
     }
 
     //Gửi yêu cầu
     private void sendRequest(String action, JsonNode payload) throws IOException {
+        validateIfIdle();
+        writeRequest(action, payload);
+    }
+
+    private void writeRequest(String action, JsonNode payload) throws IOException {
         ObjectNode request = mapper.createObjectNode();
         request.put("action", action.toUpperCase());
 
@@ -44,6 +94,13 @@ public class ClientService implements Closeable {
             request.set("payload", payload);
         }
 
+        if (format.isBinary()) {
+            byte[] frame = format.mapper().writeValueAsBytes(request);
+            binaryOut.writeInt(frame.length);
+            binaryOut.write(frame);
+            binaryOut.flush();
+            return;
+        }
         writer.write(mapper.writeValueAsString(request));
         writer.write("\n");
         writer.flush();
@@ -51,19 +108,66 @@ public class ClientService implements Closeable {
 
     //Nhận phản hồi từ server
     private ObjectNode readResponse () throws IOException {
+        if (format.isBinary()) {
+            int length;
+            try {
+                length = binaryIn.readInt();
+            } catch (EOFException e) {
+                throw new IOException("Server đóng kết nối");
+            }
+            byte[] frame = new byte[length];
+            binaryIn.readFully(frame);
+            lastUsedNanos = System.nanoTime();
+            return (ObjectNode) format.mapper().readTree(frame);
+        }
         String responseLine = reader.readLine();
         if (responseLine == null){
             throw new IOException("Server đóng kết nối");
         }
+        lastUsedNanos = System.nanoTime();
         return (ObjectNode) mapper.readTree(responseLine);
     }
 
+    /**
+     * Thỏa thuận định dạng với server, nên gọi ngay sau khi kết nối.
+     * Server đồng ý (status OK) thì các request/response sau dùng định dạng mới,
+     * không thì vẫn giữ JSON theo dòng.
+     */
+    public ObjectNode hello(WireFormat requested) throws IOException {
+        sendRequest("HELLO", mapper.createObjectNode().put("format", requested.id()));
+        ObjectNode response = readResponse();
+        if ("OK".equals(response.path("status").asText())) {
+            if (requested.isBinary() && binaryOut == null) {
+                binaryOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                binaryIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            }
+            format = requested;
+        }
+        return response;
+    }
+
     //Các api cho client
     public ObjectNode insert(Student student) throws IOException {
         sendRequest("INSERT", mapper.valueToTree(student));
         return readResponse();
     }
 
+    //insert nhiều student trong 1 request, response có kết quả (id hoặc lỗi) cho từng phần tử theo index
+    public ObjectNode insertAll(List<Student> students) throws IOException {
+        ObjectNode payload = mapper.createObjectNode();
+        payload.set("students", mapper.valueToTree(students));
+        sendRequest("BATCH_INSERT", payload);
+        return readResponse();
+    }
+
+    //insert hoặc cập nhật theo id (id phải > 0)
+    public ObjectNode upsertAll(List<Student> students) throws IOException {
+        ObjectNode payload = mapper.createObjectNode();
+        payload.set("students", mapper.valueToTree(students));
+        sendRequest("UPSERT", payload);
+        return readResponse();
+    }
+
     public ObjectNode find(long id) throws IOException {
         ObjectNode payload = mapper.createObjectNode().put("id", id);
         sendRequest("FIND", payload);
@@ -75,6 +179,87 @@ public class ClientService implements Closeable {
         return  readResponse();
     }
 
+    /**
+     * Lấy 1 trang danh sách theo id tăng dần. Trang đầu truyền afterId = 0,
+     * trang sau truyền giá trị "next" của response trước (null nghĩa là hết dữ liệu).
+     */
+    public ObjectNode listPage(long afterId, int limit) throws IOException{
+        ObjectNode payload = mapper.createObjectNode()
+                .put("afterId", afterId)
+                .put("limit", limit);
+        sendRequest("LIST", payload);
+        return readResponse();
+    }
+
+    /**
+     * LIST dạng stream: mỗi student được giao cho consumer ngay khi đọc được,
+     * trả về dòng kết thúc ({"status":"OK","type":"END","count":n}) hoặc dòng lỗi.
+     */
+    public ObjectNode listStream(Consumer<Student> consumer) throws IOException{
+        sendRequest("LIST", mapper.createObjectNode().put("stream", true));
+        while (true) {
+            ObjectNode frame = readResponse();
+            if (frame.has("status")) {
+                return frame;
+            }
+            consumer.accept(toStudent(frame.path("data")));
+        }
+    }
+
+    /**
+     * Lọc theo khoảng gpa/dob, major, sex (tham số null là không lọc), phân trang như listPage.
+     */
+    public ObjectNode query(Double minGpa, Double maxGpa, LocalDate dobFrom, LocalDate dobTo,
+                            String major, Sex sex, long afterId, int limit) throws IOException{
+        ObjectNode payload = mapper.createObjectNode()
+                .put("afterId", afterId)
+                .put("limit", limit);
+        if (minGpa != null) payload.put("minGpa", minGpa);
+        if (maxGpa != null) payload.put("maxGpa", maxGpa);
+        if (dobFrom != null) payload.put("dobFrom", dobFrom.toString());
+        if (dobTo != null) payload.put("dobTo", dobTo.toString());
+        if (major != null) payload.put("major", major);
+        if (sex != null) payload.put("sex", sex.name());
+        sendRequest("QUERY", payload);
+        return readResponse();
+    }
+
+    /**
+     * Tìm theo tên/ngành, không phân biệt hoa thường và dấu ("nguyen" khớp "Nguyễn").
+     * data xếp theo độ liên quan, "more" = true nếu server còn kết quả ngoài limit.
+     */
+    public ObjectNode search(String query, int limit) throws IOException{
+        ObjectNode payload = mapper.createObjectNode()
+                .put("query", query)
+                .put("limit", limit);
+        sendRequest("SEARCH", payload);
+        return readResponse();
+    }
+
+    /**
+     * Các dòng đã thêm/sửa/xóa sau version since (version và epoch lấy từ response trước, lần đầu gửi since = -1).
+     * data: {"version","epoch","reset","upserts":[...],"deletes":[id...]}, reset = true thì phải tải lại toàn bộ.
+     */
+    public ObjectNode changesSince(long since, long epoch) throws IOException{
+        ObjectNode payload = mapper.createObjectNode()
+                .put("since", since)
+                .put("epoch", epoch);
+        sendRequest("CHANGES_SINCE", payload);
+        return readResponse();
+    }
+
+    // data: {"total":{count,avgGpa,minGpa,maxGpa},"byMajor":{...},"bySex":{...},"reconciledAt":...}
+    public ObjectNode stats() throws IOException{
+        sendRequest("STATS", null);
+        return readResponse();
+    }
+
+    // data: số request, độ trễ (ms) và thời gian DB theo action, lỗi theo code, byte nhận/gửi, các gauge của server
+    public ObjectNode metrics() throws IOException{
+        sendRequest("METRICS", null);
+        return readResponse();
+    }
+
     public ObjectNode update(Student student) throws IOException{
         sendRequest("UPDATE", mapper.valueToTree(student));
         return  readResponse();
@@ -86,8 +271,17 @@ public class ClientService implements Closeable {
         return  readResponse();
     }
 
+    /**
+     * Keepalive: {"status":"OK","message":"PONG"}. Gửi thẳng trên kết nối hiện tại (không tự kết nối lại),
+     * IOException nghĩa là kết nối đã hỏng. Gọi định kỳ ngắn hơn server.idleTimeoutMs để giữ kết nối.
+     */
+    public ObjectNode ping() throws IOException{
+        writeRequest("PING", null);
+        return readResponse();
+    }
+
     public ObjectNode quit() throws IOException{
-        sendRequest("QUIT", null);
+        writeRequest("QUIT", null);
         return readResponse();
     }
 
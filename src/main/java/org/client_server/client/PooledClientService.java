@@ -0,0 +1,307 @@
+package org.client_server.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.extern.slf4j.Slf4j;
+import org.client_server.model.Sex;
+import org.client_server.model.Student;
+import org.client_server.util.WireFormat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Cùng API với ClientService nhưng an toàn khi nhiều thread cùng gọi: mỗi lời gọi mượn 1 ClientService
+ * (1 kết nối) trong pool, xong thì trả lại, các request của các thread khác nhau chạy song song.
+ * - Kết nối chỉ được mở khi cần (giữ sẵn tối thiểu minConnections), tối đa maxConnections
+ * - Hết kết nối rảnh thì chờ tối đa borrowTimeoutMs rồi ném IOException
+ * - Housekeeper định kỳ PING kết nối rảnh (giữ kết nối qua server.idleTimeoutMs, bỏ kết nối hỏng)
+ *   và đóng kết nối rảnh quá idleTimeoutMs khi đang có nhiều hơn minConnections
+ * - Lời gọi bị IOException thì kết nối đó bị bỏ (có thể còn dở 1 response), lần sau mở kết nối mới
+ */
+@Slf4j
+public class PooledClientService implements Closeable {
+    private final String host;
+    private final int port;
+    private final Settings settings;
+    private final ObjectMapper mapper;
+
+    private final Semaphore permits;                                  // số kết nối được mượn cùng lúc
+    private final BlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger total = new AtomicInteger();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder broken = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * @param format định dạng thỏa thuận (HELLO) ngay khi mở mỗi kết nối
+     */
+    public record Settings(int minConnections, int maxConnections, long borrowTimeoutMs, long idleTimeoutMs,
+                           long healthCheckIntervalMs, WireFormat format) {
+        public static Settings defaults() {
+            return new Settings(0, 8, 5_000, 60_000, 15_000, WireFormat.JSON);
+        }
+    }
+
+    /**
+     * Số liệu tại 1 thời điểm: đang mượn, đang rảnh, đang chờ mượn, tổng số kết nối đang mở,
+     * số kết nối đã mở và đã bỏ vì lỗi từ lúc tạo pool.
+     */
+    public record Stats(int active, int idle, int waiting, int total, long created, long broken) {
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T apply(ClientService service) throws IOException;
+    }
+
+    public PooledClientService(String host, int port) {
+        this(host, port, Settings.defaults());
+    }
+
+    public PooledClientService(String host, int port, Settings settings) {
+        if (settings.maxConnections() <= 0 || settings.minConnections() > settings.maxConnections()) {
+            throw new IllegalArgumentException("Cần 0 <= minConnections <= maxConnections, maxConnections > 0");
+        }
+        this.host = host;
+        this.port = port;
+        this.settings = settings;
+        this.mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.permits = new Semaphore(settings.maxConnections(), true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "client-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        // lần đầu chạy ngay để mở sẵn minConnections, không chặn constructor nếu server chưa sẵn sàng
+        housekeeper.scheduleWithFixedDelay(this::housekeep,
+                0, settings.healthCheckIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    //Các api cho client, giống ClientService
+    public ObjectNode insert(Student student) throws IOException {
+        return execute(service -> service.insert(student));
+    }
+
+    public ObjectNode insertAll(List<Student> students) throws IOException {
+        return execute(service -> service.insertAll(students));
+    }
+
+    public ObjectNode upsertAll(List<Student> students) throws IOException {
+        return execute(service -> service.upsertAll(students));
+    }
+
+    public ObjectNode find(long id) throws IOException {
+        return execute(service -> service.find(id));
+    }
+
+    public ObjectNode list() throws IOException {
+        return execute(ClientService::list);
+    }
+
+    public ObjectNode listPage(long afterId, int limit) throws IOException {
+        return execute(service -> service.listPage(afterId, limit));
+    }
+
+    // consumer chạy trên thread gọi, kết nối bị giữ tới khi stream kết thúc
+    public ObjectNode listStream(Consumer<Student> consumer) throws IOException {
+        return execute(service -> service.listStream(consumer));
+    }
+
+    public ObjectNode query(Double minGpa, Double maxGpa, LocalDate dobFrom, LocalDate dobTo,
+                            String major, Sex sex, long afterId, int limit) throws IOException {
+        return execute(service -> service.query(minGpa, maxGpa, dobFrom, dobTo, major, sex, afterId, limit));
+    }
+
+    public ObjectNode search(String query, int limit) throws IOException {
+        return execute(service -> service.search(query, limit));
+    }
+
+    public ObjectNode changesSince(long since, long epoch) throws IOException {
+        return execute(service -> service.changesSince(since, epoch));
+    }
+
+    public ObjectNode stats() throws IOException {
+        return execute(ClientService::stats);
+    }
+
+    public ObjectNode metrics() throws IOException {
+        return execute(ClientService::metrics);
+    }
+
+    public ObjectNode update(Student student) throws IOException {
+        return execute(service -> service.update(student));
+    }
+
+    public ObjectNode delete(long id) throws IOException {
+        return execute(service -> service.delete(id));
+    }
+
+    public ObjectNode ping() throws IOException {
+        return execute(ClientService::ping);
+    }
+
+    public Student toStudent(JsonNode node) throws JsonProcessingException {
+        return mapper.treeToValue(node, Student.class);
+    }
+
+    public Stats poolStats() {
+        return new Stats(active.get(), idle.size(), permits.getQueueLength(), total.get(), created.sum(), broken.sum());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            discard(entry);
+        }
+    }
+
+    private <T> T execute(Call<T> call) throws IOException {
+        PooledEntry entry = borrow();
+        boolean ok = false;
+        try {
+            T result = call.apply(entry.service);
+            ok = true;
+            return result;
+        } finally {
+            giveBack(entry, ok);
+        }
+    }
+
+    private PooledEntry borrow() throws IOException {
+        if (closed) throw new IOException("Pool kết nối đã đóng");
+        try {
+            if (!permits.tryAcquire(settings.borrowTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Hết thời gian chờ kết nối sau " + settings.borrowTimeoutMs() + " ms " + poolStats());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Bị ngắt khi chờ kết nối");
+        }
+
+        try {
+            PooledEntry entry = idle.pollFirst();
+            if (entry == null) {
+                entry = create();
+            }
+            active.incrementAndGet();
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void giveBack(PooledEntry entry, boolean ok) {
+        try {
+            active.decrementAndGet();
+            if (closed || !ok) {
+                if (!ok) broken.increment();
+                discard(entry);
+            } else {
+                entry.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(entry);// LIFO: kết nối vừa dùng được mượn lại trước, kết nối thừa sẽ rảnh lâu và bị đóng
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private PooledEntry create() throws IOException {
+        ClientService service = new ClientService(host, port);
+        try {
+            if (settings.format() != WireFormat.JSON) {
+                ObjectNode response = service.hello(settings.format());
+                if (!"OK".equals(response.path("status").asText())) {
+                    log.warn("Server không nhận định dạng {}, dùng JSON: {}", settings.format().id(), response);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(service);
+            throw e;
+        }
+        total.incrementAndGet();
+        created.increment();
+        return new PooledEntry(service);
+    }
+
+    private void discard(PooledEntry entry) {
+        total.decrementAndGet();
+        closeQuietly(entry.service);
+    }
+
+    // đóng kết nối rảnh quá lâu, PING các kết nối rảnh còn lại, rồi mở thêm cho đủ minConnections
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+            for (PooledEntry entry : idle) {
+                if (now - entry.lastUsed > settings.idleTimeoutMs() && idle.size() > settings.minConnections()) {
+                    if (idle.remove(entry)) discard(entry);
+                } else if (now - Math.max(entry.lastUsed, entry.lastChecked) >= settings.healthCheckIntervalMs()
+                        && idle.remove(entry)) {
+                    // đã lấy ra khỏi idle nên không thread nào mượn được trong lúc PING
+                    if (entry.ping()) {
+                        idle.offerLast(entry);
+                    } else {
+                        broken.increment();
+                        discard(entry);
+                    }
+                }
+            }
+            while (!closed && idle.size() < settings.minConnections() && total.get() < settings.maxConnections()) {
+                idle.offerLast(create());
+            }
+        } catch (IOException e) {
+            log.warn("Không thể mở kết nối tới {}:{} cho pool", host, port, e);
+        } catch (RuntimeException e) {
+            log.warn("Lỗi khi dọn pool kết nối", e);
+        }
+    }
+
+    private static void closeQuietly(ClientService service) {
+        try {
+            service.close();
+        } catch (IOException e) {
+            log.debug("Lỗi khi đóng kết nối", e);
+        }
+    }
+
+    private static final class PooledEntry {
+        private final ClientService service;
+        private volatile long lastUsed = System.currentTimeMillis();// lần cuối được mượn, PING không tính
+        private volatile long lastChecked;
+
+        PooledEntry(ClientService service) {
+            this.service = service;
+        }
+
+        boolean ping() {
+            try {
+                boolean ok = "OK".equals(service.ping().path("status").asText());
+                lastChecked = System.currentTimeMillis();
+                return ok;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
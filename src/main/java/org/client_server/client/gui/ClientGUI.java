@@ -5,7 +5,7 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
-import org.client_server.client.ClientService;
+import org.client_server.client.PooledClientService;
 import org.client_server.client.gui.controller.MainController;
 
 public class ClientGUI extends Application {
@@ -20,10 +20,11 @@ public class ClientGUI extends Application {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/view/main.fxml"));
             Parent root = loader.load();
 
-            // Lấy controller và gắn ClientService
+            // Lấy controller và gắn client, kết nối chỉ được mở khi cần (tải trang, lưu...) và dùng chung giữa các Task
             MainController controller = loader.getController();
-            ClientService clientService = new ClientService(HOST, PORT);
+            PooledClientService clientService = new PooledClientService(HOST, PORT);
             controller.setClientService(clientService);
+            controller.subscribeChanges(HOST, PORT);
 
             // Scene + Stage
             Scene scene = new Scene(root);
@@ -31,13 +32,10 @@ public class ClientGUI extends Application {
             primaryStage.setTitle("Student Manager GUI");
             primaryStage.show();
 
-            // Đóng ClientService khi tắt chương trình
+            // Đóng các kết nối khi tắt chương trình
             primaryStage.setOnCloseRequest(e -> {
-                try {
-                    clientService.close();
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                }
+                controller.shutdown();
+                clientService.close();
             });
 
         } catch (Exception e) {
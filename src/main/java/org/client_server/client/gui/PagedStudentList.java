@@ -0,0 +1,439 @@
+package org.client_server.client.gui;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import javafx.collections.ObservableListBase;
+import javafx.concurrent.Task;
+import org.client_server.client.PooledClientService;
+import org.client_server.model.Student;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Danh sách student cho TableView, tải theo trang khi cần bằng LIST {afterId, limit} (theo id tăng dần).
+ * - TableView chỉ gọi get(i) cho các dòng đang hiển thị. Trang chưa có trong cache thì trả null (dòng trống)
+ *   và tải bằng 1 Task ở background, xong thì báo các dòng của trang đó đã đổi
+ * - Dòng hiển thị gần mép trang thì tải trước trang kề bên theo hướng cuộn
+ * - Chỉ giữ tối đa MAX_CACHED_PAGES trang (LRU), trang bị bỏ chỉ còn afterId đầu trang và số dòng để tải lại khi cuộn về
+ * - Server không cho nhảy theo số thứ tự dòng, nên danh sách dài dần: tải trang cuối thấy còn dữ liệu
+ *   (next != null) thì thêm 1 trang dòng trống, cuộn tới đó mới tải tiếp
+ * - sync() lấy các dòng đã đổi từ lần trước bằng CHANGES_SINCE và sửa tại chỗ trong các trang đang giữ,
+ *   trang không giữ thì lần tải sau tự có dữ liệu mới. Server báo reset thì tải lại từ trang đầu
+ * - onChange(event) áp dụng thẳng sự kiện SUBSCRIBE có version kế tiếp, bị lỡ sự kiện thì sync()
+ * - Thay đổi tới trang đang tải được giữ lại và áp lên trang khi tải xong, vì dữ liệu trang có thể đọc trước thay đổi đó
+ * Trang k chứa các id trong (afterId của trang k, afterId của trang k + 1], sau khi thêm/xóa số dòng mỗi trang khác nhau.
+ * Mọi trạng thái chỉ được đọc/ghi trên FX thread, Task chỉ gọi server và chuyển JSON thành Student.
+ */
+public final class PagedStudentList extends ObservableListBase<Student> {
+    public static final int PAGE_SIZE = 100;
+    private static final int MAX_CACHED_PAGES = 8;
+    private static final int PREFETCH_ROWS = PAGE_SIZE / 4;
+    private static final int MAX_PAGE_ROWS = 1000;// limit tối đa của LIST
+
+    private final PooledClientService client;
+    private final Executor executor;
+    private final Consumer<String> onError;
+
+    private final List<Long> pageAfterIds = new ArrayList<>();// afterId của từng trang đã biết, trang 0 là 0
+    private final List<Integer> pageSizes = new ArrayList<>();// số dòng của từng trang, trang chưa tải là ước lượng
+    private int[] pageStarts;// index dòng đầu của từng trang, null khi phải tính lại
+    private final Map<Integer, List<Student>> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Integer> loading = new HashSet<>();
+    // trang đang tải -> id -> bản mới nhất (null là đã xóa) của các thay đổi nhận được trong lúc tải
+    private final Map<Integer, Map<Long, Student>> loadingChanges = new HashMap<>();
+    private int generation;// tăng khi tải lại từ đầu, Task của lần trước bị bỏ qua
+    private int size;
+    private boolean failed;// lỗi thì ngừng tự tải (tránh gửi lại liên tục mỗi lần vẽ) tới khi tạo danh sách mới
+    private boolean disposed;
+
+    // vị trí trong chuỗi thay đổi của server mà danh sách đang phản ánh, version < 0 là chưa biết
+    private long version = -1;
+    private long epoch;
+    private boolean syncing;
+    private boolean syncAgain;// sync() được gọi khi đang sync hoặc chưa biết version
+
+    private record Page(List<Student> rows, Long next, long version, long epoch) {
+    }
+
+    private record Delta(long version, long epoch, boolean reset, List<Student> upserts, List<Long> deletes) {
+    }
+
+    /**
+     * @param onError gọi trên FX thread khi không tải được 1 trang hoặc không sync được
+     */
+    public PagedStudentList(PooledClientService client, Executor executor, Consumer<String> onError) {
+        this.client = client;
+        this.executor = executor;
+        this.onError = onError;
+        pageAfterIds.add(0L);
+        pageSizes.add(0);
+        load(0);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // null: dòng chưa tải xong
+    @Override
+    public Student get(int index) {
+        Objects.checkIndex(index, size);
+        int page = pageOf(index);
+        List<Student> rows = pages.get(page);
+        if (rows == null) {
+            load(page);
+            return null;
+        }
+        int offset = index - pageStarts[page];
+        if (offset >= rows.size() - PREFETCH_ROWS) {
+            load(page + 1);
+        } else if (offset < PREFETCH_ROWS && page > 0) {
+            load(page - 1);
+        }
+        return offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    // số trang đang giữ trong bộ nhớ
+    public int cachedPages() {
+        return pages.size();
+    }
+
+    /**
+     * Cập nhật theo các thay đổi trên server từ lần tải/sync trước, gọi sau khi thêm/sửa/xóa.
+     * Chỉ tốn 1 request CHANGES_SINCE, số dòng nhận về bằng số dòng đã đổi.
+     */
+    public void sync() {
+        if (disposed) return;
+        if (syncing || version < 0) {
+            syncAgain = true;
+            return;
+        }
+        syncing = true;
+        long since = version;
+        long sinceEpoch = epoch;
+        Task<Delta> task = new Task<>() {
+            @Override
+            protected Delta call() throws IOException {
+                JsonNode data = ok(client.changesSince(since, sinceEpoch)).path("data");
+                List<Student> upserts = new ArrayList<>();
+                for (JsonNode node : data.path("upserts")) {
+                    upserts.add(client.toStudent(node));
+                }
+                List<Long> deletes = new ArrayList<>();
+                for (JsonNode node : data.path("deletes")) {
+                    deletes.add(node.asLong());
+                }
+                return new Delta(data.path("version").asLong(), data.path("epoch").asLong(),
+                        data.path("reset").asBoolean(), upserts, deletes);
+            }
+        };
+        task.setOnSucceeded(e -> {
+            syncing = false;
+            if (disposed) return;
+            Delta delta = task.getValue();
+            if (delta.reset()) {
+                reload(delta.version(), delta.epoch());
+            } else {
+                apply(delta);
+            }
+            if (syncAgain) {
+                syncAgain = false;
+                sync();
+            }
+        });
+        task.setOnFailed(e -> {
+            syncing = false;
+            if (!disposed) onError.accept(task.getException().getMessage());
+        });
+        executor.execute(task);
+    }
+
+    /**
+     * Sự kiện từ SUBSCRIBE không filter (version liên tiếp nhau), gọi trên FX thread.
+     * Version kế tiếp thì sửa tại chỗ không cần request nào, cũ hơn (đã có qua sync/tải trang) thì bỏ qua,
+     * nhảy version hoặc RESYNC thì lấy phần bị lỡ bằng sync().
+     */
+    public void onChange(JsonNode event) {
+        if (disposed) return;
+        long eventVersion = event.path("version").asLong(-1);
+        boolean change = "CHANGE".equals(event.path("type").asText());
+        if (change && version >= 0 && eventVersion <= version) return;
+        if (!change || version < 0 || syncing || eventVersion > version + 1) {
+            sync();
+            return;
+        }
+        Delta delta;
+        if ("DELETE".equals(event.path("op").asText())) {
+            delta = new Delta(eventVersion, epoch, false, List.of(), List.of(event.path("id").asLong()));
+        } else {
+            try {
+                delta = new Delta(eventVersion, epoch, false, List.of(client.toStudent(event.path("data"))), List.of());
+            } catch (IOException e) {
+                sync();
+                return;
+            }
+        }
+        apply(delta);
+    }
+
+    // bỏ các Task đang chạy, gọi khi TableView chuyển sang danh sách khác
+    public void dispose() {
+        disposed = true;
+        pages.clear();
+    }
+
+    private void load(int page) {
+        if (disposed || failed || page >= pageAfterIds.size() || pages.containsKey(page) || !loading.add(page)) {
+            return;
+        }
+        boolean last = page == pageAfterIds.size() - 1;
+        long afterId = pageAfterIds.get(page);
+        // trang giữa lấy dư để có cả các dòng thêm vào khoảng id của trang từ lần tải trước, dòng thừa bị cắt khi xong
+        int limit = Math.min(MAX_PAGE_ROWS, last ? Math.max(PAGE_SIZE, pageSizes.get(page)) : pageSizes.get(page) + PAGE_SIZE);
+        boolean needCursor = version < 0;
+        int loadGeneration = generation;
+        Task<Page> task = new Task<>() {
+            @Override
+            protected Page call() throws IOException {
+                // lấy version trước khi đọc dữ liệu: ghi xen giữa thì lần sync sau gửi lại, không bị mất
+                long cursorVersion = -1;
+                long cursorEpoch = 0;
+                if (needCursor) {
+                    JsonNode data = ok(client.changesSince(-1, 0)).path("data");
+                    cursorVersion = data.path("version").asLong();
+                    cursorEpoch = data.path("epoch").asLong();
+                }
+                ObjectNode response = ok(client.listPage(afterId, limit));
+                List<Student> rows = new ArrayList<>(limit);
+                for (JsonNode node : response.path("data")) {
+                    rows.add(client.toStudent(node));
+                }
+                JsonNode next = response.path("next");
+                return new Page(rows, next.isNumber() ? next.asLong() : null, cursorVersion, cursorEpoch);
+            }
+        };
+        task.setOnSucceeded(e -> {
+            if (loadGeneration == generation) loaded(page, task.getValue());
+        });
+        task.setOnFailed(e -> {
+            if (loadGeneration != generation) return;
+            loading.remove(page);
+            loadingChanges.remove(page);
+            if (disposed || failed) return;
+            failed = true;
+            onError.accept(task.getException().getMessage());
+        });
+        executor.execute(task);
+    }
+
+    private static ObjectNode ok(ObjectNode response) throws IOException {
+        if (!"OK".equals(response.path("status").asText())) {
+            throw new IOException(response.path("message").asText("Không tải được danh sách"));
+        }
+        return response;
+    }
+
+    private void loaded(int page, Page result) {
+        loading.remove(page);
+        Map<Long, Student> changes = loadingChanges.remove(page);
+        if (disposed) return;
+        if (result.version() >= 0 && version < 0) {
+            version = result.version();
+            epoch = result.epoch();
+        }
+        boolean last = page == pageAfterIds.size() - 1;
+        List<Student> rows = result.rows();
+        // id lớn nhất thuộc trang, null là không giới hạn (trang cuối không còn dữ liệu sau nó)
+        Long upperId = !last ? pageAfterIds.get(page + 1) : result.next();
+        if (upperId != null) {
+            rows.removeIf(student -> student.getId() > upperId);
+        }
+        if (changes != null) {
+            // dữ liệu trang có thể được đọc trước các thay đổi này, áp lại để không hiện bản cũ
+            changes.forEach((id, student) -> {
+                if (upperId != null && id > upperId) return;
+                int position = indexOfId(rows, id);
+                if (student == null) {
+                    if (position >= 0) rows.remove(position);
+                } else if (position >= 0) {
+                    rows.set(position, student);
+                } else {
+                    rows.add(-position - 1, student);
+                }
+            });
+        }
+        pages.put(page, rows);
+
+        beginChange();
+        // thay các dòng trống bằng dữ liệu thật, số dòng của trang theo số dòng thật
+        int start = startOf(page);
+        int oldSize = pageSizes.get(page);
+        int replaced = Math.min(oldSize, rows.size());
+        if (replaced > 0) nextReplace(start, start + replaced, Collections.nCopies(replaced, null));
+        if (rows.size() < oldSize) nextRemove(start + rows.size(), Collections.nCopies(oldSize - rows.size(), null));
+        if (rows.size() > oldSize) nextAdd(start + oldSize, start + rows.size());
+        resize(page, rows.size() - oldSize);
+        if (last && result.next() != null) {
+            pageAfterIds.add(result.next());
+            pageSizes.add(PAGE_SIZE);
+            pageStarts = null;
+            nextAdd(size, size + PAGE_SIZE);
+            size += PAGE_SIZE;
+        }
+        evict(page);
+        endChange();
+
+        if (syncAgain && version >= 0 && !syncing) {
+            syncAgain = false;
+            sync();
+        }
+    }
+
+    /**
+     * Sửa tại chỗ trong các trang đang giữ. Trang đang tải thì ghi lại để loaded() áp lên, trang khác bỏ qua
+     * (lần tải sau lấy dữ liệu mới từ server).
+     */
+    private void apply(Delta delta) {
+        version = delta.version();
+        beginChange();
+        for (Student student : delta.upserts()) {
+            int page = pageOfId(student.getId());
+            List<Student> rows = pages.get(page);
+            if (rows == null) {
+                rememberWhileLoading(page, student.getId(), student);
+                continue;
+            }
+            int position = indexOfId(rows, student.getId());
+            int start = startOf(page);
+            if (position >= 0) {
+                nextSet(start + position, rows.set(position, student));
+            } else {
+                position = -position - 1;
+                rows.add(position, student);
+                resize(page, 1);
+                nextAdd(start + position, start + position + 1);
+            }
+        }
+        for (long id : delta.deletes()) {
+            int page = pageOfId(id);
+            List<Student> rows = pages.get(page);
+            if (rows == null) {
+                rememberWhileLoading(page, id, null);
+                continue;
+            }
+            int position = indexOfId(rows, id);
+            if (position < 0) continue;
+            int start = startOf(page);
+            Student removed = rows.remove(position);
+            resize(page, -1);
+            nextRemove(start + position, removed);
+        }
+        endChange();
+    }
+
+    private void rememberWhileLoading(int page, long id, Student student) {
+        if (loading.contains(page)) {
+            loadingChanges.computeIfAbsent(page, p -> new HashMap<>()).put(id, student);
+        }
+    }
+
+    // server báo phải tải lại: bỏ mọi trang, tải lại từ trang đầu, theo dõi tiếp từ version đã cho
+    private void reload(long cursorVersion, long cursorEpoch) {
+        generation++;
+        loading.clear();
+        loadingChanges.clear();
+        pages.clear();
+        failed = false;
+        beginChange();
+        if (size > 0) nextRemove(0, Collections.nCopies(size, null));
+        pageAfterIds.clear();
+        pageAfterIds.add(0L);
+        pageSizes.clear();
+        pageSizes.add(0);
+        pageStarts = null;
+        size = 0;
+        endChange();
+        version = cursorVersion;
+        epoch = cursorEpoch;
+        load(0);
+    }
+
+    private void resize(int page, int delta) {
+        pageSizes.set(page, pageSizes.get(page) + delta);
+        size += delta;
+        pageStarts = null;
+    }
+
+    private int startOf(int page) {
+        if (pageStarts == null) {
+            pageStarts = new int[pageSizes.size()];
+            int start = 0;
+            for (int i = 0; i < pageStarts.length; i++) {
+                pageStarts[i] = start;
+                start += pageSizes.get(i);
+            }
+        }
+        return pageStarts[page];
+    }
+
+    // trang cuối có index đầu <= index, trang rỗng có cùng index đầu với trang sau nên không bị chọn
+    private int pageOf(int index) {
+        startOf(0);
+        int low = 0;
+        int high = pageStarts.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (pageStarts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    // trang cuối có afterId < id
+    private int pageOfId(long id) {
+        int low = 0;
+        int high = pageAfterIds.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (pageAfterIds.get(middle) < id) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    // như Collections.binarySearch theo id, các dòng trong trang theo id tăng dần
+    private static int indexOfId(List<Student> rows, long id) {
+        int low = 0;
+        int high = rows.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = rows.get(middle).getId();
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // trang bị bỏ không báo thay đổi: chỉ trang lâu không được get() mới bị bỏ, tức là đang không hiển thị
+    private void evict(int keep) {
+        Iterator<Integer> eldest = pages.keySet().iterator();
+        while (pages.size() > MAX_CACHED_PAGES && eldest.hasNext()) {
+            if (eldest.next() != keep) eldest.remove();
+        }
+    }
+}
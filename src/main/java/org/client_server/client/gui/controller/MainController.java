@@ -1,14 +1,17 @@
 package org.client_server.client.gui.controller;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
-import org.client_server.client.ClientService;
+import org.client_server.client.ChangeSubscription;
+import org.client_server.client.PooledClientService;
+import org.client_server.client.gui.PagedStudentList;
 import org.client_server.model.Sex;
 import org.client_server.model.Student;
 
@@ -17,8 +20,13 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class MainController {
+    private static final int SEARCH_LIMIT = 100;
 
     @FXML private TableView<Student> studentTable;
     @FXML private TableColumn<Student, Long> idColumn;
@@ -30,31 +38,65 @@ public class MainController {
 
     @FXML private TextField searchField;
 
-    private ObservableList<Student> studentList;
-    private ClientService clientService;
+    private PagedStudentList studentList;// danh sách đầy đủ, tải theo trang khi cuộn
+    private PooledClientService clientService;
+    private volatile ChangeSubscription changes;// null: chưa/không SUBSCRIBE được, cập nhật sau mỗi lần thêm/sửa/xóa của mình
+    // mọi lời gọi server chạy ở đây, FX thread chỉ cập nhật giao diện
+    private final ExecutorService background = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "gui-loader");
+        t.setDaemon(true);
+        return t;
+    });
     private final DateTimeFormatter dobFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
-    public void setClientService(ClientService service) {
+    public void setClientService(PooledClientService service) {
         this.clientService = service;
         initTable();
         refreshTable();
     }
 
-    private void initTable() {
-        studentList = FXCollections.observableArrayList();
+    /**
+     * Nhận thay đổi của mọi client qua SUBSCRIBE thay vì phải bấm Refresh. Kết nối ở background,
+     * không được thì vẫn dùng danh sách theo trang như cũ.
+     */
+    public void subscribeChanges(String host, int port) {
+        background.execute(() -> {
+            try {
+                changes = new ChangeSubscription(host, port, null, 0, null,
+                        event -> Platform.runLater(() -> {
+                            if (studentList != null) studentList.onChange(event);
+                        }));
+            } catch (IOException e) {
+                Platform.runLater(() -> showAlert(Alert.AlertType.WARNING, "Warning",
+                        "Cannot subscribe to changes, press Refresh to see other clients' edits: " + e.getMessage()));
+            }
+        });
+    }
+
+    // gọi khi đóng chương trình
+    public void shutdown() {
+        background.shutdownNow();
+        if (changes != null) changes.close();
+    }
 
+    private void initTable() {
+        // dòng chưa tải xong là null, các ô để trống
         idColumn.setCellValueFactory(new PropertyValueFactory<>("id"));
         nameColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
         dobColumn.setCellValueFactory(cellData ->
                 new javafx.beans.property.SimpleStringProperty(
-                        cellData.getValue().getDob().format(dobFormatter)
+                        cellData.getValue() == null || cellData.getValue().getDob() == null
+                                ? "" : cellData.getValue().getDob().format(dobFormatter)
                 )
         );
         gpaColumn.setCellValueFactory(new PropertyValueFactory<>("gpa"));
         sexColumn.setCellValueFactory(new PropertyValueFactory<>("sex"));
         majorColumn.setCellValueFactory(new PropertyValueFactory<>("major"));
 
-        studentTable.setItems(studentList);
+        // sắp xếp phải đọc hết mọi dòng, danh sách đã theo id tăng dần từ server
+        for (TableColumn<Student, ?> column : studentTable.getColumns()) {
+            column.setSortable(false);
+        }
     }
 
     @FXML
@@ -62,27 +104,23 @@ public class MainController {
         refreshTable();
     }
 
+    // bỏ danh sách cũ (cả các trang đang tải dở) và tải lại từ trang đầu
     private void refreshTable() {
-        try {
-            JsonNode dataNode = clientService.list().path("data"); // Lấy "data" từ server
-            if (!dataNode.isArray()) {
-                studentList.clear(); // không có dữ liệu → xóa table
-                return;
-            }
-
-            List<Student> list = new ArrayList<>();
-            for (JsonNode node : dataNode) {
-                try {
-                    list.add(clientService.toStudent(node)); // parse node thành Student
-                } catch (IOException e) {
-                    e.printStackTrace(); // log lỗi riêng từng node
-                }
-            }
-
-            studentList.setAll(list);
+        if (studentList != null) {
+            studentList.dispose();
+        }
+        studentList = new PagedStudentList(clientService, background,
+                message -> showAlert(Alert.AlertType.ERROR, "Error", "Cannot fetch student list: " + message));
+        studentTable.setItems(studentList);
+    }
 
-        } catch (IOException e) {
-            showAlert(Alert.AlertType.ERROR, "Error", "Cannot fetch student list: " + e.getMessage());
+    // sau khi thêm/sửa/xóa: chỉ lấy các dòng đã đổi, đang xem kết quả tìm kiếm thì quay về danh sách đầy đủ.
+    // Đang SUBSCRIBE thì thay đổi của mình cũng tới như sự kiện, không cần hỏi lại
+    private void syncTable() {
+        if (studentList == null) {
+            refreshTable();
+        } else if (changes == null || !changes.isConnected()) {
+            studentList.sync();
         }
     }
 
@@ -113,16 +151,18 @@ public class MainController {
         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION, "Delete student " + selected.getName() + " ID "  + selected.getId() +"?", ButtonType.YES, ButtonType.NO);
         Optional<ButtonType> result = confirm.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.YES) {
-            try {
-                clientService.delete(selected.getId());
-                showAlert(Alert.AlertType.INFORMATION, "Deleted", "Student deleted successfully!");
-                refreshTable();
-            } catch (IOException e) {
-                showAlert(Alert.AlertType.ERROR, "Error", "Cannot delete student: " + e.getMessage());
-            }
+            runInBackground(() -> clientService.delete(selected.getId()), response -> {
+                if ("OK".equals(response.path("status").asText())) {
+                    showAlert(Alert.AlertType.INFORMATION, "Deleted", "Student deleted successfully!");
+                } else {
+                    showAlert(Alert.AlertType.WARNING, "Warning", response.path("message").asText());
+                }
+                syncTable();
+            }, "Cannot delete student");
         }
     }
 
+    // nhập số thì tìm theo id, còn lại tìm theo tên/ngành trên server
     @FXML
     private void handleSearch() {
         String text = searchField.getText().trim();
@@ -130,24 +170,76 @@ public class MainController {
             refreshTable();
             return;
         }
-        try {
-            long id = Long.parseLong(text);
-            Student s = clientService.toStudent(clientService.find(id).path("data"));
-            if (s != null) {
-                studentList.setAll(s);
-            } else {
-                showAlert(Alert.AlertType.INFORMATION, "Not Found", "No student with ID " + id);
+        if (text.chars().allMatch(Character::isDigit)) {
+            long id;
+            try {
+                id = Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                showAlert(Alert.AlertType.WARNING, "Warning", "ID is too large!");
+                return;
+            }
+            runInBackground(() -> clientService.find(id), response -> {
+                if ("OK".equals(response.path("status").asText())) {
+                    showResults(List.of(toStudent(response.path("data"))));
+                } else {
+                    showAlert(Alert.AlertType.INFORMATION, "Not Found", "No student with ID " + id);
+                }
+            }, "Cannot search student");
+            return;
+        }
+
+        runInBackground(() -> clientService.search(text, SEARCH_LIMIT), response -> {
+            if (!"OK".equals(response.path("status").asText())) {
+                showAlert(Alert.AlertType.WARNING, "Warning", response.path("message").asText());
+                return;
+            }
+            List<Student> list = new ArrayList<>();
+            for (JsonNode node : response.path("data")) {
+                list.add(toStudent(node));
+            }
+            showResults(list);
+            if (list.isEmpty()) {
+                showAlert(Alert.AlertType.INFORMATION, "Not Found", "No student matches \"" + text + "\"");
             }
-        } catch (NumberFormatException e) {
-            showAlert(Alert.AlertType.WARNING, "Warning", "ID must be a number!");
-        } catch (IOException e) {
-            showAlert(Alert.AlertType.ERROR, "Error", "Cannot search student: " + e.getMessage());
+        }, "Cannot search student");
+    }
+
+    // kết quả tìm kiếm (tối đa SEARCH_LIMIT dòng) thay cho danh sách theo trang tới lần Refresh sau
+    private void showResults(List<Student> students) {
+        if (studentList != null) {
+            studentList.dispose();
+            studentList = null;
+        }
+        studentTable.setItems(FXCollections.observableArrayList(students));
+    }
+
+    private Student toStudent(JsonNode node) {
+        try {
+            return clientService.toStudent(node);
+        } catch (Exception e) {
+            throw new IllegalStateException("Dữ liệu student không hợp lệ: " + node, e);
         }
     }
 
+    /**
+     * Gọi server trên thread background, onSuccess chạy lại trên FX thread.
+     * Lỗi (mất kết nối, hết thời gian chờ kết nối trong pool...) hiện thành 1 Alert.
+     */
+    private <T> void runInBackground(Callable<T> call, Consumer<T> onSuccess, String errorTitle) {
+        Task<T> task = new Task<>() {
+            @Override
+            protected T call() throws Exception {
+                return call.call();
+            }
+        };
+        task.setOnSucceeded(e -> onSuccess.accept(task.getValue()));
+        task.setOnFailed(e -> showAlert(Alert.AlertType.ERROR, "Error", errorTitle + ": " + task.getException().getMessage()));
+        background.execute(task);
+    }
+
     private void openStudentForm(Student student) {
         try {
-            StudentFormController.showForm(student, clientService, v -> refreshTable());
+            StudentFormController.showForm(student, clientService, v -> syncTable());
         } catch (Exception e) {
             showAlert(Alert.AlertType.ERROR, "Error", "Cannot open form: " + e.getMessage());
         }
@@ -5,7 +5,7 @@ import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
-import org.client_server.client.ClientService;
+import org.client_server.client.PooledClientService;
 import org.client_server.model.Sex;
 import org.client_server.model.Student;
 
@@ -23,10 +23,10 @@ public class StudentFormController {
     private Stage stage;
     private Student student;
     private boolean isUpdate;
-    private ClientService clientService;
+    private PooledClientService clientService;
     private Consumer<Void> onSaveCallback;
 
-    public static void showForm(Student student, ClientService clientService, Consumer<Void> refreshCallback) throws IOException {
+    public static void showForm(Student student, PooledClientService clientService, Consumer<Void> refreshCallback) throws IOException {
         javafx.fxml.FXMLLoader loader = new javafx.fxml.FXMLLoader(StudentFormController.class.getResource("/view/studentForm.fxml"));
         javafx.scene.Parent root = loader.load();
         StudentFormController controller = loader.getController();
@@ -40,7 +40,7 @@ public class StudentFormController {
         stage.showAndWait();
     }
 
-    public void init(Student student, ClientService clientService, Consumer<Void> refreshCallback) {
+    public void init(Student student, PooledClientService clientService, Consumer<Void> refreshCallback) {
         this.student = student;
         this.clientService = clientService;
         this.onSaveCallback = refreshCallback;
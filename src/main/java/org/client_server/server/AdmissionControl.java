@@ -0,0 +1,186 @@
+package org.client_server.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.client_server.util.ServerConfig;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Kiểm soát tải của server, dùng chung cho mọi chế độ (pool, virtual, nio):
+ * - server.maxConnections: quá số kết nối đồng thời thì kết nối mới nhận ngay BUSY rồi bị đóng
+ * - server.maxQueueMs: kết nối/request chờ trong hàng đợi lâu hơn thì trả BUSY thay vì xử lý trễ
+ * - token bucket theo địa chỉ IP (mọi action) và theo IP + action (chỉ các action có cấu hình),
+ *   hết token thì request nhận RATE_LIMITED kèm thời gian nên thử lại, kết nối vẫn giữ
+ * Bucket lâu không dùng được dọn định kỳ nên số bucket không tăng mãi theo số client đã từng kết nối.
+ */
+@Slf4j
+public final class AdmissionControl {
+    private static final String[] RATE_LIMITED_ACTIONS = {
+            "INSERT", "BATCH_INSERT", "UPSERT", "FIND", "LIST", "QUERY", "SEARCH", "CHANGES_SINCE", "SUBSCRIBE", "STATS", "UPDATE", "DELETE"};
+    private static final long IDLE_BUCKET_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private static final class Holder {
+        static final AdmissionControl INSTANCE = new AdmissionControl();
+    }
+
+    public static AdmissionControl shared() {
+        return Holder.INSTANCE;
+    }
+
+    // cấu hình 1 loại bucket, rate <= 0 là không giới hạn
+    record Limit(double ratePerSecond, double burst) {
+        static Limit fromConfig(String prefix, double defaultRate, double defaultBurst) {
+            double rate = ServerConfig.getDouble(prefix + ".rate", defaultRate);
+            double burst = ServerConfig.getDouble(prefix + ".burst", Math.max(defaultBurst, rate));
+            return new Limit(rate, Math.max(1, burst));
+        }
+
+        boolean enabled() {
+            return ratePerSecond > 0;
+        }
+    }
+
+    private final int maxConnections;
+    private final long maxQueueNanos;
+    private final Limit perAddress;
+    private final Map<String, Limit> perAction = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder shedRequests = new LongAdder();
+    private final LongAdder rateLimitedRequests = new LongAdder();
+
+    private AdmissionControl() {
+        maxConnections = ServerConfig.getInt("server.maxConnections", 1000);
+        maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(ServerConfig.getLong("server.maxQueueMs", 2000));
+        perAddress = Limit.fromConfig("ratelimit.perAddress", 0, 0);
+        for (String action : RATE_LIMITED_ACTIONS) {
+            Limit limit = Limit.fromConfig("ratelimit.action." + action, 0, 0);
+            if (limit.enabled()) perAction.put(action, limit);
+        }
+        log.info("Kiểm soát tải: tối đa {} kết nối, chờ tối đa {} ms, mỗi địa chỉ {}, theo action {}",
+                maxConnections, TimeUnit.NANOSECONDS.toMillis(maxQueueNanos), perAddress, perAction);
+
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "admission-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepIdleBuckets, 1, 1, TimeUnit.MINUTES);
+    }
+
+    // ---- kết nối ----
+
+    // true nếu kết nối được nhận, người gọi phải gọi releaseConnection() khi kết nối đóng
+    public boolean tryAcquireConnection() {
+        if (maxConnections <= 0) {
+            connections.incrementAndGet();
+            return true;
+        }
+        while (true) {
+            int current = connections.get();
+            if (current >= maxConnections) {
+                rejectedConnections.increment();
+                return false;
+            }
+            if (connections.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    public void releaseConnection() {
+        connections.decrementAndGet();
+    }
+
+    public int activeConnections() {
+        return connections.get();
+    }
+
+    // ---- hàng đợi ----
+
+    // true nếu việc được đưa vào hàng đợi lúc queuedAtNanos đã chờ quá lâu, nên trả BUSY
+    public boolean shouldShed(long queuedAtNanos) {
+        if (maxQueueNanos <= 0 || System.nanoTime() - queuedAtNanos <= maxQueueNanos) return false;
+        shedRequests.increment();
+        return true;
+    }
+
+    // ---- rate limit ----
+
+    /**
+     * Lấy 1 token của địa chỉ và của (địa chỉ, action) nếu action có cấu hình.
+     * @return 0 nếu được phép, ngược lại là số ms nên đợi trước khi thử lại
+     */
+    public long tryAcquire(String address, String action) {
+        long waitNanos = 0;
+        if (perAddress.enabled()) {
+            waitNanos = bucket(address, perAddress).tryAcquire();
+        }
+        Limit actionLimit = perAction.get(action);
+        if (waitNanos == 0 && actionLimit != null) {
+            waitNanos = bucket(address + '|' + action, actionLimit).tryAcquire();
+        }
+        if (waitNanos == 0) return 0;
+        rateLimitedRequests.increment();
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+    }
+
+    private TokenBucket bucket(String key, Limit limit) {
+        return buckets.computeIfAbsent(key, k -> new TokenBucket(limit.ratePerSecond(), limit.burst()));
+    }
+
+    private void sweepIdleBuckets() {
+        long now = System.nanoTime();
+        int before = buckets.size();
+        buckets.values().removeIf(bucket -> bucket.idleNanos(now) > IDLE_BUCKET_NANOS);
+        if (before != buckets.size()) {
+            log.debug("Dọn {} token bucket không dùng", before - buckets.size());
+        }
+    }
+
+    public record Stats(int activeConnections, long rejectedConnections, long shedRequests, long rateLimitedRequests) {
+    }
+
+    public Stats stats() {
+        return new Stats(connections.get(), rejectedConnections.sum(), shedRequests.sum(), rateLimitedRequests.sum());
+    }
+
+    /**
+     * Token bucket: đầy burst token, mỗi giây nạp thêm rate token, mỗi request lấy 1 token.
+     * Token được nạp lười theo thời gian trôi qua khi có request, không cần thread nạp.
+     */
+    static final class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double ratePerSecond, double capacity) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        // 0 nếu lấy được token, ngược lại là số nano giây tới khi có đủ 1 token
+        synchronized long tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerNano);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / ratePerNano);
+        }
+
+        synchronized long idleNanos(long now) {
+            return now - lastRefill;
+        }
+    }
+}
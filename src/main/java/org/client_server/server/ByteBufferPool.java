@@ -0,0 +1,40 @@
+package org.client_server.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool các direct ByteBuffer cùng kích thước dùng cho dữ liệu chờ ghi của NioServer.
+ * Buffer được lấy khi worker ghi response và trả lại khi reactor đã ghi hết ra channel,
+ * nên không phải cấp phát byte[] mới cho mỗi lần flush. Giữ lại tối đa maxPooled buffer rảnh.
+ */
+final class ByteBufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    ByteBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        return buffer.clear();
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize) return;
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        free.offer(buffer.clear());
+    }
+}
@@ -0,0 +1,255 @@
+package org.client_server.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.client_server.model.Student;
+import org.client_server.util.ServerConfig;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Đẩy thay đổi tới các kết nối đã SUBSCRIBE: ClientHandler gọi inserted/updated/upserted/deleted sau mỗi lần ghi thành công,
+ * version được lấy từ ChangeLog và sự kiện được đưa vào hàng đợi của từng subscriber khớp filter, theo đúng thứ tự version.
+ * - Không bao giờ chặn thread ghi: hàng đợi có giới hạn, đầy thì bỏ hết sự kiện đang chờ và đánh dấu RESYNC
+ *   (client chậm tự lấy lại bằng CHANGES_SINCE), thay vì giữ thêm bộ nhớ hay làm chậm các client khác
+ * - Hàng đợi từ rỗng sang có dữ liệu thì gọi wakeup của kết nối, kết nối tự drain và ghi khi không ghi response nào khác
+ * - Dòng đổi major ra khỏi filter (hoặc UPSERT theo lô, không biết dòng cũ) thì subscriber nhận DELETE cho id đó
+ * - Sự kiện mang nội dung dòng nên version phải theo thứ tự commit: người ghi giữ lockRows(id) từ lúc đọc/ghi DB
+ *   tới khi publish xong, 2 lần ghi cùng id không thể commit theo thứ tự này mà publish theo thứ tự kia.
+ *   INSERT không cần khóa vì id mới chỉ người insert biết cho tới khi response được gửi
+ */
+@Slf4j
+public final class ChangeFeed {
+
+    /**
+     * Filter của 1 subscriber: major null là mọi major (so khớp không phân biệt hoa thường), id trong [fromId, toId].
+     */
+    public record Filter(String major, long fromId, long toId) {
+        public static final Filter ALL = new Filter(null, 0, Long.MAX_VALUE);
+
+        boolean matchesId(long id) {
+            return id >= fromId && id <= toId;
+        }
+
+        boolean matches(long id, String studentMajor) {
+            return matchesId(id) && (major == null || (studentMajor != null && major.equalsIgnoreCase(studentMajor.trim())));
+        }
+    }
+
+    /**
+     * 1 sự kiện gửi cho subscriber: student != null là thêm/sửa, student null là xóa id,
+     * resync = true là đã bỏ sự kiện vì hàng đợi đầy (version là version của sự kiện mới nhất bị bỏ).
+     */
+    public record Event(long version, long id, Student student, boolean resync) {
+    }
+
+    private static final int ROW_LOCK_STRIPES = 256;
+
+    private static final class Holder {
+        static final ChangeFeed INSTANCE = new ChangeFeed(ChangeLog.shared(), ServerConfig.getInt("subscribe.queueSize", 1000));
+    }
+
+    // dùng chung cho mọi ClientHandler, ghi version vào ChangeLog.shared()
+    public static ChangeFeed shared() {
+        return Holder.INSTANCE;
+    }
+
+    private final ChangeLog changeLog;
+    private final int queueCapacity;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final LongAdder pushed = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final ReentrantLock[] rowLocks = new ReentrantLock[ROW_LOCK_STRIPES];
+
+    public ChangeFeed(ChangeLog changeLog, int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity phải > 0");
+        }
+        this.changeLog = changeLog;
+        this.queueCapacity = queueCapacity;
+        for (int i = 0; i < rowLocks.length; i++) {
+            rowLocks[i] = new ReentrantLock();
+        }
+    }
+
+    public ChangeLog changeLog() {
+        return changeLog;
+    }
+
+    /**
+     * Đăng ký nhận sự kiện của các lần ghi có version > startVersion() của subscription trả về.
+     * @param wakeup gọi (trên thread ghi, không được chặn) khi hàng đợi từ rỗng sang có sự kiện
+     */
+    public Subscription subscribe(Filter filter, Runnable wakeup) {
+        synchronized (this) {
+            Subscription subscription = new Subscription(filter, wakeup, changeLog.version());
+            subscriptions.add(subscription);
+            return subscription;
+        }
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        if (subscription == null) return;
+        subscription.cancel();
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * Khóa các id trước khi đọc/ghi DB, mở bằng unlockRows(cùng ids) sau khi publish.
+     * Khóa theo nhóm id (stripe), lấy theo thứ tự tăng dần nên nhiều lô giữ cùng lúc không deadlock.
+     */
+    public void lockRows(long... ids) {
+        for (int stripe : stripes(ids)) {
+            rowLocks[stripe].lock();
+        }
+    }
+
+    public void unlockRows(long... ids) {
+        int[] stripes = stripes(ids);
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            rowLocks[stripes[i]].unlock();
+        }
+    }
+
+    private static int[] stripes(long[] ids) {
+        return Arrays.stream(ids).mapToInt(id -> Math.floorMod(id, ROW_LOCK_STRIPES)).distinct().sorted().toArray();
+    }
+
+    public long inserted(Student student) {
+        return publish(student.getId(), student, filter -> false);
+    }
+
+    // majorBefore: major trước khi update, để biết dòng có rời khỏi filter không
+    public long updated(Student student, String majorBefore) {
+        return publish(student.getId(), student, filter -> filter.matches(student.getId(), majorBefore));
+    }
+
+    // UPSERT theo lô: không biết dòng cũ, coi như có thể đang nằm trong mọi filter khớp id
+    public long upserted(Student student) {
+        return publish(student.getId(), student, filter -> filter.matchesId(student.getId()));
+    }
+
+    public long deleted(long id, String majorBefore) {
+        return publish(id, null, filter -> filter.matches(id, majorBefore));
+    }
+
+    public int subscribers() {
+        return subscriptions.size();
+    }
+
+    public long pushedEvents() {
+        return pushed.sum();
+    }
+
+    public long resyncs() {
+        return resyncs.sum();
+    }
+
+    // giữ lock khi lấy version và đưa vào hàng đợi để mọi subscriber nhận sự kiện theo thứ tự version
+    private long publish(long id, Student after, Predicate<Filter> visibleBefore) {
+        Student snapshot = after == null ? null : after.toBuilder().build();// handler còn có thể sửa object của nó
+        synchronized (this) {
+            long version = changeLog.record(id);
+            if (subscriptions.isEmpty()) return version;
+            Event upsert = snapshot == null ? null : new Event(version, id, snapshot, false);
+            Event delete = new Event(version, id, null, false);
+            for (Subscription subscription : subscriptions) {
+                Filter filter = subscription.filter;
+                if (upsert != null && filter.matches(id, snapshot.getMajor())) {
+                    subscription.offer(upsert);
+                } else if (visibleBefore.test(filter)) {
+                    subscription.offer(delete);
+                }
+            }
+            return version;
+        }
+    }
+
+    public final class Subscription {
+        private final Filter filter;
+        private final Runnable wakeup;
+        private final long startVersion;
+        // các field dưới chỉ đọc/ghi khi giữ lock của subscription
+        private final ArrayDeque<Event> queue = new ArrayDeque<>();
+        private long droppedVersion = -1;// >= 0: đã bỏ sự kiện, gửi RESYNC trước các sự kiện còn lại
+        private boolean scheduled;// đã gọi wakeup, kết nối chưa drain hết
+        private boolean cancelled;
+
+        private Subscription(Filter filter, Runnable wakeup, long startVersion) {
+            this.filter = filter;
+            this.wakeup = wakeup;
+            this.startVersion = startVersion;
+        }
+
+        public Filter filter() {
+            return filter;
+        }
+
+        public long startVersion() {
+            return startVersion;
+        }
+
+        public long epoch() {
+            return changeLog.epoch();
+        }
+
+        /**
+         * Lấy hết sự kiện đang chờ (RESYNC đứng đầu nếu đã bỏ sự kiện). Kết nối gọi lặp lại sau mỗi lần wakeup
+         * tới khi nhận danh sách rỗng, lần rỗng đó cho phép wakeup được gọi lại.
+         */
+        public List<Event> drain() {
+            synchronized (this) {
+                if (cancelled || (queue.isEmpty() && droppedVersion < 0)) {
+                    scheduled = false;
+                    return List.of();
+                }
+                List<Event> events = new ArrayList<>(queue.size() + 1);
+                if (droppedVersion >= 0) {
+                    events.add(new Event(droppedVersion, -1, null, true));
+                    droppedVersion = -1;
+                }
+                events.addAll(queue);
+                queue.clear();
+                pushed.add(events.size());
+                return events;
+            }
+        }
+
+        private void offer(Event event) {
+            boolean wake;
+            synchronized (this) {
+                if (cancelled) return;
+                if (queue.size() >= queueCapacity) {
+                    // client đọc chậm: bỏ hết, client lấy lại bằng CHANGES_SINCE khi nhận RESYNC
+                    if (droppedVersion < 0) resyncs.increment();
+                    queue.clear();
+                    droppedVersion = event.version();
+                } else {
+                    queue.add(event);
+                }
+                wake = !scheduled;
+                scheduled = true;
+            }
+            if (wake) {
+                try {
+                    wakeup.run();
+                } catch (RuntimeException e) {
+                    log.warn("Không thể báo sự kiện cho subscriber", e);
+                }
+            }
+        }
+
+        private void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                queue.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.client_server.server;
+
+import org.client_server.util.ServerConfig;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Số thứ tự thay đổi (version) của table: mỗi lần ghi thành công (INSERT, UPSERT, UPDATE, DELETE) tăng 1,
+ * giữ id của capacity thay đổi gần nhất trong 1 mảng vòng để CHANGES_SINCE trả đúng các dòng đã đổi.
+ * - Chỉ giữ id, không giữ nội dung: ClientHandler đọc dòng hiện tại lúc trả lời (không còn thì là đã xóa),
+ *   nên 2 lần ghi cùng id commit và record lệch thứ tự nhau cũng không làm client giữ bản cũ
+ * - epoch đổi mỗi lần server khởi động, client gửi epoch khác (hoặc version đã ra khỏi mảng vòng,
+ *   hoặc quá nhiều dòng đổi) thì nhận reset = true và phải tải lại toàn bộ
+ * Chỉ thấy các lần ghi qua server này, ghi thẳng vào DB từ ngoài không có version.
+ */
+public final class ChangeLog {
+
+    /**
+     * Kết quả của since: ids là các id khác nhau đã đổi sau version được hỏi (theo thứ tự đổi lần đầu),
+     * rỗng khi reset.
+     */
+    public record Changes(long version, long epoch, boolean reset, long[] ids) {
+    }
+
+    private static final class Holder {
+        static final ChangeLog INSTANCE = new ChangeLog(ServerConfig.getInt("changes.capacity", 100_000));
+    }
+
+    // dùng chung cho mọi ClientHandler
+    public static ChangeLog shared() {
+        return Holder.INSTANCE;
+    }
+
+    private final long epoch = System.currentTimeMillis();
+    private final long[] ids;// id của version v nằm ở ids[(v - 1) % capacity]
+    private long version;// chỉ đọc/ghi khi giữ lock this
+
+    public ChangeLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity phải > 0");
+        }
+        this.ids = new long[capacity];
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    // gọi sau khi ghi thành công, trả version mới
+    public synchronized long record(long id) {
+        ids[(int) (version % ids.length)] = id;
+        return ++version;
+    }
+
+    /**
+     * Các id đã đổi sau version since của epoch đã cho.
+     * since < 0 chỉ lấy version hiện tại (client bắt đầu theo dõi rồi tải toàn bộ).
+     * @param maxIds nhiều id khác nhau hơn thì reset, tải lại rẻ hơn
+     */
+    public synchronized Changes since(long since, long epoch, int maxIds) {
+        if (epoch != this.epoch || since < 0 || since > version || version - since > ids.length) {
+            return new Changes(version, this.epoch, true, new long[0]);
+        }
+        Set<Long> changed = new LinkedHashSet<>();
+        for (long v = since; v < version; v++) {
+            changed.add(ids[(int) (v % ids.length)]);
+            if (changed.size() > maxIds) {
+                return new Changes(version, this.epoch, true, new long[0]);
+            }
+        }
+        return new Changes(version, this.epoch, false, changed.stream().mapToLong(Long::longValue).toArray());
+    }
+}
@@ -1,96 +1,121 @@
 package org.client_server.server;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.client_server.exception.ProgramException;
-import org.client_server.model.Sex;
 import org.client_server.model.Student;
+import org.client_server.util.ServerConfig;
+import org.client_server.util.WireFormat;
 
 
 @Slf4j
 public class ClientHandler implements Runnable {
 
+    private static final int MAX_FRAME_BYTES = ServerConfig.getInt("server.maxFrameBytes", 1 << 20);
+
+    private static final SerializableString TYPE = new SerializedString("type");
+    private static final SerializableString ROW = new SerializedString("ROW");
+    private static final SerializableString END = new SerializedString("END");
+    private static final String UNKNOWN_ACTION = "UNKNOWN";
+    private static final SerializableString CHANGE = new SerializedString("CHANGE");
+    private static final SerializableString RESYNC = new SerializedString("RESYNC");
+    // kết nối chặn (pool, virtual): ghi sự kiện trên virtual thread, client đọc chậm chỉ chặn thread của chính nó
+    private static final ExecutorService PUSHERS = Executors.newVirtualThreadPerTaskExecutor();
+
     private final Socket clientSocket;
-    private final StudentRepository studentRepository = new StudentRepository();//có thể viết vào constructor thay vì trực tiếp
-    private final ObjectMapper mapper = new ObjectMapper()
-            .registerModule(new JavaTimeModule())
-            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final String clientAddress;
+    private final String remoteHost;// chỉ IP, khóa của rate limit (1 máy mở nhiều kết nối vẫn dùng chung bucket)
+    private final AdmissionControl admission = AdmissionControl.shared();
+    private JsonNode currentRequestId;// requestId của request đang xử lý, được gửi lại trong response
+    private final StudentRepository studentRepository;//engine theo storage.engine
+    private final StudentStats stats;// cập nhật sau mỗi lần ghi thành công
+    private final ChangeFeed changeFeed = ChangeFeed.shared();// như stats: version cho CHANGES_SINCE, sự kiện cho SUBSCRIBE
+    private volatile ChangeFeed.Subscription subscription;
+    private volatile Runnable pushWakeup;// do transport đặt, null là kết nối không nhận được sự kiện
+    private final ReentrantLock writeLock = new ReentrantLock();// kết nối chặn: thread đọc request và thread đẩy sự kiện dùng chung writer
+    private final ServerMetrics metrics = ServerMetrics.shared();
+    private final ObjectMapper mapper = WireFormat.JSON.mapper();// chỉ dùng để dựng tree, không phụ thuộc định dạng gửi đi
+    private final RequestDecoder decoder = new RequestDecoder();
+    private volatile WireFormat wireFormat = WireFormat.JSON;// đổi sau khi HELLO thành công
 
     public ClientHandler(Socket clientSocket) {
+        this(clientSocket, String.valueOf(clientSocket.getRemoteSocketAddress()),
+                clientSocket.getInetAddress().getHostAddress(), StudentRepository.shared(), StudentStats.shared());
+    }
+
+    // dùng cho NioServer: không giữ socket, chỉ xử lý các dòng request đã đọc đủ
+    ClientHandler(String clientAddress, String remoteHost) {
+        this(null, clientAddress, remoteHost, StudentRepository.shared(), StudentStats.shared());
+    }
+
+    // repository riêng thay cho engine dùng chung (benchmark, test với db ảo), không giữ socket
+    ClientHandler(String clientAddress, String remoteHost, StudentRepository studentRepository, StudentStats stats) {
+        this(null, clientAddress, remoteHost, studentRepository, stats);
+    }
+
+    private ClientHandler(Socket clientSocket, String clientAddress, String remoteHost,
+                          StudentRepository studentRepository, StudentStats stats) {
         this.clientSocket = clientSocket;
-        // có thể thay đổi viết repository vào constructor để dễ test với db ảo
+        this.clientAddress = clientAddress;
+        this.remoteHost = remoteHost;
+        this.studentRepository = studentRepository;
+        this.stats = stats;
+    }
+
+    /**
+     * Response BUSY dạng JSON theo dòng, gửi cho kết nối bị từ chối ngay lúc accept
+     * (quá server.maxConnections, hàng đợi đầy hoặc chờ quá lâu) rồi đóng kết nối.
+     */
+    static byte[] busyResponse(String message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        try {
+            FrameWriter writer = new FrameWriter(out);
+            writer.writeError("BUSY", message, null);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);// ghi vào bộ nhớ, không xảy ra
+        }
+        return out.toByteArray();
     }
 
     @Override
     public void run() {
-        String clientAddress = String.valueOf(clientSocket.getRemoteSocketAddress());
         Thread.currentThread().setName("client - " + clientAddress);
+        // hết hạn idle/request thì socket bị đóng từ thread của timer wheel, read/write đang chặn ném lỗi ngay
+        ConnectionTimeouts timeouts = ConnectionTimeouts.start(clientAddress, this::closeSocket);
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream(), StandardCharsets.UTF_8));
-             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(clientSocket.getOutputStream(), StandardCharsets.UTF_8))) {
-
+        try (InputStream in = clientSocket.getInputStream();
+             OutputStream out = new BufferedOutputStream(clientSocket.getOutputStream())) {
             log.info("Handler bắt đầu cho {}", clientAddress);
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                try {
-                    ObjectNode request = (ObjectNode) mapper.readTree(line);
-                    String action = request.path("action").asText("");
-
-                    switch (action == null ? "" : action.toUpperCase().trim()) {
-                        case "INSERT":
-                            handleInsert(request, writer);
-                            break;
-                        case "LIST":
-                            handleList(writer);
-                            break;
-                        case "UPDATE":
-                            handleUpdate(request, writer);
-                            break;
-                        case "DELETE":
-                            handleDelete(request, writer);
-                            break;
-                        case "FIND":
-                            handleFind(request, writer);
-                            break;
-                        case "QUIT":
-                            handlQuit(writer, clientAddress);
-                            return;
-                        default:
-                            sendError(writer,"UNKNOWN_ACTION","Chỉ hỗ trợ: INSERT,FIND,LIST,UPDATE,DELETE,QUIT");
-                    }
-                } catch (Exception e) {
-                    if (e instanceof SocketTimeoutException) {
-                        log.warn("Client {} không có dữ liệu phản hồi, đã vượt timeout ", clientAddress);
-                        sendError(writer,"TIMEOUT","Không có data phản hồi quá thời gian quy định");
-
-                        break;
-                    } else {
-                        log.error("Có lỗi trong yêu cầu từ client {}", clientAddress, e);
-                        sendError(writer,"SERVER_ERROR",e.getMessage());
-                        break;
-                    }
-                }
-
-            }
+            serve(timeouts.track(in), out, timeouts);
         } catch (IOException e) {
-            log.error("I/O của client {} có lỗi ", clientAddress);
-            e.printStackTrace();
+            if (timeouts.expired()) {
+                log.debug("Kết nối {} đã bị đóng vì hết hạn: {}", clientAddress, e.toString());
+            } else {
+                log.error("I/O của client {} có lỗi ", clientAddress);
+                e.printStackTrace();
+            }
         } finally {
+            timeouts.cancel();
+            unsubscribe();
             try {
                 clientSocket.close();
             } catch (IOException e) {
@@ -100,35 +125,228 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    private void handleInsert(ObjectNode request, BufferedWriter writer) throws IOException {
-        if (!validatePayload(request.path("payload"),writer,"INSERT")) return;
-        ObjectNode payload = (ObjectNode) request.path("payload");
+    private void closeSocket() {
+        try {
+            clientSocket.close();
+        } catch (IOException e) {
+            log.debug("Lỗi khi đóng socket {}", clientAddress, e);
+        }
+    }
 
-        Student student = mappingPayloadToStudent(payload);
-        if (student.getName() == null || student.getName().isBlank()){
-            sendError(writer,"INVALID_NAME","Name không thể để trống");
-            return;
+    // đọc và xử lý request tới khi client đóng kết nối hoặc QUIT, không tự đóng stream
+    void serve(InputStream in, OutputStream out) throws IOException {
+        serve(in, out, ConnectionTimeouts.DISABLED);
+    }
+
+    private void serve(InputStream in, OutputStream out, ConnectionTimeouts timeouts) throws IOException {
+        FrameReader reader = new FrameReader(in, MAX_FRAME_BYTES);
+        FrameWriter writer = new FrameWriter(out);
+        pushWakeup = () -> PUSHERS.execute(() -> pushBlocking(writer));
+
+        try {
+            byte[] frame;
+            while ((frame = reader.readFrame(wireFormat)) != null) {
+                boolean keepOpen;
+                writeLock.lock();
+                try {
+                    keepOpen = handleRequest(frame, writer);
+                    // reader đã đọc trước request kế tiếp thì chưa flush, gom response lại
+                    if (!keepOpen || !reader.hasBuffered()) {
+                        writer.flush();
+                        timeouts.requestFinished();
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+                if (!keepOpen) {
+                    break;
+                }
+            }
+        } finally {
+            unsubscribe();
         }
-        if (student.getDob() == null){
-            sendError(writer,"INVALID_DOB","Dob không để trống và chỉ được để ở dạng YYYY-MM-DD");
-            return;
+    }
+
+    // chạy trên virtual thread sau mỗi lần hàng đợi sự kiện có dữ liệu, chờ response đang ghi dở xong mới ghi
+    private void pushBlocking(FrameWriter writer) {
+        writeLock.lock();
+        try {
+            writePushes(writer);
+            writer.flush();
+        } catch (IOException e) {
+            log.debug("Không thể gửi sự kiện cho client {}: {}", clientAddress, e.toString());
+            unsubscribe();
+            if (clientSocket != null) closeSocket();
+        } finally {
+            writeLock.unlock();
         }
-        if (student.getGpa() == -1 ){
-            sendError(writer,"INVALID_GPA","Gpa không để trống và chỉ nằm trong 0 và 4");
-            return;
+    }
+
+    /**
+     * NioServer đặt cách báo có sự kiện mới: wakeup phải trả về ngay, kết nối gọi writePushes
+     * khi không có response nào đang ghi.
+     */
+    void onPush(Runnable wakeup) {
+        pushWakeup = wakeup;
+    }
+
+    /**
+     * Ghi (chưa flush) mọi sự kiện đang chờ của subscription, người gọi phải đang giữ quyền ghi duy nhất trên writer.
+     * Sự kiện: {"type":"CHANGE","op":"UPSERT","version":v,"data":{student}}, {"type":"CHANGE","op":"DELETE","version":v,"id":id}
+     * hoặc {"type":"RESYNC","version":v} khi hàng đợi đầy và sự kiện đã bị bỏ.
+     */
+    void writePushes(FrameWriter writer) throws IOException {
+        ChangeFeed.Subscription current = subscription;
+        if (current == null) return;
+        List<ChangeFeed.Event> events;
+        while (!(events = current.drain()).isEmpty()) {
+            for (ChangeFeed.Event event : events) {
+                JsonGenerator generator = writer.startFrame();
+                generator.writeStartObject();
+                generator.writeFieldName(TYPE);
+                generator.writeString(event.resync() ? RESYNC : CHANGE);
+                generator.writeNumberField("version", event.version());
+                if (!event.resync()) {
+                    generator.writeStringField("op", event.student() != null ? "UPSERT" : "DELETE");
+                    if (event.student() != null) {
+                        generator.writeFieldName(FrameWriter.DATA);
+                        generator.writeObject(event.student());
+                    } else {
+                        generator.writeNumberField("id", event.id());
+                    }
+                }
+                generator.writeEndObject();
+                writer.endFrame();
+            }
         }
-        if (student.getSex() == null){
-            sendError(writer,"INVALID_SEX","Sex không để trống và phải điền đúng yêu cầu");
-            return;
+    }
+
+    // gọi khi kết nối đóng
+    void unsubscribe() {
+        ChangeFeed.Subscription current = subscription;
+        subscription = null;
+        changeFeed.unsubscribe(current);
+    }
+
+    // định dạng request hiện tại của kết nối, NioServer dùng để biết cách tách frame kế tiếp
+    WireFormat wireFormat() {
+        return wireFormat;
+    }
+
+    /**
+     * Xử lý một frame request (1 JSON hoặc 1 message nhị phân sau HELLO) và ghi response vào writer,
+     * người gọi chịu trách nhiệm flush.
+     * Nếu request có "requestId" thì mọi response của nó đều mang lại requestId đó.
+     * @return false nếu kết nối cần đóng (QUIT hoặc có lỗi)
+     */
+    boolean handleRequest(byte[] frame, FrameWriter writer) throws IOException {
+        return handleRequest(frame, writer, System.nanoTime());
+    }
+
+    /**
+     * @param receivedNanos lúc frame được đọc xong (System.nanoTime), chờ worker quá server.maxQueueMs
+     *                      thì trả BUSY thay vì xử lý, kết nối vẫn giữ
+     */
+    boolean handleRequest(byte[] frame, FrameWriter writer, long receivedNanos) throws IOException {
+        long startedNanos = System.nanoTime();
+        metrics.requestStarted();
+        metrics.bytesIn(frame.length + (wireFormat.isBinary() ? 4 : 1));// + 4 byte độ dài hoặc \n
+        String action = UNKNOWN_ACTION;
+        currentRequestId = null;
+        try {
+            RequestDecoder.Decoded decoded = decoder.decode(frame, wireFormat);
+            currentRequestId = decoded.requestId();
+            action = metricsAction(decoded);
+
+            // QUIT luôn được xử lý để client đóng được kết nối, PING để kết nối không bị đóng vì idle
+            if (!(decoded.request() instanceof Request.Quit) && !(decoded.request() instanceof Request.Ping)) {
+                if (admission.shouldShed(receivedNanos)) {
+                    sendError(writer, "BUSY", "Server đang quá tải, vui lòng thử lại sau");
+                    return true;
+                }
+                long retryAfterMs = admission.tryAcquire(remoteHost, decoded.action());
+                if (retryAfterMs > 0) {
+                    sendRateLimited(writer, retryAfterMs);
+                    return true;
+                }
+            }
+
+            switch (decoded.request()) {
+                case Request.Insert insert -> handleInsert(insert, writer);
+                case Request.ListAll list -> handleList(writer);
+                case Request.ListPage page -> handleListPage(page, writer);
+                case Request.ListStream stream -> handleListStream(writer);
+                case Request.Query query -> handleQuery(query, writer);
+                case Request.Search search -> handleSearch(search, writer);
+                case Request.ChangesSince changes -> handleChangesSince(changes, writer);
+                case Request.Subscribe subscribe -> handleSubscribe(subscribe, writer);
+                case Request.Unsubscribe unsubscribeRequest -> {
+                    unsubscribe();
+                    sendSuccess(writer, "Đã hủy đăng ký");
+                }
+                case Request.Stats statsRequest -> handleStats(writer);
+                case Request.Metrics metricsRequest -> handleMetrics(writer);
+                case Request.Update update -> handleUpdate(update, writer);
+                case Request.Delete delete -> handleDelete(delete.id(), writer);
+                case Request.Find find -> handleFind(find.id(), writer);
+                case Request.Batch batch -> handleBatch(batch, writer);
+                case Request.Hello hello -> handleHello(hello, writer);
+                case Request.Ping ping -> sendSuccess(writer, "PONG");
+                case Request.Quit quit -> {
+                    handlQuit(writer, clientAddress);
+                    return false;
+                }
+                case Request.Invalid invalid -> sendError(writer, invalid.code(), invalid.message());
+            }
+        } catch (Exception e) {
+            log.error("Có lỗi trong yêu cầu từ client {}", clientAddress, e);
+            sendError(writer,"SERVER_ERROR",e.getMessage());
+            return false;
+        } finally {
+            metrics.requestFinished(action, receivedNanos, startedNanos);
         }
-        if (student.getMajor() == null || student.getMajor().isBlank()){
-            sendError(writer,"INVALID_MAJOR","Major không thể để trống");
-            return;
+        return true;
+    }
+
+    // action client gửi tùy ý, chỉ action server hỗ trợ mới thành nhãn riêng của metrics
+    private static String metricsAction(RequestDecoder.Decoded decoded) {
+        if (decoded.request() instanceof Request.Invalid invalid && invalid.code().equals("UNKNOWN_ACTION")) {
+            return UNKNOWN_ACTION;
         }
+        return decoded.action();
+    }
+
+    /**
+     * HELLO: payload {"format":"json"|"smile"}. Response OK được gửi bằng định dạng cũ,
+     * từ request sau cả 2 chiều dùng định dạng mới (smile: 4 byte độ dài + message).
+     * Client phải đợi response của HELLO rồi mới gửi frame theo định dạng mới.
+     * Client không gửi HELLO thì giữ nguyên JSON theo dòng như trước.
+     */
+    private void handleHello(Request.Hello hello, FrameWriter writer) throws IOException {
+        WireFormat format = hello.format();
+        JsonGenerator generator = writer.startFrame();
+        generator.writeStartObject();
+        generator.writeFieldName(FrameWriter.STATUS);
+        generator.writeString(FrameWriter.OK);
+        generator.writeStringField("format", format.id());
+        FrameWriter.writeRequestId(generator, currentRequestId);
+        generator.writeEndObject();
+        writer.endFrame();
+
+        writer.setFormat(format);
+        wireFormat = format;
+        log.info("Client {} dùng định dạng {}", clientAddress, format.id());
+    }
 
+    private void handleInsert(Request.Insert request, FrameWriter writer) throws IOException {
+        Student student = request.student();
         try {
             long id = studentRepository.insert(student);
             student.setId(id);
+            if (id > 0) {
+                stats.put(student);
+                changeFeed.inserted(student);
+            }
             sendSuccess(writer, "Student " + id +" được insert thành công");
             log.info("Inserted Student {}", student);
         } catch (ProgramException pe) {
@@ -137,38 +355,91 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    private void handleFind(ObjectNode request, BufferedWriter writer) throws IOException {
-        //không nên ép kiểu trực tiếp bởi vì nếu ép kiểu objectnode cua missingnode sẽ ném ra ClassCastException
-        if (!validatePayload(request.path("payload"),writer,"FIND")) return;
-        ObjectNode payload = (ObjectNode) request.path("payload");
+    /**
+     * BATCH_INSERT / UPSERT: payload {"students":[...]}, mỗi phần tử kiểm tra như INSERT
+     * (UPSERT cần thêm id > 0). Các dòng hợp lệ được ghi theo lô bằng addBatch/executeBatch,
+     * response trả kết quả từng dòng theo index: {"index":i,"id":...} hoặc {"index":i,"code":...,"message":...}
+     */
+    private void handleBatch(Request.Batch request, FrameWriter writer) throws IOException {
+        boolean upsert = request.upsert();
+        String action = upsert ? "UPSERT" : "BATCH_INSERT";
+        List<Request.BatchRow> rows = request.rows();
+
+        ObjectNode[] results = new ObjectNode[rows.size()];
+        List<Student> valid = new ArrayList<>(rows.size());
+        List<Integer> validIndexes = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++){
+            Request.BatchRow row = rows.get(i);
+            results[i] = mapper.createObjectNode().put("index", i);
+            if (!row.valid()){
+                results[i].put("code", row.code()).put("message", row.message());
+                continue;
+            }
+            valid.add(row.student());
+            validIndexes.add(i);
+        }
 
-        try {
-            Optional<Student> optionalStudent = idStudentExistsed(payload,writer);
-            if (optionalStudent.isPresent()) {
-                Student student = optionalStudent.get();
-                ObjectNode response = mapper.createObjectNode();
+        int succeeded = 0;
+        if (!valid.isEmpty()){
+            // UPSERT ghi đè id đã có: giữ khóa các id tới khi publish xong (xem ChangeFeed)
+            long[] lockedIds = upsert ? valid.stream().mapToLong(Student::getId).toArray() : new long[0];
+            changeFeed.lockRows(lockedIds);
+            try {
+                List<StudentRepository.BatchRowResult> written;
+                try {
+                    written = upsert ? studentRepository.upsertAll(valid) : studentRepository.insertAll(valid);
+                } catch (ProgramException e){
+                    sendError(writer, "DB_ERROR", e.getMessage());
+                    log.error("Không thể ghi lô students", e);
+                    return;
+                }
+                for (int i = 0; i < written.size(); i++){
+                    StudentRepository.BatchRowResult result = written.get(i);
+                    ObjectNode node = results[validIndexes.get(i)];
+                    if (result.error() == null){
+                        node.put("id", result.id());
+                        stats.put(valid.get(i));
+                        if (upsert) {
+                            changeFeed.upserted(valid.get(i));
+                        } else {
+                            changeFeed.inserted(valid.get(i));
+                        }
+                        succeeded++;
+                    } else {
+                        node.put("code", "DB_ERROR").put("message", result.error());
+                    }
+                }
+            } finally {
+                changeFeed.unlockRows(lockedIds);
+            }
+        }
 
-                response.put("status", "OK");
-                response.set("data", mapper.valueToTree(student));
+        ObjectNode response = mapper.createObjectNode();
+        response.put("status", "OK");
+        response.put("succeeded", succeeded);
+        response.put("failed", rows.size() - succeeded);
+        response.putArray("data").addAll(Arrays.asList(results));
+        send(writer, response);
+        log.info("{}: {} thành công, {} lỗi", action, succeeded, rows.size() - succeeded);
+    }
 
-                writer.write(mapper.writeValueAsString(response));
-                writer.write("\n");
-                writer.flush();
+    private void handleFind(long id, FrameWriter writer) throws IOException {
+        try {
+            Optional<Student> optionalStudent = idStudentExistsed(id,writer);
+            if (optionalStudent.isPresent()) {
+                writer.startData(optionalStudent.get());
+                writer.endResponse(currentRequestId);
             }
         } catch (ProgramException e){
             sendError(writer,"DB_ERROR", e.getMessage());
         }
     }
 
-    private void handleList(BufferedWriter writer) throws IOException{
+    private void handleList(FrameWriter writer) throws IOException{
         try{
             List<Student> studentList = studentRepository.findAll();
-            ObjectNode response = mapper.createObjectNode();
-            response.put("status", "OK");
-            response.set("data",mapper.valueToTree(studentList));//cần đăng kí java 8 Date/Time để k bị lỗi khi chuyển đổi
-            writer.write(mapper.writeValueAsString(response));//viết response thành dạng json string
-            writer.write("\n");
-            writer.flush();
+            writer.startData(studentList);//mapper của định dạng đã đăng kí java 8 Date/Time
+            writer.endResponse(currentRequestId);
             log.info("Gửi {} students", studentList.size());
 
         } catch (ProgramException e) {
@@ -176,16 +447,194 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    private void handleUpdate(ObjectNode request, BufferedWriter writer) throws IOException {
-        if (!validatePayload(request.path("payload"),writer,"UPDATE")) return;
-        ObjectNode payload = (ObjectNode) request.path("payload");
+    /**
+     * LIST dạng stream: mỗi student là 1 dòng {"type":"ROW","data":{...}} được ghi ngay khi ResultSet đọc tới,
+     * kết thúc bằng dòng {"status":"OK","type":"END","count":n} (hoặc 1 dòng ERROR nếu lỗi giữa chừng).
+     * Bộ nhớ chỉ giữ 1 dòng + buffer của writer, không phụ thuộc kích thước table.
+     */
+    private void handleListStream(FrameWriter writer) throws IOException {
+        try {
+            long count = studentRepository.streamAll(student -> {
+                JsonGenerator generator = writer.startFrame();
+                generator.writeStartObject();
+                generator.writeFieldName(TYPE);
+                generator.writeString(ROW);
+                FrameWriter.writeRequestId(generator, currentRequestId);
+                generator.writeFieldName(FrameWriter.DATA);
+                generator.writeObject(student);
+                generator.writeEndObject();
+                writer.endFrame();
+            });
+
+            JsonGenerator end = writer.startFrame();
+            end.writeStartObject();
+            end.writeFieldName(FrameWriter.STATUS);
+            end.writeString(FrameWriter.OK);
+            end.writeFieldName(TYPE);
+            end.writeString(END);
+            end.writeNumberField("count", count);
+            FrameWriter.writeRequestId(end, currentRequestId);
+            end.writeEndObject();
+            writer.endFrame();
+            log.info("Stream {} students", count);
+        } catch (ProgramException e) {
+            sendError(writer, "DB_ERROR", e.getMessage());
+        }
+    }
 
+    // LIST có phân trang: payload {afterId, limit} (đã kiểm tra khi giải mã), response có "next" = afterId cho trang sau (null nếu hết)
+    private void handleListPage(Request.ListPage request, FrameWriter writer) throws IOException {
+        long afterId = request.afterId();
+        int limit = request.limit();
         try {
-            Optional<Student> optionalStudentById = idStudentExistsed(payload,writer);
+            // lấy dư 1 dòng để biết còn trang sau hay không
+            List<Student> page = studentRepository.findPage(afterId, limit + 1);
+            writePage(page, limit, writer);
+            log.info("Gửi trang {} students sau id = {}", Math.min(page.size(), limit), afterId);
+        } catch (ProgramException e) {
+            sendError(writer, "DB_ERROR", e.getMessage());
+        }
+    }
+
+    /**
+     * QUERY: payload {minGpa, maxGpa, dobFrom, dobTo, major, sex, afterId, limit}, mọi field đều không bắt buộc.
+     * Lọc ở phía DB, phân trang giống LIST ("next" là afterId của trang sau).
+     */
+    private void handleQuery(Request.Query request, FrameWriter writer) throws IOException {
+        try {
+            List<Student> page = studentRepository.query(request.filter(), request.afterId(), request.limit() + 1);
+            writePage(page, request.limit(), writer);
+            log.info("Gửi {} students theo {}", Math.min(page.size(), request.limit()), request.filter());
+        } catch (ProgramException e) {
+            sendError(writer, "DB_ERROR", e.getMessage());
+        }
+    }
+
+    // page có thể dư 1 dòng so với limit, dòng dư chỉ để biết còn trang sau
+    private void writePage(List<Student> page, int limit, FrameWriter writer) throws IOException {
+        boolean hasMore = page.size() > limit;
+        if (hasMore) {
+            page = page.subList(0, limit);
+        }
+        JsonGenerator generator = writer.startData(page);
+        if (hasMore) {
+            generator.writeNumberField("next", page.get(page.size() - 1).getId());
+        } else {
+            generator.writeNullField("next");
+        }
+        writer.endResponse(currentRequestId);
+    }
+
+    /**
+     * SEARCH: payload {"query":"nguyen cntt","limit":20}, tìm trong FullName và Major không phân biệt dấu.
+     * data xếp theo độ liên quan, "more" = true nếu còn kết quả ngoài limit.
+     */
+    private void handleSearch(Request.Search request, FrameWriter writer) throws IOException {
+        try {
+            List<Student> found = studentRepository.search(request.query(), request.limit() + 1);
+            boolean more = found.size() > request.limit();
+            if (more) {
+                found = found.subList(0, request.limit());
+            }
+            JsonGenerator generator = writer.startData(found);
+            generator.writeBooleanField("more", more);
+            writer.endResponse(currentRequestId);
+            log.info("Tìm \"{}\": {} kết quả", request.query(), found.size());
+        } catch (ProgramException e) {
+            sendError(writer, "DB_ERROR", e.getMessage());
+        }
+    }
+
+    /**
+     * CHANGES_SINCE: payload {"since":version,"epoch":epoch} lấy từ response trước.
+     * data: {"version","epoch","reset","upserts":[student mới nhất của các id đã thêm/sửa],"deletes":[id đã xóa]}.
+     * reset = true (epoch khác, since quá cũ hoặc quá nhiều thay đổi) thì upserts/deletes rỗng,
+     * client tải lại toàn bộ rồi hỏi tiếp từ version trả về. Các dòng hiện tại được đọc 1 lần bằng findByIds,
+     * id không còn là đã xóa.
+     */
+    private void handleChangesSince(Request.ChangesSince request, FrameWriter writer) throws IOException {
+        ChangeLog.Changes changes = changeFeed.changeLog().since(request.since(), request.epoch(), RequestDecoder.MAX_PAGE_SIZE);
+        try {
+            Map<Long, Student> found = new HashMap<>();
+            for (Student student : studentRepository.findByIds(changes.ids())) {
+                found.put(student.getId(), student);
+            }
+            List<Student> upserts = new ArrayList<>(found.size());
+            List<Long> deletes = new ArrayList<>();
+            for (long id : changes.ids()) {
+                Student student = found.get(id);
+                if (student != null) {
+                    upserts.add(student);
+                } else {
+                    deletes.add(id);
+                }
+            }
+            writer.startData(new ChangeSet(changes.version(), changes.epoch(), changes.reset(), upserts, deletes));
+            writer.endResponse(currentRequestId);
+            log.debug("Gửi {} thay đổi sau version {} (reset = {})", changes.ids().length, request.since(), changes.reset());
+        } catch (ProgramException e) {
+            sendError(writer, "DB_ERROR", e.getMessage());
+        }
+    }
+
+    // data của CHANGES_SINCE
+    record ChangeSet(long version, long epoch, boolean reset, List<Student> upserts, List<Long> deletes) {
+    }
+
+    /**
+     * SUBSCRIBE: payload {"major","fromId","toId"} đều không bắt buộc. data là filter đã nhận, kèm "version","epoch"
+     * như CHANGES_SINCE. Sau đó mỗi lần ghi
+     * khớp filter có version lớn hơn được đẩy tới kết nối này (xem writePushes). Nhận RESYNC thì gọi CHANGES_SINCE
+     * từ version đã áp dụng gần nhất.
+     */
+    private void handleSubscribe(Request.Subscribe request, FrameWriter writer) throws IOException {
+        Runnable wakeup = pushWakeup;
+        if (wakeup == null) {
+            sendError(writer, "UNSUPPORTED", "Kết nối này không nhận được sự kiện");
+            return;
+        }
+        unsubscribe();
+        ChangeFeed.Subscription created = changeFeed.subscribe(request.filter(), wakeup);
+        subscription = created;
+        JsonGenerator generator = writer.startData(request.filter());
+        generator.writeNumberField("version", created.startVersion());
+        generator.writeNumberField("epoch", created.epoch());
+        writer.endResponse(currentRequestId);
+        log.info("Client {} đăng ký nhận thay đổi {}", clientAddress, request.filter());
+    }
+
+    /**
+     * STATS: số lượng, gpa trung bình/min/max toàn bộ, theo major và theo sex.
+     * Đọc từ số liệu giữ sẵn (StudentStats), chỉ lần đầu mới phải duyệt table.
+     */
+    private void handleStats(FrameWriter writer) throws IOException {
+        try {
+            writer.startData(stats.snapshot());
+            writer.endResponse(currentRequestId);
+        } catch (ProgramException e) {
+            sendError(writer, "DB_ERROR", e.getMessage());
+        }
+    }
+
+    /**
+     * METRICS: số request, độ trễ p50/p99/p999 và thời gian DB theo action, lỗi theo code, byte nhận/gửi,
+     * kết nối, hàng đợi... cộng dồn từ lúc server chạy. Cùng số liệu với endpoint Prometheus /metrics.
+     */
+    private void handleMetrics(FrameWriter writer) throws IOException {
+        writer.startData(metrics.snapshot());
+        writer.endResponse(currentRequestId);
+    }
+
+    private void handleUpdate(Request.Update request, FrameWriter writer) throws IOException {
+        // đọc, ghi và publish cùng 1 lần giữ khóa id để sự kiện theo đúng thứ tự commit
+        changeFeed.lockRows(request.id());
+        try {
+            Optional<Student> optionalStudentById = idStudentExistsed(request.id(),writer);
             if (optionalStudentById.isPresent()){
                 Student dbStudent = optionalStudentById.get();
+                String majorBefore = dbStudent.getMajor();
 
-                Student studentPayload = mappingPayloadToStudent(payload);
+                Student studentPayload = request.changes();
                 if (studentPayload.getName() != null && !studentPayload.getName().isBlank()){
                     dbStudent.setName(studentPayload.getName());
                 }
@@ -203,6 +652,8 @@ public class ClientHandler implements Runnable {
                 }
 
                 if (studentRepository.update(dbStudent)){
+                    stats.put(dbStudent);
+                    changeFeed.updated(dbStudent, majorBefore);
                     sendSuccess(writer, "Student id : " + dbStudent.getId()
                             +" và name : " + dbStudent.getName()+ " đã được update");
                     log.info("Đã update thành công student {}", dbStudent);
@@ -214,17 +665,19 @@ public class ClientHandler implements Runnable {
         } catch (ProgramException e){
             sendError(writer,"DB_ERROR",e.getMessage());
             log.error("Không thể cập nhật, có lỗi cơ sở dữ liệu",e);
+        } finally {
+            changeFeed.unlockRows(request.id());
         }
     }
 
-    private void handleDelete(ObjectNode request, BufferedWriter writer) throws IOException {
-        if(!validatePayload(request.path("payload"),writer,"DELETE")) return;
-        ObjectNode payload = (ObjectNode) request.path("payload");
-
+    private void handleDelete(long idExisted, FrameWriter writer) throws IOException {
+        changeFeed.lockRows(idExisted);
         try {
-            if (idStudentExistsed(payload, writer).isPresent()){
-                long idExisted = payload.path("id").asLong();
+            Optional<Student> existing = idStudentExistsed(idExisted, writer);
+            if (existing.isPresent()){
                 if(studentRepository.delete(idExisted)) {
+                    stats.remove(idExisted);
+                    changeFeed.deleted(idExisted, existing.get().getMajor());
                     sendSuccess(writer, "Student id : " + idExisted + " đã được xóa");
                     log.info("Đã xóa thành công student có id = {}", idExisted);
                 } else {
@@ -235,69 +688,17 @@ public class ClientHandler implements Runnable {
         } catch (ProgramException e){
             sendError(writer,"DB_ERROR",e.getMessage());
             log.error("Không thể xóa, có lỗi cơ sở dữ liệu",e);
+        } finally {
+            changeFeed.unlockRows(idExisted);
         }
-
     }
 
-    private void handlQuit(BufferedWriter writer, String clientAddress) throws IOException {
+    private void handlQuit(FrameWriter writer, String clientAddress) throws IOException {
         sendSuccess(writer,"Client " + clientAddress + " đã đóng");
         log.info("Client {} yêu cầu đã từ bỏ", clientAddress);
     }
 
-    private boolean validatePayload(JsonNode payload, BufferedWriter writer, String action) throws  IOException{
-        if (payload.isMissingNode() || payload.isEmpty()){
-            sendError(writer, action.toUpperCase(), "Payload phải có để yêu cầu " + action.toUpperCase());
-            return false;
-        }
-        return true;
-    }
-
-
-    private Student mappingPayloadToStudent(ObjectNode payload){
-        //validate từng trường thông tin
-        String name = payload.path("name").asText(null);
-        String dobStr = payload.path("dob").asText(null);
-        double gpa = payload.path("gpa").asDouble(-1);
-        String sexStr = payload.path("sex").asText(null);
-        String major = payload.path("major").asText(null);
-
-
-        LocalDate dob = null;
-        if (dobStr != null){ // cần check null nếu không khi parse sẽ ném ra NullPointException
-            try {
-                dob = LocalDate.parse(dobStr);
-            } catch (DateTimeParseException e){
-            }
-        }
-        if (gpa < 0 || gpa > 4 ){
-            gpa = -1;
-        }
-
-        Sex sex = null;
-        if (sexStr != null){
-            try {
-                sex = Sex.valueOf(sexStr.toUpperCase());
-            } catch (IllegalArgumentException e ) {
-            }
-        }
-
-
-         return Student.builder()
-                .name(name)
-                .dob(dob)
-                .gpa(gpa)
-                .sex(sex)
-                .major(major)
-                .build();
-
-    }
-
-    private Optional<Student> idStudentExistsed(ObjectNode payload, BufferedWriter writer) throws IOException {
-        long id_student_exist = payload.path("id").asLong(-1);
-        if (id_student_exist < 0){
-            sendError(writer, "INVALID_ID","Id hợp lệ phải là số nguyên dương");
-            return Optional.empty();
-        }
+    private Optional<Student> idStudentExistsed(long id_student_exist, FrameWriter writer) throws IOException {
         try {
             Optional<Student> optionalStudent = studentRepository.findById(id_student_exist);
             if (optionalStudent.isPresent()){
@@ -310,22 +711,33 @@ public class ClientHandler implements Runnable {
         return Optional.empty();
     }
 
-    private void sendSuccess(BufferedWriter writer, String message) throws IOException{
-        ObjectNode response = mapper.createObjectNode();
-        response.put("status","OK");
-        response.put("message", message);
-        writer.write(mapper.writeValueAsString(response));
-        writer.write("\n");
-        writer.flush();
+    /**
+     * Ghi 1 response (kèm requestId của request đang xử lý nếu client có gửi) nhưng chưa flush.
+     * Vòng đọc request sẽ flush khi không còn request nào đang chờ, nhờ vậy các response
+     * của nhiều request gửi liên tiếp (pipelining) được gom vào 1 lần ghi.
+     */
+    private void send(FrameWriter writer, ObjectNode response) throws IOException {
+        if (currentRequestId != null) {
+            response.set("requestId", currentRequestId);
+        }
+        writer.writeFrame(response);
     }
 
-    private void sendError(BufferedWriter writer, String code, String message) throws IOException{
-        ObjectNode response = mapper.createObjectNode();
-        response.put("status", "ERROR");
-        response.put("code", code);
-        response.put("message",message);
-        writer.write(mapper.writeValueAsString(response));
-        writer.write("\n");
-        writer.flush();
+    // {"status":"ERROR","code":"RATE_LIMITED","message":...,"retryAfterMs":n}
+    private void sendRateLimited(FrameWriter writer, long retryAfterMs) throws IOException {
+        metrics.error("RATE_LIMITED");
+        JsonGenerator generator = writer.startError("RATE_LIMITED", "Gửi quá nhiều request, thử lại sau " + retryAfterMs + " ms");
+        generator.writeNumberField("retryAfterMs", retryAfterMs);
+        writer.endResponse(currentRequestId);
+        log.debug("Client {} bị giới hạn, thử lại sau {} ms", clientAddress, retryAfterMs);
+    }
+
+    private void sendSuccess(FrameWriter writer, String message) throws IOException{
+        writer.writeSuccess(message, currentRequestId);
+    }
+
+    private void sendError(FrameWriter writer, String code, String message) throws IOException{
+        metrics.error(code);
+        writer.writeError(code, message, currentRequestId);
     }
 }
@@ -0,0 +1,167 @@
+package org.client_server.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.client_server.util.ServerConfig;
+import org.client_server.util.TimerWheel;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hạn thời gian của 1 kết nối, kiểm tra trên 1 TimerWheel dùng chung cho mọi kết nối và mọi chế độ.
+ * - idle   : không có request nào quá server.idleTimeoutMs (client gửi PING để giữ kết nối)
+ * - request: từ byte đầu của 1 request tới khi response của nó được ghi xong quá server.requestTimeoutMs
+ *            (client gửi dở 1 request rồi dừng, hoặc không đọc response nên thread/buffer bị giữ khi ghi)
+ * Hết hạn thì gọi evict (đóng socket/channel) nên thread đang chặn trên socket được giải phóng ngay.
+ *
+ * requestStarted/requestFinished chỉ ghi field volatile. Mỗi kết nối chỉ có 1 timeout trong wheel,
+ * tới lượt kiểm tra mà chưa hết hạn thì hẹn lại; khi rảnh, lần kiểm tra kế tiếp không xa quá
+ * server.requestTimeoutMs nên request mới bắt đầu không cần hẹn lại timeout.
+ */
+@Slf4j
+final class ConnectionTimeouts {
+    private static final long IDLE_TIMEOUT_MS = ServerConfig.getLong("server.idleTimeoutMs", 60_000);
+    private static final long REQUEST_TIMEOUT_MS = ServerConfig.getLong("server.requestTimeoutMs", 30_000);
+    private static final long NO_REQUEST = Long.MIN_VALUE;
+
+    private static final LongAdder IDLE_EVICTIONS = new LongAdder();
+    private static final LongAdder REQUEST_EVICTIONS = new LongAdder();
+
+    // kết nối không cần hạn (benchmark, test), mọi lời gọi đều bỏ qua
+    static final ConnectionTimeouts DISABLED = new ConnectionTimeouts(null, 0, 0, "", () -> { });
+
+    private static final class Shared {
+        static final TimerWheel WHEEL = new TimerWheel("connection-timer",
+                ServerConfig.getLong("server.timerTickMs", 100), 512);
+    }
+
+    static TimerWheel wheel() {
+        return Shared.WHEEL;
+    }
+
+    private final TimerWheel timerWheel;
+    private final long idleNanos;
+    private final long requestNanos;
+    private final String clientAddress;
+    private final Runnable evict;
+    private volatile long idleSince = System.nanoTime();
+    private volatile long requestSince = NO_REQUEST;
+    private volatile TimerWheel.Timeout timeout;
+    private volatile boolean expired;
+    private volatile boolean cancelled;
+
+    private ConnectionTimeouts(TimerWheel timerWheel, long idleTimeoutMs, long requestTimeoutMs,
+                               String clientAddress, Runnable evict) {
+        this.timerWheel = timerWheel;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, idleTimeoutMs));
+        this.requestNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, requestTimeoutMs));
+        this.clientAddress = clientAddress;
+        this.evict = evict;
+    }
+
+    /**
+     * Bắt đầu theo dõi 1 kết nối vừa accept theo server.idleTimeoutMs / server.requestTimeoutMs.
+     * @param evict đóng kết nối, chạy trên thread của wheel nên không được chặn
+     */
+    static ConnectionTimeouts start(String clientAddress, Runnable evict) {
+        if (IDLE_TIMEOUT_MS <= 0 && REQUEST_TIMEOUT_MS <= 0) return DISABLED;
+        ConnectionTimeouts timeouts = new ConnectionTimeouts(wheel(), IDLE_TIMEOUT_MS, REQUEST_TIMEOUT_MS, clientAddress, evict);
+        timeouts.scheduleCheck(System.nanoTime());
+        return timeouts;
+    }
+
+    static long idleEvictions() {
+        return IDLE_EVICTIONS.sum();
+    }
+
+    static long requestEvictions() {
+        return REQUEST_EVICTIONS.sum();
+    }
+
+    // đã nhận byte của 1 request, gọi lại khi request trước chưa xong thì giữ mốc cũ
+    void requestStarted() {
+        if (requestSince == NO_REQUEST) {
+            requestSince = System.nanoTime();
+        }
+    }
+
+    // mọi response đã ghi xong và không còn request nào dở: tính idle từ lúc này
+    void requestFinished() {
+        idleSince = System.nanoTime();
+        requestSince = NO_REQUEST;
+    }
+
+    // kết nối đã bị đóng vì hết hạn (lỗi I/O sau đó là do evict, không phải do client)
+    boolean expired() {
+        return expired;
+    }
+
+    // kết nối đóng theo cách thường, gỡ timeout khỏi wheel
+    void cancel() {
+        cancelled = true;
+        TimerWheel.Timeout current = timeout;
+        if (current != null) current.cancel();
+    }
+
+    // blocking I/O: mỗi lần đọc được byte là đã có request đang tới
+    InputStream track(InputStream in) {
+        if (this == DISABLED) return in;
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) requestStarted();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) requestStarted();
+                return n;
+            }
+        };
+    }
+
+    private void check() {
+        if (cancelled) return;
+        long now = System.nanoTime();
+        long started = requestSince;
+        long deadline;
+        boolean inRequest = started != NO_REQUEST;
+        if (inRequest) {
+            deadline = requestNanos > 0 ? started + requestNanos : Long.MAX_VALUE;
+        } else {
+            deadline = idleNanos > 0 ? idleSince + idleNanos : Long.MAX_VALUE;
+        }
+
+        if (deadline != Long.MAX_VALUE && now - deadline >= 0) {
+            expired = true;
+            if (inRequest) {
+                REQUEST_EVICTIONS.increment();
+                log.warn("Client {}: request chưa xong sau {} ms, đóng kết nối", clientAddress, REQUEST_TIMEOUT_MS);
+            } else {
+                IDLE_EVICTIONS.increment();
+                log.info("Client {}: không có request nào trong {} ms, đóng kết nối", clientAddress, IDLE_TIMEOUT_MS);
+            }
+            evict.run();
+            return;
+        }
+        scheduleCheck(now, deadline);
+    }
+
+    private void scheduleCheck(long now) {
+        scheduleCheck(now, idleNanos > 0 ? idleSince + idleNanos : Long.MAX_VALUE);
+    }
+
+    private void scheduleCheck(long now, long deadline) {
+        long delay = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - now;
+        if (requestNanos > 0) delay = Math.min(delay, requestNanos);
+        if (delay == Long.MAX_VALUE) delay = idleNanos;
+        timeout = timerWheel.schedule(this::check, delay, TimeUnit.NANOSECONDS);
+        if (cancelled) timeout.cancel();// cancel() chạy xen giữa lúc hẹn lại
+    }
+}
@@ -0,0 +1,108 @@
+package org.client_server.server;
+
+import org.client_server.util.WireFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Đọc từng frame request từ socket (chế độ blocking).
+ * JSON: các byte tới \n (bỏ \r cuối dòng), định dạng nhị phân: 4 byte độ dài + nội dung.
+ */
+class FrameReader {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final int maxFrameBytes;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+    FrameReader(InputStream in, int maxFrameBytes) {
+        this.in = in;
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    /**
+     * @return nội dung frame, null nếu client đã đóng kết nối
+     */
+    byte[] readFrame(WireFormat format) throws IOException {
+        return format.isBinary() ? readLengthPrefixed() : readLine();
+    }
+
+    // còn dữ liệu đã tới mà chưa đọc (client gửi nhiều request liên tiếp)
+    boolean hasBuffered() throws IOException {
+        return position < limit || in.available() > 0;
+    }
+
+    private byte[] readLine() throws IOException {
+        line.reset();
+        while (true) {
+            if (position == limit && !fill()) {
+                // EOF: phần dòng còn dở vẫn được coi là 1 request như BufferedReader.readLine
+                return line.size() == 0 ? null : line.toByteArray();
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            line.write(buffer, start, position - start);
+            if (line.size() > maxFrameBytes) {
+                throw new IOException("Request dài quá " + maxFrameBytes + " byte");
+            }
+            if (position < limit) {
+                position++;// bỏ \n
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length;
+                if (length > 0 && bytes[length - 1] == '\r') {
+                    return Arrays.copyOf(bytes, length - 1);
+                }
+                return bytes;
+            }
+        }
+    }
+
+    private byte[] readLengthPrefixed() throws IOException {
+        if (position == limit && !fill()) {
+            return null;
+        }
+        int length = 0;
+        for (int i = 0; i < 4; i++) {
+            length = (length << 8) | readByte();
+        }
+        if (length < 0 || length > maxFrameBytes) {
+            throw new IOException("Frame có độ dài không hợp lệ: " + length);
+        }
+        byte[] frame = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            if (position == limit && !fill()) {
+                throw new EOFException("Kết nối đóng giữa chừng 1 frame");
+            }
+            int n = Math.min(length - copied, limit - position);
+            System.arraycopy(buffer, position, frame, copied, n);
+            position += n;
+            copied += n;
+        }
+        return frame;
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit && !fill()) {
+            throw new EOFException("Kết nối đóng giữa chừng 1 frame");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) return false;
+        position = 0;
+        limit = n;
+        return true;
+    }
+}
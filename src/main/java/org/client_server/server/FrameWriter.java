@@ -0,0 +1,181 @@
+package org.client_server.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.client_server.util.WireFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Ghi response thành frame theo định dạng đã thỏa thuận với client.
+ * Mỗi frame được generator encode thẳng ra byte vào 1 buffer dùng lại của kết nối
+ * (chừa sẵn 4 byte đầu cho độ dài), rồi ghi ra stream bằng đúng 1 lần write.
+ * Tên field và các giá trị cố định của envelope được encode sẵn 1 lần (SerializedString).
+ * Không tự flush, ClientHandler/NioServer quyết định khi nào flush.
+ */
+class FrameWriter {
+    static final SerializableString STATUS = new SerializedString("status");
+    static final SerializableString OK = new SerializedString("OK");
+    static final SerializableString ERROR = new SerializedString("ERROR");
+    static final SerializableString CODE = new SerializedString("code");
+    static final SerializableString MESSAGE = new SerializedString("message");
+    static final SerializableString DATA = new SerializedString("data");
+    static final SerializableString REQUEST_ID = new SerializedString("requestId");
+
+    private static final int HEADER_BYTES = 4;
+    private static final int INITIAL_BUFFER_BYTES = 4 * 1024;
+    private static final int MAX_RETAINED_BUFFER_BYTES = 256 * 1024;// response lớn hơn (LIST cả bảng) không giữ buffer lại
+
+    private static final ServerMetrics metrics = ServerMetrics.shared();
+
+    private final OutputStream out;
+    private final FrameBuffer frame = new FrameBuffer();
+    private WireFormat format = WireFormat.JSON;
+    private JsonGenerator generator;
+
+    FrameWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    WireFormat format() {
+        return format;
+    }
+
+    // chỉ đổi định dạng khi không có frame nào đang ghi dở
+    void setFormat(WireFormat format) {
+        this.format = format;
+    }
+
+    // bắt đầu 1 frame, ghi nội dung qua generator rồi gọi endFrame
+    JsonGenerator startFrame() throws IOException {
+        frame.reset();
+        generator = format.factory().createGenerator(frame);
+        return generator;
+    }
+
+    void endFrame() throws IOException {
+        generator.close();
+        generator = null;
+        metrics.bytesOut(frame.writeTo(out, format.isBinary()));
+    }
+
+    void writeFrame(JsonNode node) throws IOException {
+        startFrame().writeTree(node);
+        endFrame();
+    }
+
+    // {"status":"OK","message":...,"requestId":...}
+    void writeSuccess(String message, JsonNode requestId) throws IOException {
+        JsonGenerator g = startFrame();
+        g.writeStartObject();
+        g.writeFieldName(STATUS);
+        g.writeString(OK);
+        g.writeFieldName(MESSAGE);
+        g.writeString(message);
+        writeRequestId(g, requestId);
+        g.writeEndObject();
+        endFrame();
+    }
+
+    // {"status":"ERROR","code":...,"message":...,"requestId":...}
+    void writeError(String code, String message, JsonNode requestId) throws IOException {
+        startError(code, message);
+        endResponse(requestId);
+    }
+
+    // mở frame lỗi để ghi thêm field (ví dụ retryAfterMs), kết thúc bằng endResponse
+    JsonGenerator startError(String code, String message) throws IOException {
+        JsonGenerator g = startFrame();
+        g.writeStartObject();
+        g.writeFieldName(STATUS);
+        g.writeString(ERROR);
+        g.writeFieldName(CODE);
+        g.writeString(code);
+        g.writeFieldName(MESSAGE);
+        g.writeString(message);
+        return g;
+    }
+
+    /**
+     * Mở frame {"status":"OK","data":<value>, các field còn lại ghi tiếp qua generator trả về,
+     * kết thúc bằng endResponse. value được serialize thẳng bằng mapper của định dạng, không qua tree.
+     */
+    JsonGenerator startData(Object value) throws IOException {
+        JsonGenerator g = startFrame();
+        g.writeStartObject();
+        g.writeFieldName(STATUS);
+        g.writeString(OK);
+        g.writeFieldName(DATA);
+        g.writeObject(value);
+        return g;
+    }
+
+    void endResponse(JsonNode requestId) throws IOException {
+        writeRequestId(generator, requestId);
+        generator.writeEndObject();
+        endFrame();
+    }
+
+    static void writeRequestId(JsonGenerator g, JsonNode requestId) throws IOException {
+        if (requestId != null) {
+            g.writeFieldName(REQUEST_ID);
+            g.writeTree(requestId);
+        }
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    // giống ByteArrayOutputStream nhưng không synchronized, dùng lại mảng và chừa chỗ cho header độ dài
+    private static final class FrameBuffer extends OutputStream {
+        private byte[] bytes = new byte[INITIAL_BUFFER_BYTES];
+        private int count = HEADER_BYTES;
+
+        void reset() {
+            if (bytes.length > MAX_RETAINED_BUFFER_BYTES) {
+                bytes = new byte[INITIAL_BUFFER_BYTES];
+            }
+            count = HEADER_BYTES;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            bytes[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, bytes, count, len);
+            count += len;
+        }
+
+        // binary: 4 byte độ dài + nội dung, text: nội dung + \n. Trả về số byte đã ghi
+        int writeTo(OutputStream out, boolean binary) throws IOException {
+            int length = count - HEADER_BYTES;
+            if (binary) {
+                bytes[0] = (byte) (length >>> 24);
+                bytes[1] = (byte) (length >>> 16);
+                bytes[2] = (byte) (length >>> 8);
+                bytes[3] = (byte) length;
+                out.write(bytes, 0, count);
+                return count;
+            }
+            write('\n');
+            out.write(bytes, HEADER_BYTES, length + 1);
+            return length + 1;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.client_server.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.client_server.util.DBConnector;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Bước kiểm tra schema lúc khởi động (storage.engine=mysql): tạo các index phụ mà QUERY cần trên table Students.
+ * - (Major, Id_student): chỉ major = ?, đọc đúng thứ tự keyset ORDER BY Id_student nên không phải filesort
+ *   cả major mỗi trang như khi dùng (Major, Gpa)
+ * - (Major, Gpa): major = ? AND gpa BETWEEN
+ * - (Sex, Gpa)  : sex = ? và sex = ? AND gpa BETWEEN
+ * - (Gpa)       : chỉ lọc theo khoảng gpa
+ * - (Dob)       : khoảng ngày sinh
+ * Index đã có (kể cả khác tên) với đúng các cột đầu tiên đó thì coi như đủ. Index phụ của InnoDB luôn ngầm có
+ * khóa chính ở cuối nên index (Major) có sẵn cũng được tính là (Major, Id_student).
+ * Không bao giờ xóa hay sửa index có sẵn, chỉ cảnh báo.
+ */
+@Slf4j
+final class JdbcSchema {
+    private static final String TABLE = "Students";
+    private static final String PRIMARY_KEY = "Id_student";
+
+    record IndexSpec(String name, List<String> columns) {
+    }
+
+    static final List<IndexSpec> INDEXES = List.of(
+            new IndexSpec("idx_students_major", List.of("Major", PRIMARY_KEY)),
+            new IndexSpec("idx_students_major_gpa", List.of("Major", "Gpa")),
+            new IndexSpec("idx_students_sex_gpa", List.of("Sex", "Gpa")),
+            new IndexSpec("idx_students_gpa", List.of("Gpa")),
+            new IndexSpec("idx_students_dob", List.of("Dob")));
+
+    private JdbcSchema() {
+    }
+
+    // lỗi chỉ được log: server vẫn chạy được, QUERY chỉ chậm hơn khi thiếu index
+    static void ensureIndexes() {
+        try (Connection connection = DBConnector.getConnector()) {
+            Map<String, List<String>> existing = existingIndexes(connection);
+            for (IndexSpec spec : INDEXES) {
+                Optional<String> covering = existing.entrySet().stream()
+                        .filter(e -> startsWith(e.getValue(), spec.columns()))
+                        .map(Map.Entry::getKey)
+                        .findFirst();
+                if (covering.isPresent()) {
+                    log.info("Index {}{} đã có: {}", TABLE, spec.columns(), covering.get());
+                    continue;
+                }
+                if (existing.containsKey(spec.name())) {
+                    log.warn("Index {} đã tồn tại nhưng trên các cột {}, cần {}. Không tự sửa",
+                            spec.name(), existing.get(spec.name()), spec.columns());
+                    continue;
+                }
+                String sql = "CREATE INDEX " + spec.name() + " ON " + TABLE + " (" + String.join(", ", spec.columns()) + ")";
+                long started = System.nanoTime();
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute(sql);
+                }
+                log.info("Đã tạo index {} trong {} ms", spec.name(), (System.nanoTime() - started) / 1_000_000);
+            }
+        } catch (SQLException e) {
+            log.error("Không kiểm tra/tạo được index cho table {}", TABLE, e);
+        }
+    }
+
+    // tên index -> các cột theo thứ tự trong index
+    private static Map<String, List<String>> existingIndexes(Connection connection) throws SQLException {
+        String sql = "SELECT INDEX_NAME, COLUMN_NAME FROM information_schema.STATISTICS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? ORDER BY INDEX_NAME, SEQ_IN_INDEX";
+        Map<String, List<String>> indexes = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, TABLE);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    indexes.computeIfAbsent(rs.getString("INDEX_NAME"), k -> new ArrayList<>()).add(rs.getString("COLUMN_NAME"));
+                }
+            }
+        }
+        // cột khóa chính InnoDB thêm ngầm vào cuối mọi index phụ, STATISTICS không liệt kê
+        indexes.forEach((name, columns) -> {
+            if (!"PRIMARY".equals(name) && columns.stream().noneMatch(PRIMARY_KEY::equalsIgnoreCase)) {
+                columns.add(PRIMARY_KEY);
+            }
+        });
+        return indexes;
+    }
+
+    private static boolean startsWith(List<String> columns, List<String> prefix) {
+        if (columns.size() < prefix.size()) return false;
+        for (int i = 0; i < prefix.size(); i++) {
+            if (!columns.get(i).equalsIgnoreCase(prefix.get(i))) return false;
+        }
+        return true;
+    }
+}
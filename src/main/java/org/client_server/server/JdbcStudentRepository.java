@@ -0,0 +1,579 @@
+package org.client_server.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.client_server.exception.ProgramException;
+import org.client_server.model.Sex;
+import org.client_server.model.Student;
+import org.client_server.storage.InvertedIndex;
+import org.client_server.util.DBConnector;
+import org.client_server.util.LruCache;
+import org.client_server.util.ServerConfig;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// engine mặc định (storage.engine=mysql): mọi thao tác đi qua DBConnector tới MySQL
+@Slf4j
+public class JdbcStudentRepository implements StudentRepository {
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    // null = không giới hạn số lời gọi DB đồng thời
+    private static volatile Semaphore dbCallPermits;
+
+    // câu SQL của QUERY theo shape của filter, tối đa 16 câu nên cache statement của pool giữ được hết
+    private static final Map<Integer, String> querySqlByShape = new ConcurrentHashMap<>();
+
+    // cache id -> student dùng chung cho mọi ClientHandler, null nếu cache.students.maxSize = 0
+    private static final LruCache<Long, Student> cache = createCache();
+
+    private static LruCache<Long, Student> createCache() {
+        int maxSize = ServerConfig.getInt("cache.students.maxSize", 10000);
+        if (maxSize <= 0) return null;
+        long ttlMs = ServerConfig.getLong("cache.students.ttlMs", 60000);
+        int segments = ServerConfig.getInt("cache.students.segments", 16);
+        log.info("Cache student: tối đa {} phần tử, ttl = {} ms, {} segment", maxSize, ttlMs, segments);
+        return new LruCache<>(maxSize, ttlMs, segments);
+    }
+
+    // thống kê hit/miss của cache, empty nếu tắt cache
+    public static Optional<LruCache.Stats> cacheStats() {
+        return cache == null ? Optional.empty() : Optional.of(cache.stats());
+    }
+
+    private static void invalidate(long id) {
+        if (cache != null) cache.invalidate(id);
+    }
+
+    /*
+     * Index cho SEARCH, dùng chung như cache. Dựng lười từ toàn bộ table ở lần SEARCH đầu tiên,
+     * sau đó mỗi lần ghi thành công qua repository thì cập nhật luôn (thay đổi ghi thẳng vào DB từ ngoài server không thấy được).
+     * Lúc đang dựng, các lần ghi được ghi lại vào pendingIndexWrites và áp sau khi duyệt xong table,
+     * ghi lại theo trạng thái đầy đủ của dòng nên áp trùng cũng không sai.
+     */
+    private static final ReentrantReadWriteLock searchLock = new ReentrantReadWriteLock();
+    private static final Object searchBuildLock = new Object();
+    // 2 field dưới chỉ đọc/ghi khi giữ searchLock
+    private static InvertedIndex<Student> searchIndex;// null khi chưa dựng
+    private static List<IndexWrite> pendingIndexWrites;// khác null khi đang dựng index
+
+    // student = null là xóa
+    private record IndexWrite(long id, Student student) {
+    }
+
+    private static void indexStudent(Student student) {
+        applyIndexWrite(new IndexWrite(student.getId(), student.toBuilder().build()));
+    }
+
+    private static void unindexStudent(long id) {
+        applyIndexWrite(new IndexWrite(id, null));
+    }
+
+    private static void applyIndexWrite(IndexWrite write) {
+        searchLock.writeLock().lock();
+        try {
+            if (searchIndex != null) {
+                apply(searchIndex, write);
+            } else if (pendingIndexWrites != null) {
+                pendingIndexWrites.add(write);
+            }
+        } finally {
+            searchLock.writeLock().unlock();
+        }
+    }
+
+    private static void apply(InvertedIndex<Student> index, IndexWrite write) {
+        if (write.student() == null) {
+            index.remove(write.id());
+        } else {
+            index.put(write.id(), write.student(), write.student().getName(), write.student().getMajor());
+        }
+    }
+
+    /**
+     * Giới hạn số lời gọi DB chạy đồng thời trên toàn server.
+     * Dùng khi mỗi kết nối có 1 virtual thread riêng, số thread không còn là giới hạn tự nhiên.
+     */
+    public static void limitConcurrentCalls(int permits) {
+        dbCallPermits = new Semaphore(permits, true);
+        log.info("Giới hạn {} lời gọi DB đồng thời", permits);
+    }
+
+    @Override
+    public long insert(Student student) {
+        String sql = "INSERT INTO Students (FullName, Dob, Gpa, Sex, Major) VALUES (?,?,?,?,?)";
+
+        try (DbCallPermit permit = DbCallPermit.acquire();
+             Connection connection = DBConnector.getConnector();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+            preparedStatement.setString(1, student.getName());
+            preparedStatement.setDate(2, Date.valueOf(student.getDob()));
+            preparedStatement.setDouble(3, student.getGpa());
+            preparedStatement.setString(4, student.getSex().name());
+            preparedStatement.setString(5, student.getMajor());
+
+            int row = preparedStatement.executeUpdate();
+            if (row > 0){
+                try (ResultSet rs = preparedStatement.getGeneratedKeys()){
+                    if (rs.next()){
+                        long id = rs.getLong("Id_student");
+                        student.setId(id);
+                        invalidate(id);
+                        indexStudent(student);
+                        log.info("Insert thành công Student : {}", student);
+                        return id;
+                    }
+                }
+            }
+            return -1;
+        } catch (SQLException e) {
+            log.error("Lỗi tại student : {}", student, e);
+            throw new ProgramException("Lỗi không thể insert dữ liệu", e);
+        }
+    }
+
+    /**
+     * Insert nhiều student bằng addBatch/executeBatch, chia lô theo db.batch.chunkSize.
+     * Mỗi lô là 1 transaction: lô lỗi thì rollback và mọi dòng trong lô nhận lỗi, các lô khác vẫn được ghi.
+     * Với rewriteBatchedStatements=true driver gộp cả lô thành 1 câu INSERT nhiều VALUES.
+     */
+    @Override
+    public List<BatchRowResult> insertAll(List<Student> students){
+        String sql = "INSERT INTO Students (FullName, Dob, Gpa, Sex, Major) VALUES (?,?,?,?,?)";
+        return writeBatch(sql, students, false);
+    }
+
+    /**
+     * Insert hoặc cập nhật theo Id_student (ON DUPLICATE KEY UPDATE), id của mỗi student phải > 0.
+     */
+    @Override
+    public List<BatchRowResult> upsertAll(List<Student> students){
+        String sql = "INSERT INTO Students (FullName, Dob, Gpa, Sex, Major, Id_student) VALUES (?,?,?,?,?,?) "
+                + "ON DUPLICATE KEY UPDATE FullName=VALUES(FullName), Dob=VALUES(Dob), Gpa=VALUES(Gpa), Sex=VALUES(Sex), Major=VALUES(Major)";
+        return writeBatch(sql, students, true);
+    }
+
+    private List<BatchRowResult> writeBatch(String sql, List<Student> students, boolean upsert){
+        List<BatchRowResult> results = new ArrayList<>(students.size());
+        int chunkSize = DBConnector.batchChunkSize();
+
+        try (DbCallPermit permit = DbCallPermit.acquire();
+             Connection connection = DBConnector.getConnector();
+             PreparedStatement statement = upsert
+                     ? connection.prepareStatement(sql)
+                     : connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+            //autocommit được pool trả lại như cũ khi connection được close
+            connection.setAutoCommit(false);
+            for (int from = 0; from < students.size(); from += chunkSize) {
+                List<Student> chunk = students.subList(from, Math.min(from + chunkSize, students.size()));
+                try {
+                    for (Student student : chunk) {
+                        statement.setString(1, student.getName());
+                        statement.setDate(2, Date.valueOf(student.getDob()));
+                        statement.setDouble(3, student.getGpa());
+                        statement.setString(4, student.getSex().name());
+                        statement.setString(5, student.getMajor());
+                        if (upsert) statement.setLong(6, student.getId());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                    if (!upsert) {
+                        try (ResultSet rs = statement.getGeneratedKeys()) {
+                            for (Student student : chunk) {
+                                if (!rs.next()) throw new SQLException("Thiếu generated key cho lô insert");
+                                student.setId(rs.getLong(1));
+                            }
+                        }
+                    }
+                    connection.commit();
+                    for (Student student : chunk) {
+                        invalidate(student.getId());
+                        indexStudent(student);
+                        results.add(new BatchRowResult(student.getId(), null));
+                    }
+                } catch (SQLException e) {
+                    log.error("Lỗi khi ghi lô {} students bắt đầu từ vị trí {}", chunk.size(), from, e);
+                    String error = "Lỗi khi ghi lô: " + e.getMessage();
+                    try {
+                        connection.rollback();
+                        statement.clearBatch();
+                    } catch (SQLException rollbackError) {
+                        // connection hỏng: các chunk trước đã commit vẫn trả kết quả, chunk này và các chunk sau coi như lỗi
+                        log.error("Không thể rollback lô, bỏ {} students còn lại", students.size() - from, rollbackError);
+                        while (results.size() < students.size()) {
+                            results.add(new BatchRowResult(-1, error));
+                        }
+                        break;
+                    }
+                    for (int i = 0; i < chunk.size(); i++) {
+                        results.add(new BatchRowResult(-1, error));
+                    }
+                }
+            }
+            log.info("Đã ghi lô {} students, chunk = {}", students.size(), chunkSize);
+            return results;
+        } catch (SQLException e) {
+            log.error("Lỗi khi ghi lô students", e);
+            throw new ProgramException("Lỗi không thể ghi lô dữ liệu", e);
+        }
+    }
+
+    //lấy ra tất cả trong danh sách
+    @Override
+    public List<Student> findAll(){
+        List<Student> studentList = new ArrayList<>();
+        String sql = "SELECT Id_student, FullName, Dob, Gpa, Sex, Major FROM Students";
+
+        try (DbCallPermit permit = DbCallPermit.acquire();
+             Connection connection = DBConnector.getConnector();
+        PreparedStatement statement = connection.prepareStatement(sql);
+             ResultSet rs = statement.executeQuery()){
+
+            while (rs.next()){
+                studentList.add(mapResultStudent(rs));
+            }
+            return studentList;
+        } catch (SQLException e) {
+            log.error("Lỗi không lấy được dữ liệu từ table Students",e);
+            throw new ProgramException("Lỗi không lấy được dữ liệu từ table Students",e);
+        }
+    }
+
+    /**
+     * Duyệt toàn bộ table theo id tăng dần mà không giữ cả danh sách trong bộ nhớ.
+     * Với useCursorFetch=true, MySQL trả về từng lô STREAM_FETCH_SIZE dòng qua server-side cursor.
+     * @return số dòng đã duyệt
+     */
+    @Override
+    public long streamAll(RowConsumer consumer) throws IOException {
+        String sql = "SELECT Id_student, FullName, Dob, Gpa, Sex, Major FROM Students ORDER BY Id_student";
+
+        // không dùng statement trong cache vì fetch size chỉ dành cho lần duyệt này
+        try (DbCallPermit permit = DbCallPermit.acquire();
+             Connection connection = DBConnector.getConnector();
+             PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)){
+
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            long count = 0;
+            try (ResultSet rs = statement.executeQuery()){
+                while (rs.next()){
+                    consumer.accept(mapResultStudent(rs));
+                    count++;
+                }
+            }
+            return count;
+        } catch (SQLException e) {
+            log.error("Lỗi khi duyệt table Students",e);
+            throw new ProgramException("Lỗi không lấy được dữ liệu từ table Students",e);
+        }
+    }
+
+    /**
+     * Lấy 1 trang theo keyset: các student có Id_student > afterId, tăng dần theo id, tối đa limit dòng.
+     * Dùng index khóa chính nên chi phí không phụ thuộc trang thứ mấy.
+     */
+    @Override
+    public List<Student> findPage(long afterId, int limit){
+        List<Student> studentList = new ArrayList<>(limit);
+        String sql = "SELECT Id_student, FullName, Dob, Gpa, Sex, Major FROM Students WHERE Id_student > ? ORDER BY Id_student LIMIT ?";
+
+        try (DbCallPermit permit = DbCallPermit.acquire();
+             Connection connection = DBConnector.getConnector();
+        PreparedStatement statement = connection.prepareStatement(sql)){
+
+            statement.setLong(1, afterId);
+            statement.setInt(2, limit);
+            try (ResultSet rs = statement.executeQuery()){
+                while (rs.next()){
+                    studentList.add(mapResultStudent(rs));
+                }
+            }
+            return studentList;
+        } catch (SQLException e) {
+            log.error("Lỗi khi lấy trang students sau Id = {}", afterId, e);
+            throw new ProgramException("Lỗi không lấy được dữ liệu từ table Students",e);
+        }
+    }
+
+    /**
+     * Điều kiện lọc được đẩy xuống SQL có tham số, chỉ các field có điều kiện mới có mặt trong WHERE.
+     * Cùng shape thì cùng câu SQL nên PreparedStatement được cache và tái sử dụng trên mỗi connection.
+     * Các index phụ do JdbcSchema tạo lúc khởi động.
+     */
+    @Override
+    public List<Student> query(StudentFilter filter, long afterId, int limit){
+        List<Student> studentList = new ArrayList<>(Math.min(limit, 1000));
+        String sql = querySqlByShape.computeIfAbsent(filter.shape(), JdbcStudentRepository::querySql);
+
+        try (DbCallPermit permit = DbCallPermit.acquire();
+             Connection connection = DBConnector.getConnector();
+             PreparedStatement statement = connection.prepareStatement(sql)){
+
+            int shape = filter.shape();
+            int i = 1;
+            statement.setLong(i++, afterId);
+            if ((shape & StudentFilter.GPA) != 0) {
+                statement.setDouble(i++, filter.gpaFrom());
+                statement.setDouble(i++, filter.gpaTo());
+            }
+            if ((shape & StudentFilter.DOB) != 0) {
+                statement.setDate(i++, Date.valueOf(filter.dobFromOrMin()));
+                statement.setDate(i++, Date.valueOf(filter.dobToOrMax()));
+            }
+            if ((shape & StudentFilter.MAJOR) != 0) {
+                statement.setString(i++, filter.major());
+            }
+            if ((shape & StudentFilter.SEX) != 0) {
+                statement.setString(i++, filter.sex().name());
+            }
+            statement.setInt(i, limit);
+            try (ResultSet rs = statement.executeQuery()){
+                while (rs.next()){
+                    studentList.add(mapResultStudent(rs));
+                }
+            }
+            return studentList;
+        } catch (SQLException e) {
+            log.error("Lỗi khi lọc students theo {}", filter, e);
+            throw new ProgramException("Lỗi không lấy được dữ liệu từ table Students",e);
+        }
+    }
+
+    private static String querySql(int shape){
+        StringBuilder sql = new StringBuilder("SELECT Id_student, FullName, Dob, Gpa, Sex, Major FROM Students WHERE Id_student > ?");
+        if ((shape & StudentFilter.GPA) != 0) sql.append(" AND Gpa BETWEEN ? AND ?");
+        if ((shape & StudentFilter.DOB) != 0) sql.append(" AND Dob BETWEEN ? AND ?");
+        if ((shape & StudentFilter.MAJOR) != 0) sql.append(" AND Major = ?");
+        if ((shape & StudentFilter.SEX) != 0) sql.append(" AND Sex = ?");
+        return sql.append(" ORDER BY Id_student LIMIT ?").toString();
+    }
+
+    @Override
+    public boolean update(Student student){
+        String sql = "UPDATE Students SET FullName=?, Dob=?, Gpa=?, Sex=?, Major=? WHERE Id_student=?";
+        try (DbCallPermit permit = DbCallPermit.acquire();
+             Connection connection = DBConnector.getConnector();
+        PreparedStatement statement = connection.prepareStatement(sql)){
+
+            statement.setString(1, student.getName());
+            statement.setDate(2, Date.valueOf(student.getDob()));
+            statement.setDouble(3, student.getGpa());
+            statement.setString(4, student.getSex().name());
+            statement.setString(5, student.getMajor());
+            statement.setLong(6, student.getId());
+
+            int row = statement.executeUpdate();
+            invalidate(student.getId());
+            if (row > 0){
+                indexStudent(student);
+                log.info("Update thành công student : {}",student);
+                return true;
+            }
+        } catch (SQLException e) {
+            log.error("Đã có lỗi update tại {}", student,e);
+            throw new ProgramException("Lỗi không thể update",e);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean delete(long id){
+        String sql = "DELETE FROM Students WHERE Id_student=?";
+        try (DbCallPermit permit = DbCallPermit.acquire();
+             Connection connection = DBConnector.getConnector();
+        PreparedStatement statement = connection.prepareStatement(sql)){
+
+            statement.setLong(1,id);
+            int row = statement.executeUpdate();
+            invalidate(id);
+            if (row > 0){
+                unindexStudent(id);
+                log.info("Delete thành công student có Id = {}",id);
+                return true;
+            }
+
+        } catch (SQLException e) {
+            log.error("Có lỗi delete tại student có Id = {}",id,e);
+            throw new ProgramException("Lỗi không thể delete",e);
+        }
+        return false;
+    }
+
+    /**
+     * Tìm theo id, đọc qua cache: có trong cache thì không gọi DB.
+     * Trả về bản sao nên người gọi có thể sửa student mà không làm bẩn cache.
+     */
+    @Override
+    public Optional<Student> findById(long id){
+        if (cache == null) return loadById(id);
+        Student cached = cache.get(id);
+        if (cached != null) {
+            return Optional.of(cached.toBuilder().build());
+        }
+        long stamp = cache.stamp(id);
+        Optional<Student> loaded = loadById(id);
+        loaded.ifPresent(student -> cache.put(id, student.toBuilder().build(), stamp));
+        return loaded;
+    }
+
+    /**
+     * Tìm trong index trên bộ nhớ, không gọi DB (trừ lần đầu phải dựng index bằng streamAll).
+     */
+    @Override
+    public List<Student> search(String query, int limit){
+        ensureSearchIndex();
+        List<Student> result = new ArrayList<>();
+        searchLock.readLock().lock();
+        try {
+            for (InvertedIndex.Hit<Student> hit : searchIndex.search(query, limit)) {
+                result.add(hit.value().toBuilder().build());
+            }
+        } finally {
+            searchLock.readLock().unlock();
+        }
+        return result;
+    }
+
+    // không giữ searchLock trong lúc đọc DB, tránh lời gọi ghi đang giữ permit DB phải đợi lock
+    private void ensureSearchIndex(){
+        searchLock.readLock().lock();
+        try {
+            if (searchIndex != null) return;
+        } finally {
+            searchLock.readLock().unlock();
+        }
+        synchronized (searchBuildLock) {
+            searchLock.writeLock().lock();
+            try {
+                if (searchIndex != null) return;
+                pendingIndexWrites = new ArrayList<>();
+            } finally {
+                searchLock.writeLock().unlock();
+            }
+
+            long started = System.nanoTime();
+            InvertedIndex<Student> loading = new InvertedIndex<>();
+            try {
+                long count = streamAll(student -> loading.put(student.getId(), student, student.getName(), student.getMajor()));
+                searchLock.writeLock().lock();
+                try {
+                    for (IndexWrite write : pendingIndexWrites) {
+                        apply(loading, write);
+                    }
+                    searchIndex = loading;
+                } finally {
+                    searchLock.writeLock().unlock();
+                }
+                log.info("Dựng index tìm kiếm cho {} students trong {} ms", count, (System.nanoTime() - started) / 1_000_000);
+            } catch (IOException e) {
+                // consumer không ghi ra ngoài nên không xảy ra
+                throw new ProgramException("Lỗi khi dựng index tìm kiếm", e);
+            } finally {
+                searchLock.writeLock().lock();
+                pendingIndexWrites = null;
+                searchLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Mỗi db.batch.chunkSize id là 1 câu WHERE Id_student IN (...), thay vì 1 round-trip cho mỗi id.
+     * Số tham số làm tròn lên lũy thừa của 2 (tối đa chunkSize), phần thiếu lặp lại id cuối:
+     * chỉ có khoảng log2(chunkSize) câu SQL khác nhau, không lấp đầy statement cache bằng mỗi độ dài 1 câu.
+     * Không đọc qua cache vì phần lớn id vừa bị ghi nên cache đã bị invalidate.
+     */
+    @Override
+    public List<Student> findByIds(long[] ids){
+        List<Student> studentList = new ArrayList<>(ids.length);
+        if (ids.length == 0) return studentList;
+        int maxChunk = DBConnector.batchChunkSize();
+        int needed = Math.min(maxChunk, ids.length);
+        int chunkSize = Math.min(maxChunk, needed == 1 ? 1 : Integer.highestOneBit(needed - 1) << 1);
+        String sql = "SELECT Id_student, FullName, Dob, Gpa, Sex, Major FROM Students WHERE Id_student IN ("
+                + String.join(",", Collections.nCopies(chunkSize, "?")) + ")";
+
+        try (DbCallPermit permit = DbCallPermit.acquire();
+             Connection connection = DBConnector.getConnector();
+             PreparedStatement statement = connection.prepareStatement(sql)){
+
+            for (int from = 0; from < ids.length; from += chunkSize) {
+                int to = Math.min(from + chunkSize, ids.length);
+                for (int i = 0; i < chunkSize; i++) {
+                    statement.setLong(i + 1, ids[Math.min(from + i, to - 1)]);
+                }
+                try (ResultSet rs = statement.executeQuery()){
+                    while (rs.next()){
+                        studentList.add(mapResultStudent(rs));
+                    }
+                }
+            }
+            return studentList;
+        } catch (SQLException e) {
+            log.error("Có lỗi xảy ra khi tìm {} students theo id", ids.length, e);
+            throw new ProgramException("Lỗi khi tìm kiếm",e);
+        }
+    }
+
+    private Optional<Student> loadById(long id){
+        String sql = "SELECT Id_student, FullName, Dob, Gpa, Sex, Major FROM Students WHERE Id_student = ?";
+        try (DbCallPermit permit = DbCallPermit.acquire();
+             Connection connection = DBConnector.getConnector();
+        PreparedStatement statement = connection.prepareStatement(sql)){
+
+            statement.setLong(1,id);
+            try (ResultSet rs = statement.executeQuery()){
+                if (rs.next()){
+                    log.info("Đã tìm thấy student có Id = {}", id);
+                    return Optional.of(mapResultStudent(rs));
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Có lỗi xảy ra khi tim student có Id = {}", id, e);
+            throw new ProgramException("Lỗi khi tìm kiếm",e);
+        }
+        return Optional.empty();
+    }
+
+    //mapping dữ liệu
+    private Student mapResultStudent (ResultSet rs) throws SQLException {
+        return Student.builder()
+                .id(rs.getLong("Id_student"))
+                .name(rs.getString("FullName"))
+                .dob(rs.getDate("Dob").toLocalDate())
+                .gpa(rs.getDouble("Gpa"))
+                .sex(Sex.valueOf(rs.getString("Sex")))
+                .major(rs.getString("Major"))
+                .build();
+    }
+
+    // giữ 1 permit trong suốt lời gọi DB, trả lại khi đóng (try-with-resources)
+    private static final class DbCallPermit implements AutoCloseable {
+        private static final DbCallPermit UNLIMITED = new DbCallPermit(null);
+        private final Semaphore semaphore;
+
+        private DbCallPermit(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        static DbCallPermit acquire() {
+            Semaphore semaphore = dbCallPermits;
+            if (semaphore == null) return UNLIMITED;
+            semaphore.acquireUninterruptibly();
+            return new DbCallPermit(semaphore);
+        }
+
+        @Override
+        public void close() {
+            if (semaphore != null) semaphore.release();
+        }
+    }
+}
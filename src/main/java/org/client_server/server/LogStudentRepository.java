@@ -0,0 +1,655 @@
+package org.client_server.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.client_server.exception.ProgramException;
+import org.client_server.model.Sex;
+import org.client_server.model.Student;
+import org.client_server.storage.InvertedIndex;
+import org.client_server.storage.LongIndex;
+import org.client_server.storage.WriteAheadLog;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Engine lưu trữ nhúng (storage.engine=log), không cần MySQL.
+ * - Toàn bộ student nằm trong LongIndex (id -> Student) trong bộ nhớ, đọc không chạm đĩa
+ * - InvertedIndex trên name/major cho SEARCH, cập nhật cùng lúc với LongIndex
+ * - Mỗi thay đổi được ghi vào WAL memory-mapped (students-&lt;thế hệ&gt;.wal) trước khi áp vào index
+ * - Compaction: khi WAL vượt ngưỡng hoặc định kỳ, chuyển sang WAL thế hệ mới rồi ghi toàn bộ index
+ *   ra students.snapshot, xong thì xóa WAL cũ
+ * Khởi động: đọc snapshot (nếu có) rồi đọc lại WAL cùng thế hệ và các thế hệ sau nó.
+ *
+ * Đọc song song với nhau (read lock), ghi tuần tự (write lock). msync WAL định kỳ và ghi snapshot ra đĩa
+ * chạy ngoài lock, write lock chỉ giữ lúc chuyển WAL nên đọc không phải đợi I/O đĩa.
+ */
+@Slf4j
+public class LogStudentRepository implements StudentRepository, Closeable {
+
+    public record Settings(long walInitialBytes, long compactThresholdBytes, long snapshotIntervalMs,
+                           boolean forceEveryWrite, long forceIntervalMs) {
+    }
+
+    private static final String SNAPSHOT_FILE = "students.snapshot";
+    private static final int SNAPSHOT_MAGIC = 0x53545544;
+    private static final int FORMAT_VERSION = 1;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int STREAM_PAGE_SIZE = 500;
+
+    private final Path dir;
+    private final Settings settings;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongIndex<Student> index = new LongIndex<>();
+    private final InvertedIndex<Student> searchIndex = new InvertedIndex<>();
+    private final ScheduledExecutorService housekeeper;
+    private final Object snapshotLock = new Object();// mỗi lúc chỉ 1 snapshot
+
+    // các field dưới chỉ đổi khi giữ write lock
+    private ByteBuffer scratch = ByteBuffer.allocate(1024);
+    private WriteAheadLog wal;
+    private long generation;// thế hệ của wal đang ghi
+    private final List<WriteAheadLog> retired = new ArrayList<>();// WAL thế hệ trước, xóa khi snapshot mới đã nằm trên đĩa
+    private long nextId = 1;
+    private boolean dirty;// WAL có record chưa nằm trong snapshot
+    private boolean compactionQueued;
+    private boolean closed;
+
+    public LogStudentRepository(Path dir, Settings settings) throws IOException {
+        this.dir = dir;
+        this.settings = settings;
+        Files.createDirectories(dir);
+
+        loadSnapshot();
+        wal = WriteAheadLog.open(walPath(generation), settings.walInitialBytes(), this::apply);
+        // snapshot trước bị ngắt sau khi đã chuyển WAL: ghi sau đó nằm ở các thế hệ kế tiếp
+        while (Files.exists(walPath(generation + 1))) {
+            retired.add(wal);
+            generation++;
+            wal = WriteAheadLog.open(walPath(generation), settings.walInitialBytes(), this::apply);
+        }
+        dirty = wal.size() > 0 || !retired.isEmpty();
+        deleteStaleFiles();
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "log-storage-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        if (!settings.forceEveryWrite() && settings.forceIntervalMs() > 0) {
+            housekeeper.scheduleWithFixedDelay(this::forceQuietly,
+                    settings.forceIntervalMs(), settings.forceIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+        if (settings.snapshotIntervalMs() > 0) {
+            housekeeper.scheduleWithFixedDelay(this::snapshotIfDirty,
+                    settings.snapshotIntervalMs(), settings.snapshotIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+        log.info("Mở dữ liệu tại {}: {} students, thế hệ {}, WAL {} byte",
+                dir.toAbsolutePath(), index.size(), generation, wal.size());
+    }
+
+    // ---- ghi ----
+
+    @Override
+    public long insert(Student student) {
+        lock.writeLock().lock();
+        try {
+            long id = putNew(student);
+            afterWrite();
+            log.info("Insert thành công Student : {}", student);
+            return id;
+        } catch (IOException e) {
+            log.error("Lỗi tại student : {}", student, e);
+            throw new ProgramException("Lỗi không thể insert dữ liệu", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // các dòng được ghi vào WAL liên tiếp, chỉ force 1 lần cho cả lô
+    @Override
+    public List<BatchRowResult> insertAll(List<Student> students) {
+        return writeBatch(students, false);
+    }
+
+    @Override
+    public List<BatchRowResult> upsertAll(List<Student> students) {
+        return writeBatch(students, true);
+    }
+
+    /**
+     * Lỗi ở dòng k thì các dòng trước đó đã nằm trong index và WAL: vẫn trả id của chúng,
+     * dòng k và các dòng sau nhận error để người gọi biết chính xác dòng nào đã được ghi.
+     */
+    private List<BatchRowResult> writeBatch(List<Student> students, boolean upsert) {
+        List<BatchRowResult> results = new ArrayList<>(students.size());
+        lock.writeLock().lock();
+        try {
+            try {
+                for (Student student : students) {
+                    if (upsert) {
+                        put(student.toBuilder().build());
+                    } else {
+                        putNew(student);
+                    }
+                    results.add(new BatchRowResult(student.getId(), null));
+                }
+            } catch (IOException e) {
+                log.error("Lỗi khi ghi lô students tại dòng {}, các dòng trước đó đã được ghi", results.size(), e);
+                String error = "Lỗi không thể ghi dữ liệu: " + e.getMessage();
+                while (results.size() < students.size()) {
+                    results.add(new BatchRowResult(-1, error));
+                }
+            }
+            afterWrite();
+            log.info("Đã ghi lô {} students", students.size());
+            return results;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean update(Student student) {
+        lock.writeLock().lock();
+        try {
+            if (index.get(student.getId()) == null) return false;
+            put(student.toBuilder().build());
+            afterWrite();
+            log.info("Update thành công student : {}", student);
+            return true;
+        } catch (IOException e) {
+            log.error("Đã có lỗi update tại {}", student, e);
+            throw new ProgramException("Lỗi không thể update", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(long id) {
+        lock.writeLock().lock();
+        try {
+            if (index.get(id) == null) return false;
+            ByteBuffer record = scratch(9).put(DELETE).putLong(id).flip();
+            append(record);
+            unstore(id);
+            afterWrite();
+            log.info("Delete thành công student có Id = {}", id);
+            return true;
+        } catch (IOException e) {
+            log.error("Có lỗi delete tại student có Id = {}", id, e);
+            throw new ProgramException("Lỗi không thể delete", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // cấp id mới rồi ghi, id được gán lại vào student của người gọi
+    private long putNew(Student student) throws IOException {
+        long id = nextId;
+        put(student.toBuilder().id(id).build());
+        student.setId(id);
+        return id;
+    }
+
+    // stored là bản riêng của engine, không ai khác giữ tham chiếu
+    private void put(Student stored) throws IOException {
+        ByteBuffer record = scratch(1 + encodedSize(stored)).put(PUT);
+        encode(stored, record);
+        append(record.flip());
+        store(stored);
+    }
+
+    // áp 1 student vào cả 2 index, dùng chung cho ghi mới, đọc snapshot và đọc lại WAL
+    private void store(Student stored) {
+        index.put(stored.getId(), stored);
+        searchIndex.put(stored.getId(), stored, stored.getName(), stored.getMajor());
+        nextId = Math.max(nextId, stored.getId() + 1);
+    }
+
+    private void unstore(long id) {
+        index.remove(id);
+        searchIndex.remove(id);
+    }
+
+    private void append(ByteBuffer record) throws IOException {
+        if (closed) throw new IOException("Kho dữ liệu đã đóng");
+        wal.append(record);
+        dirty = true;
+    }
+
+    private void afterWrite() {
+        if (settings.forceEveryWrite()) {
+            wal.force();
+        }
+        if (wal.size() > settings.compactThresholdBytes() && !compactionQueued) {
+            // compaction chạy trên housekeeper, không bắt người ghi này đợi ghi cả table ra đĩa
+            compactionQueued = true;
+            try {
+                housekeeper.execute(this::snapshotIfDirty);
+            } catch (RejectedExecutionException e) {
+                compactionQueued = false;// đang đóng
+            }
+        }
+    }
+
+    // ---- đọc ----
+
+    @Override
+    public Optional<Student> findById(long id) {
+        lock.readLock().lock();
+        try {
+            Student student = index.get(id);
+            return student == null ? Optional.empty() : Optional.of(student.toBuilder().build());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Student> findByIds(long[] ids) {
+        List<Student> found = new ArrayList<>(ids.length);
+        lock.readLock().lock();
+        try {
+            for (long id : ids) {
+                Student student = index.get(id);
+                if (student != null) found.add(student);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        found.replaceAll(student -> student.toBuilder().build());
+        return found;
+    }
+
+    @Override
+    public List<Student> findAll() {
+        lock.readLock().lock();
+        try {
+            List<Student> studentList = new ArrayList<>(index.size());
+            index.forEach(student -> studentList.add(student.toBuilder().build()));
+            return studentList;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Student> findPage(long afterId, int limit) {
+        List<Student> page = new ArrayList<>(Math.min(limit, STREAM_PAGE_SIZE * 2));
+        lock.readLock().lock();
+        try {
+            index.after(afterId, limit, page);
+        } finally {
+            lock.readLock().unlock();
+        }
+        page.replaceAll(student -> student.toBuilder().build());
+        return page;
+    }
+
+    // lọc bằng cách duyệt index theo id, dữ liệu nằm hết trong bộ nhớ nên không cần index phụ
+    @Override
+    public List<Student> query(StudentFilter filter, long afterId, int limit) {
+        List<Student> page = new ArrayList<>(Math.min(limit, STREAM_PAGE_SIZE * 2));
+        lock.readLock().lock();
+        try {
+            index.after(afterId, limit, filter, page);
+        } finally {
+            lock.readLock().unlock();
+        }
+        page.replaceAll(student -> student.toBuilder().build());
+        return page;
+    }
+
+    @Override
+    public List<Student> search(String query, int limit) {
+        List<Student> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (InvertedIndex.Hit<Student> hit : searchIndex.search(query, limit)) {
+                result.add(hit.value().toBuilder().build());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    // đọc từng trang STREAM_PAGE_SIZE dòng, không giữ lock trong lúc consumer ghi ra socket
+    @Override
+    public long streamAll(RowConsumer consumer) throws IOException {
+        long count = 0;
+        long afterId = 0;
+        while (true) {
+            List<Student> page = findPage(afterId, STREAM_PAGE_SIZE);
+            for (Student student : page) {
+                consumer.accept(student);
+            }
+            count += page.size();
+            if (page.size() < STREAM_PAGE_SIZE) return count;
+            afterId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    // ---- snapshot / compaction ----
+
+    /**
+     * Chuyển sang WAL thế hệ mới rồi ghi toàn bộ index ra snapshot của thế hệ đó.
+     * - write lock: chỉ để mở WAL mới, mọi ghi sau đó nằm trong WAL mới
+     * - read lock: chép tham chiếu các student (engine không sửa student đã lưu, chỉ thay bằng object mới)
+     * - không lock: ghi snapshot tạm + fsync -> rename (atomic) -> xóa WAL cũ
+     * Bản chép có thể đã chứa vài ghi sau lúc chuyển WAL, các ghi này cũng nằm trong WAL mới và mỗi record
+     * là cả dòng (hoặc xóa) nên đọc lại lên trên snapshot vẫn ra đúng trạng thái cuối.
+     * Crash ở bước nào cũng khôi phục được: trước khi rename, snapshot cũ + các WAL từ thế hệ của nó vẫn còn nguyên.
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            long started = System.nanoTime();
+            long snapshotGeneration;
+            lock.writeLock().lock();
+            try {
+                if (closed) return;
+                snapshotGeneration = generation + 1;
+                Path nextWalPath = walPath(snapshotGeneration);
+                Files.deleteIfExists(nextWalPath);
+                WriteAheadLog nextWal = WriteAheadLog.open(nextWalPath, settings.walInitialBytes(), record -> {
+                });
+                retired.add(wal);
+                wal = nextWal;
+                generation = snapshotGeneration;
+                dirty = false;
+                compactionQueued = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            List<Student> rows;
+            long snapshotNextId;
+            lock.readLock().lock();
+            try {
+                rows = new ArrayList<>(index.size());
+                index.forEach(rows::add);
+                snapshotNextId = nextId;
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            try {
+                writeSnapshot(snapshotGeneration, snapshotNextId, rows);
+            } catch (IOException e) {
+                // WAL cũ vẫn giữ lại, lần snapshot sau hoặc lúc khởi động sẽ đọc lại
+                lock.writeLock().lock();
+                try {
+                    dirty = true;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+
+            List<WriteAheadLog> obsolete;
+            lock.writeLock().lock();
+            try {
+                // mọi WAL đã nghỉ đều cũ hơn thế hệ của snapshot vừa ghi
+                obsolete = new ArrayList<>(retired);
+                retired.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (WriteAheadLog previous : obsolete) {
+                previous.close();
+                previous.delete();
+            }
+            log.info("Snapshot thế hệ {}: {} students, {} ms", snapshotGeneration, rows.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        }
+    }
+
+    private void writeSnapshot(long snapshotGeneration, long snapshotNextId, List<Student> rows) throws IOException {
+        Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        CRC32C crc = new CRC32C();
+        ByteBuffer record = ByteBuffer.allocate(1024);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), crc));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(snapshotGeneration);
+            out.writeLong(snapshotNextId);
+            out.writeInt(rows.size());
+            for (Student student : rows) {
+                int size = encodedSize(student);
+                if (record.capacity() < size) record = ByteBuffer.allocate(Math.max(size, record.capacity() * 2));
+                encode(student, record.clear());
+                out.writeInt(record.position());
+                out.write(record.array(), 0, record.position());
+            }
+            out.writeLong(crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+    }
+
+    private void loadSnapshot() throws IOException {
+        Path path = dir.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(path)) return;
+        CRC32C crc = new CRC32C();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 64 * 1024), crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("File " + path + " không phải snapshot hợp lệ");
+            }
+            generation = in.readLong();
+            nextId = in.readLong();
+            int count = in.readInt();
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                if (length > bytes.length) bytes = new byte[length];
+                in.readFully(bytes, 0, length);
+                store(decode(ByteBuffer.wrap(bytes, 0, length)));
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Snapshot " + path + " sai checksum");
+            }
+        }
+    }
+
+    // WAL không thuộc chuỗi vừa đọc lại và snapshot tạm là phần còn lại của lần compaction bị ngắt
+    private void deleteStaleFiles() throws IOException {
+        Files.deleteIfExists(dir.resolve(SNAPSHOT_FILE + ".tmp"));
+        List<Path> live = new ArrayList<>();
+        live.add(wal.path());
+        retired.forEach(previous -> live.add(previous.path()));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "students-*.wal")) {
+            for (Path file : files) {
+                if (!live.contains(file)) {
+                    log.info("Xóa WAL cũ {}", file);
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // một số hệ điều hành không cho mở thư mục
+        }
+    }
+
+    private void snapshotIfDirty() {
+        try {
+            boolean needed;
+            lock.readLock().lock();
+            try {
+                needed = dirty && !closed;
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (needed) snapshot();
+        } catch (Exception e) {
+            log.error("Không ghi được snapshot", e);
+        }
+    }
+
+    // chỉ giữ read lock để lấy WAL hiện tại, msync chạy ngoài lock (WriteAheadLog.force chạy song song được với append)
+    private void forceQuietly() {
+        try {
+            WriteAheadLog current;
+            lock.readLock().lock();
+            try {
+                if (closed) return;
+                current = wal;
+            } finally {
+                lock.readLock().unlock();
+            }
+            current.force();
+        } catch (Exception e) {
+            log.error("Không force được WAL", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            housekeeper.shutdownNow();
+            for (WriteAheadLog previous : retired) {
+                previous.close();
+            }
+            wal.close();
+            log.info("Đã đóng dữ liệu tại {}", dir.toAbsolutePath());
+        } catch (IOException e) {
+            log.error("Lỗi khi đóng WAL", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Path walPath(long generation) {
+        return dir.resolve("students-" + generation + ".wal");
+    }
+
+    // ---- mã hóa 1 student: id, name, dob (epoch day), gpa, sex (ordinal), major ----
+
+    private ByteBuffer scratch(int size) {
+        if (scratch.capacity() < size) {
+            scratch = ByteBuffer.allocate(Math.max(size, scratch.capacity() * 2));
+        }
+        return scratch.clear();
+    }
+
+    private static int encodedSize(Student student) {
+        return 8 + stringSize(student.getName()) + 8 + 8 + 1 + stringSize(student.getMajor());
+    }
+
+    private static void encode(Student student, ByteBuffer out) {
+        out.putLong(student.getId());
+        putString(out, student.getName());
+        out.putLong(student.getDob() == null ? Long.MIN_VALUE : student.getDob().toEpochDay());
+        out.putDouble(student.getGpa());
+        out.put(student.getSex() == null ? -1 : (byte) student.getSex().ordinal());
+        putString(out, student.getMajor());
+    }
+
+    private static Student decode(ByteBuffer in) {
+        long id = in.getLong();
+        String name = getString(in);
+        long epochDay = in.getLong();
+        double gpa = in.getDouble();
+        byte sex = in.get();
+        String major = getString(in);
+        return Student.builder()
+                .id(id)
+                .name(name)
+                .dob(epochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay))
+                .gpa(gpa)
+                .sex(sex < 0 ? null : Sex.values()[sex])
+                .major(major)
+                .build();
+    }
+
+    // áp 1 record WAL vào index lúc khởi động
+    private void apply(ByteBuffer record) {
+        byte type = record.get();
+        if (type == PUT) {
+            store(decode(record));
+        } else if (type == DELETE) {
+            unstore(record.getLong());
+        } else {
+            throw new IllegalStateException("Loại record WAL không hợp lệ: " + type);
+        }
+    }
+
+    // chuỗi UTF-8 có độ dài phía trước, -1 = null
+    private static int stringSize(String value) {
+        return 4 + (value == null ? 0 : utf8Length(value));
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
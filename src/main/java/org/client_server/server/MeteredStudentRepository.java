@@ -0,0 +1,141 @@
+package org.client_server.server;
+
+import org.client_server.model.Student;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Bọc 1 engine lưu trữ để đo thời gian từng thao tác (ServerMetrics.dbCall), không đổi hành vi.
+ * streamAll tính cả thời gian consumer ghi dữ liệu ra socket vì hai việc xen kẽ nhau.
+ */
+final class MeteredStudentRepository implements StudentRepository {
+    private final StudentRepository delegate;
+    private final ServerMetrics metrics;
+
+    MeteredStudentRepository(StudentRepository delegate, ServerMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public long insert(Student student) {
+        long started = System.nanoTime();
+        try {
+            return delegate.insert(student);
+        } finally {
+            metrics.dbCall("insert", started);
+        }
+    }
+
+    @Override
+    public List<BatchRowResult> insertAll(List<Student> students) {
+        long started = System.nanoTime();
+        try {
+            return delegate.insertAll(students);
+        } finally {
+            metrics.dbCall("insertAll", started);
+        }
+    }
+
+    @Override
+    public List<BatchRowResult> upsertAll(List<Student> students) {
+        long started = System.nanoTime();
+        try {
+            return delegate.upsertAll(students);
+        } finally {
+            metrics.dbCall("upsertAll", started);
+        }
+    }
+
+    @Override
+    public List<Student> findAll() {
+        long started = System.nanoTime();
+        try {
+            return delegate.findAll();
+        } finally {
+            metrics.dbCall("findAll", started);
+        }
+    }
+
+    @Override
+    public long streamAll(RowConsumer consumer) throws IOException {
+        long started = System.nanoTime();
+        try {
+            return delegate.streamAll(consumer);
+        } finally {
+            metrics.dbCall("streamAll", started);
+        }
+    }
+
+    @Override
+    public List<Student> findPage(long afterId, int limit) {
+        long started = System.nanoTime();
+        try {
+            return delegate.findPage(afterId, limit);
+        } finally {
+            metrics.dbCall("findPage", started);
+        }
+    }
+
+    @Override
+    public List<Student> query(StudentFilter filter, long afterId, int limit) {
+        long started = System.nanoTime();
+        try {
+            return delegate.query(filter, afterId, limit);
+        } finally {
+            metrics.dbCall("query", started);
+        }
+    }
+
+    @Override
+    public boolean update(Student student) {
+        long started = System.nanoTime();
+        try {
+            return delegate.update(student);
+        } finally {
+            metrics.dbCall("update", started);
+        }
+    }
+
+    @Override
+    public boolean delete(long id) {
+        long started = System.nanoTime();
+        try {
+            return delegate.delete(id);
+        } finally {
+            metrics.dbCall("delete", started);
+        }
+    }
+
+    @Override
+    public Optional<Student> findById(long id) {
+        long started = System.nanoTime();
+        try {
+            return delegate.findById(id);
+        } finally {
+            metrics.dbCall("findById", started);
+        }
+    }
+
+    @Override
+    public List<Student> findByIds(long[] ids) {
+        long started = System.nanoTime();
+        try {
+            return delegate.findByIds(ids);
+        } finally {
+            metrics.dbCall("findByIds", started);
+        }
+    }
+
+    @Override
+    public List<Student> search(String query, int limit) {
+        long started = System.nanoTime();
+        try {
+            return delegate.search(query, limit);
+        } finally {
+            metrics.dbCall("search", started);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.client_server.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Cổng HTTP phụ cho Prometheus: GET /metrics trả ServerMetrics.prometheus().
+ * Chạy trên 1 thread riêng của HttpServer trong JDK, không dùng chung pool/reactor với client
+ * nên vẫn đọc được số liệu khi server đang quá tải.
+ */
+@Slf4j
+final class MetricsEndpoint {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static HttpServer running;// chỉ đọc/ghi khi giữ lock của class
+
+    private MetricsEndpoint() {
+    }
+
+    // lỗi bind chỉ được log, server chính vẫn chạy. Đã mở rồi (main gọi lần nữa trong cùng JVM) thì không mở lại
+    static synchronized void start(ServerMetrics metrics, String host, int port) {
+        if (running != null) {
+            log.debug("Cổng metrics đã mở tại {}, bỏ qua {}:{}", running.getAddress(), host, port);
+            return;
+        }
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+            server.createContext("/metrics", exchange -> handle(exchange, metrics));
+            server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "metrics-http");
+                t.setDaemon(true);
+                return t;
+            }));
+            server.start();
+            running = server;
+            log.info("Metrics Prometheus tại http://{}:{}/metrics", host, port);
+        } catch (IOException e) {
+            log.error("Không mở được cổng metrics {}:{}", host, port, e);
+        }
+    }
+
+    private static void handle(HttpExchange exchange, ServerMetrics metrics) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package org.client_server.server;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server dạng non-blocking: một hoặc nhiều reactor thread (mỗi reactor 1 Selector) lo accept/đọc/ghi,
+ * worker pool chỉ nhận các request đã đọc đủ (dòng JSON kết thúc bằng \n, hoặc frame nhị phân sau HELLO).
+ * Kết nối đang rảnh không chiếm thread nào.
+ */
+@Slf4j
+public class NioServer implements Closeable {
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_PENDING_LINES = 64;          // đọc trước tối đa bao nhiêu request / kết nối
+    private static final long HIGH_WATER_BYTES = 1 << 20;     // quá số byte chờ ghi này thì worker phải đợi
+    private static final int OUTBOUND_CHUNK_BYTES = 16 * 1024; // response được ghi vào các buffer cỡ này, response dài giao dần từng buffer
+    private static final int MAX_POOLED_BUFFERS = 1024;
+
+    private final int port;
+    private final boolean reusePort;
+    private final int maxFrameBytes;
+    private final ExecutorService workers;
+    private final Reactor[] reactors;
+    private final AtomicInteger nextReactor = new AtomicInteger();
+    private final ByteBufferPool bufferPool = new ByteBufferPool(OUTBOUND_CHUNK_BYTES, MAX_POOLED_BUFFERS);
+    private final AdmissionControl admission = AdmissionControl.shared();
+    private volatile boolean running = true;
+
+    public NioServer(int port, int reactorCount, boolean reusePort, int maxFrameBytes, ExecutorService workers) {
+        this.port = port;
+        this.reusePort = reusePort;
+        this.maxFrameBytes = maxFrameBytes;
+        this.workers = workers;
+        this.reactors = new Reactor[Math.max(1, reactorCount)];
+    }
+
+    public void start() throws IOException {
+        boolean useReusePort = false;
+        if (reusePort) {
+            try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+                useReusePort = probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+            }
+        }
+        if (reusePort && !useReusePort) {
+            log.warn("Hệ điều hành không hỗ trợ SO_REUSEPORT, dùng 1 acceptor chung");
+        }
+
+        for (int i = 0; i < reactors.length; i++) {
+            // có SO_REUSEPORT thì mỗi reactor tự accept, không thì chỉ reactor 0 accept rồi chia kết nối
+            ServerSocketChannel acceptor = (useReusePort || i == 0) ? openAcceptor(useReusePort) : null;
+            reactors[i] = new Reactor(i, Selector.open(), acceptor);
+        }
+        for (Reactor reactor : reactors) {
+            reactor.thread.start();
+        }
+        log.info("NIO server started. Listening on port : {} ({} reactor, SO_REUSEPORT = {})",
+                port, reactors.length, useReusePort);
+    }
+
+    // chờ tới khi tất cả reactor dừng
+    public void join() throws InterruptedException {
+        for (Reactor reactor : reactors) {
+            if (reactor != null) reactor.thread.join();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        for (Reactor reactor : reactors) {
+            if (reactor != null) reactor.selector.wakeup();
+        }
+    }
+
+    private ServerSocketChannel openAcceptor(boolean useReusePort) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        if (useReusePort) {
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        channel.bind(new InetSocketAddress(port), 1024);
+        channel.configureBlocking(false);
+        return channel;
+    }
+
+    private final class Reactor implements Runnable {
+        private final Selector selector;
+        private final ServerSocketChannel acceptor;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        Reactor(int index, Selector selector, ServerSocketChannel acceptor) throws IOException {
+            this.selector = selector;
+            this.acceptor = acceptor;
+            this.thread = new Thread(this, "nio-reactor-" + index);
+            if (acceptor != null) {
+                acceptor.register(selector, SelectionKey.OP_ACCEPT);
+            }
+        }
+
+        // chạy task trên reactor thread (đổi interest ops, ghi dữ liệu...)
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        if (!key.isValid()) continue;
+                        try {
+                            if (key.isAcceptable()) {
+                                accept();
+                            } else {
+                                Connection connection = (Connection) key.attachment();
+                                if (key.isReadable()) connection.onReadable();
+                                if (key.isValid() && key.isWritable()) connection.onWritable();
+                            }
+                        } catch (IOException e) {
+                            log.warn("Lỗi I/O trên kết nối, đóng kết nối", e);
+                            if (key.attachment() instanceof Connection connection) connection.close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Reactor {} có lỗi", thread.getName(), e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection connection) connection.close();
+                }
+                closeQuietly(acceptor);
+                closeQuietly(selector);
+                log.info("Reactor {} đã dừng", thread.getName());
+            }
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = acceptor.accept()) != null) {
+                if (!admission.tryAcquireConnection()) {
+                    reject(channel);
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                log.info("New client connected : {}", channel.getRemoteAddress());
+
+                Reactor target = reactors[Math.floorMod(nextReactor.getAndIncrement(), reactors.length)];
+                SocketChannel accepted = channel;
+                if (target == this) {
+                    register(accepted);
+                } else {
+                    target.execute(() -> target.register(accepted));
+                }
+            }
+        }
+
+        private void register(SocketChannel channel) {
+            try {
+                Connection connection = new Connection(this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                log.warn("Không thể đăng ký kết nối", e);
+                admission.releaseConnection();
+                closeQuietly(channel);
+            }
+        }
+
+        // quá server.maxConnections: gửi 1 dòng BUSY (channel còn blocking, vài chục byte nên không bị chặn) rồi đóng
+        private void reject(SocketChannel channel) {
+            try (SocketChannel rejected = channel) {
+                rejected.write(ByteBuffer.wrap(ClientHandler.busyResponse("Server đã đủ số kết nối, vui lòng thử lại sau")));
+                log.warn("Từ chối kết nối {}: đã đủ số kết nối", rejected.getRemoteAddress());
+            } catch (IOException e) {
+                log.debug("Không gửi được BUSY", e);
+            }
+        }
+    }
+
+    /**
+     * Trạng thái của 1 kết nối: phần dòng đang đọc dở, các request đã đọc đủ đang chờ xử lý
+     * và các buffer đang chờ ghi. Các request của cùng 1 kết nối được xử lý lần lượt theo thứ tự.
+     */
+    private final class Connection {
+        private final Reactor reactor;
+        private final SocketChannel channel;
+        private final String clientAddress;
+        private final ClientHandler handler;
+        private final FrameWriter writer;
+        private final ConnectionTimeouts timeouts;
+        private SelectionKey key;
+
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final ByteArrayOutputStream partialFrame = new ByteArrayOutputStream();
+        // sau HELLO smile: frame = 4 byte độ dài + nội dung, frameLength < 0 khi đang đọc 4 byte độ dài
+        private volatile boolean binary;
+        private int frameLength = -1;
+
+        // các field dưới được bảo vệ bởi lock của chính Connection
+        private final Queue<PendingRequest> pendingLines = new ArrayDeque<>();
+        private final Queue<ByteBuffer> outbound = new ArrayDeque<>();
+        private long outboundBytes;
+        private boolean processing;
+        private boolean readPaused;
+        private boolean closeAfterFlush;
+        private boolean closed;
+        private boolean midFrame;// reactor đã nhận 1 phần frame, chưa đủ để xử lý
+        private boolean pushPending;// có sự kiện SUBSCRIBE chờ ghi, worker ghi giữa các request
+        private boolean pushDeferred;// client chưa đọc hết dữ liệu cũ, ghi sự kiện sau khi outbound rỗng
+
+        Connection(Reactor reactor, SocketChannel channel) throws IOException {
+            this.reactor = reactor;
+            this.channel = channel;
+            this.clientAddress = String.valueOf(channel.getRemoteAddress());
+            this.handler = new ClientHandler(clientAddress,
+                    ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress());
+            this.writer = new FrameWriter(new ChannelOutputStream(this, bufferPool));
+            this.timeouts = ConnectionTimeouts.start(clientAddress, () -> reactor.execute(this::close));
+            handler.onPush(this::onPush);
+        }
+
+        // ---- thread ghi dữ liệu (ChangeFeed) ----
+
+        // chỉ 1 worker được ghi vào writer: đang có worker thì nó tự ghi sự kiện, không thì giao cho worker mới
+        private void onPush() {
+            synchronized (this) {
+                if (closed) return;
+                pushPending = true;
+                if (processing) return;
+                processing = true;
+            }
+            workers.execute(this::drainRequests);
+        }
+
+        // ---- reactor thread ----
+
+        void onReadable() throws IOException {
+            readBuffer.clear();
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            boolean dispatch = false;
+            while (readBuffer.hasRemaining()) {
+                byte[] frame = binary ? nextBinaryFrame() : nextLine();
+                if (frame == null) {
+                    if (!channel.isOpen()) return;// frame quá dài, đã đóng kết nối
+                    continue;
+                }
+                synchronized (this) {
+                    pendingLines.add(new PendingRequest(frame, System.nanoTime()));
+                    if (pendingLines.size() >= MAX_PENDING_LINES && !readPaused) {
+                        readPaused = true;
+                        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    }
+                    if (!processing) {
+                        processing = true;
+                        dispatch = true;
+                    }
+                }
+            }
+            synchronized (this) {
+                midFrame = partialFrame.size() > 0 || frameLength >= 0;
+                if (busy()) {
+                    timeouts.requestStarted();
+                } else {
+                    timeouts.requestFinished();
+                }
+            }
+            if (dispatch) {
+                workers.execute(this::drainRequests);
+            }
+        }
+
+        // còn request đọc dở, đang chờ/đang xử lý, hoặc response chưa ghi hết (gọi khi giữ lock)
+        private boolean busy() {
+            return midFrame || processing || !pendingLines.isEmpty() || !outbound.isEmpty();
+        }
+
+        // đọc tới \n, null nếu dòng chưa đủ: tìm \n theo chỉ số rồi copy cả đoạn, không copy từng byte
+        private byte[] nextLine() throws IOException {
+            byte[] array = readBuffer.array();
+            int start = readBuffer.position();
+            int limit = readBuffer.limit();
+            int newline = start;
+            while (newline < limit && array[newline] != '\n') {
+                newline++;
+            }
+            int chunk = newline - start;
+            if (partialFrame.size() + chunk > maxFrameBytes) {
+                tooLarge();
+                return null;
+            }
+            if (newline == limit) {
+                partialFrame.write(array, start, chunk);
+                readBuffer.position(limit);
+                return null;
+            }
+            readBuffer.position(newline + 1);
+            byte[] line;
+            if (partialFrame.size() == 0) {
+                line = Arrays.copyOfRange(array, start, newline);
+            } else {
+                partialFrame.write(array, start, chunk);
+                line = partialFrame.toByteArray();
+                partialFrame.reset();
+            }
+            int length = line.length;
+            return length > 0 && line[length - 1] == '\r' ? Arrays.copyOf(line, length - 1) : line;
+        }
+
+        // đọc 4 byte độ dài rồi đủ nội dung, null nếu frame chưa đủ
+        private byte[] nextBinaryFrame() throws IOException {
+            if (frameLength < 0) {
+                while (readBuffer.hasRemaining() && partialFrame.size() < 4) {
+                    partialFrame.write(readBuffer.get());
+                }
+                if (partialFrame.size() < 4) return null;
+                byte[] header = partialFrame.toByteArray();
+                partialFrame.reset();
+                frameLength = ((header[0] & 0xFF) << 24) | ((header[1] & 0xFF) << 16)
+                        | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+                if (frameLength < 0 || frameLength > maxFrameBytes) {
+                    tooLarge();
+                    return null;
+                }
+            }
+            int n = Math.min(frameLength - partialFrame.size(), readBuffer.remaining());
+            partialFrame.write(readBuffer.array(), readBuffer.position(), n);
+            readBuffer.position(readBuffer.position() + n);
+            if (partialFrame.size() < frameLength) return null;
+            byte[] frame = partialFrame.toByteArray();
+            partialFrame.reset();
+            frameLength = -1;
+            return frame;
+        }
+
+        private void tooLarge() throws IOException {
+            log.warn("Client {} gửi request dài quá {} byte, đóng kết nối", clientAddress, maxFrameBytes);
+            readBuffer.position(readBuffer.limit());
+            close();
+        }
+
+        void onWritable() throws IOException {
+            synchronized (this) {
+                while (!outbound.isEmpty()) {
+                    ByteBuffer buffer = outbound.peek();
+                    int written = channel.write(buffer);
+                    outboundBytes -= written;
+                    if (buffer.hasRemaining()) break;
+                    bufferPool.release(outbound.poll());
+                }
+                notifyAll();
+                if (outbound.isEmpty()) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    if (closeAfterFlush) close();
+                    else if (!busy()) timeouts.requestFinished();
+                    if (pushDeferred && !closed) {
+                        pushDeferred = false;
+                        onPush();
+                    }
+                } else {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            }
+        }
+
+        // ---- worker thread ----
+
+        private void drainRequests() {
+            Thread.currentThread().setName("nio-worker - " + clientAddress);
+            try {
+                while (true) {
+                    PendingRequest line;
+                    boolean push;
+                    synchronized (this) {
+                        push = pushPending;
+                        pushPending = false;
+                        line = pendingLines.poll();
+                        if ((line == null && !push) || closed) {
+                            processing = false;
+                            if (!busy()) timeouts.requestFinished();
+                            return;
+                        }
+                        if (readPaused && pendingLines.size() < MAX_PENDING_LINES / 2) {
+                            readPaused = false;
+                            reactor.execute(this::resumeRead);
+                        }
+                    }
+                    if (push) {
+                        boolean deferred;
+                        synchronized (this) {
+                            // không chờ client đọc chậm: sự kiện ở lại hàng đợi của subscription, đầy thì thành RESYNC
+                            deferred = pushDeferred = outboundBytes > HIGH_WATER_BYTES;
+                        }
+                        if (!deferred) {
+                            handler.writePushes(writer);
+                            if (line == null) writer.flush();
+                        }
+                        if (line == null) continue;
+                    }
+                    // request chờ worker quá server.maxQueueMs thì nhận BUSY thay vì được xử lý
+                    boolean keepOpen = handler.handleRequest(line.frame(), writer, line.receivedNanos());
+                    // HELLO vừa đổi định dạng: reactor tách frame kế tiếp theo định dạng mới
+                    binary = handler.wireFormat().isBinary();
+                    if (!keepOpen) {
+                        writer.flush();
+                        synchronized (this) {
+                            closeAfterFlush = true;
+                            pendingLines.clear();
+                            processing = false;
+                        }
+                        reactor.execute(this::flushOrClose);
+                        return;
+                    }
+                    // còn request pipelined đang chờ thì gom response, hết mới ghi ra channel
+                    boolean more;
+                    synchronized (this) {
+                        more = !pendingLines.isEmpty();
+                    }
+                    if (!more) {
+                        writer.flush();
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Không thể ghi response cho client {}", clientAddress, e);
+                reactor.execute(this::close);
+            }
+        }
+
+        // gọi từ ChannelOutputStream.flush(): đưa buffer (đã flip) vào hàng đợi ghi rồi báo reactor
+        void enqueue(ByteBuffer buffer) throws IOException {
+            synchronized (this) {
+                if (closed) {
+                    bufferPool.release(buffer);
+                    throw new IOException("Kết nối " + clientAddress + " đã đóng");
+                }
+                outbound.add(buffer);
+                outboundBytes += buffer.remaining();
+            }
+            reactor.execute(this::flushOrClose);
+
+            // client đọc chậm thì worker đợi, tránh dồn hết response vào heap
+            if (Thread.currentThread() == reactor.thread) return;
+            synchronized (this) {
+                while (outboundBytes > HIGH_WATER_BYTES && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Bị ngắt khi chờ ghi response");
+                    }
+                }
+            }
+        }
+
+        private void flushOrClose() {
+            if (closed) return;
+            try {
+                onWritable();
+            } catch (IOException e) {
+                log.warn("Lỗi khi ghi dữ liệu cho client {}", clientAddress, e);
+                close();
+            }
+        }
+
+        private void resumeRead() {
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                timeouts.cancel();
+                handler.unsubscribe();
+                admission.releaseConnection();
+                outbound.forEach(bufferPool::release);
+                outbound.clear();
+                notifyAll();
+            }
+            if (key != null) key.cancel();
+            closeQuietly(channel);
+            log.info("Đã đóng thành công kết nối client {}", clientAddress);
+        }
+    }
+
+    // request đã đọc đủ, receivedNanos để tính thời gian chờ worker
+    private record PendingRequest(byte[] frame, long receivedNanos) {
+    }
+
+    // ghi thẳng vào buffer lấy từ pool, flush() (hoặc buffer đầy) thì giao buffer cho Connection
+    private static final class ChannelOutputStream extends OutputStream {
+        private final Connection connection;
+        private final ByteBufferPool pool;
+        private ByteBuffer current;// null khi không có dữ liệu chờ flush, kết nối rảnh không giữ buffer
+
+        ChannelOutputStream(Connection connection, ByteBufferPool pool) {
+            this.connection = connection;
+            this.pool = pool;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (current == null) current = pool.acquire();
+            current.put((byte) b);
+            if (!current.hasRemaining()) flush();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (current == null) current = pool.acquire();
+                int n = Math.min(len, current.remaining());
+                current.put(b, off, n);
+                off += n;
+                len -= n;
+                if (!current.hasRemaining()) flush();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (current == null || current.position() == 0) return;
+            ByteBuffer buffer = current;
+            current = null;
+            connection.enqueue(buffer.flip());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.client_server.server;
+
+import org.client_server.model.Student;
+import org.client_server.util.WireFormat;
+
+import java.util.List;
+
+/**
+ * Request đã được RequestDecoder giải mã và kiểm tra, ClientHandler chỉ việc switch theo kiểu.
+ * Request không hợp lệ được giải mã thành Invalid (code/message gửi lại nguyên cho client).
+ */
+sealed interface Request {
+
+    record Insert(Student student) implements Request {
+    }
+
+    record Find(long id) implements Request {
+    }
+
+    // changes: field null (gpa = -1) là không đổi
+    record Update(long id, Student changes) implements Request {
+    }
+
+    record Delete(long id) implements Request {
+    }
+
+    record ListAll() implements Request {
+    }
+
+    record ListPage(long afterId, int limit) implements Request {
+    }
+
+    record ListStream() implements Request {
+    }
+
+    record Query(StudentFilter filter, long afterId, int limit) implements Request {
+    }
+
+    record Search(String query, int limit) implements Request {
+    }
+
+    // nhận sự kiện thay đổi khớp filter cho tới khi UNSUBSCRIBE hoặc đóng kết nối, SUBSCRIBE lần nữa thì thay filter
+    record Subscribe(ChangeFeed.Filter filter) implements Request {
+    }
+
+    record Unsubscribe() implements Request {
+    }
+
+    record Stats() implements Request {
+    }
+
+    record Metrics() implements Request {
+    }
+
+    // since < 0: chỉ lấy version hiện tại, epoch khác của server hiện tại thì client phải tải lại toàn bộ
+    record ChangesSince(long since, long epoch) implements Request {
+    }
+
+    // các dòng có error != null không được ghi xuống DB
+    record Batch(boolean upsert, List<BatchRow> rows) implements Request {
+    }
+
+    record BatchRow(Student student, String code, String message) {
+        boolean valid() {
+            return code == null;
+        }
+    }
+
+    record Hello(WireFormat format) implements Request {
+    }
+
+    // keepalive, response {"status":"OK","message":"PONG"}
+    record Ping() implements Request {
+    }
+
+    record Quit() implements Request {
+    }
+
+    record Invalid(String code, String message) implements Request {
+    }
+}
@@ -0,0 +1,418 @@
+package org.client_server.server;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.client_server.model.Sex;
+import org.client_server.model.Student;
+import org.client_server.util.WireFormat;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Giải mã 1 frame request thẳng từ JsonParser thành Request, không dựng ObjectNode cho cả request.
+ * Các field của payload được đọc 1 lượt (action có thể đứng trước hoặc sau payload),
+ * sau đó mới dựng Request theo action và kiểm tra giống như các handler cũ.
+ * Frame không phải JSON object hợp lệ thì ném IOException như readTree trước đây.
+ */
+class RequestDecoder {
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_BATCH_SIZE = 10000;
+    static final int DEFAULT_SEARCH_LIMIT = 20;
+    static final int MAX_SEARCH_LIMIT = 100;
+    static final int MAX_QUERY_LENGTH = 200;
+
+    private static final Request LIST_ALL = new Request.ListAll();
+    private static final Request LIST_STREAM = new Request.ListStream();
+    private static final Request STATS = new Request.Stats();
+    private static final Request METRICS = new Request.Metrics();
+    private static final Request PING = new Request.Ping();
+    private static final Request UNSUBSCRIBE = new Request.Unsubscribe();
+    private static final Request QUIT = new Request.Quit();
+
+    // action: tên action client gửi (đã viết hoa), dùng cho rate limit theo action
+    record Decoded(JsonNode requestId, String action, Request request) {
+    }
+
+    Decoded decode(byte[] frame, WireFormat format) throws IOException {
+        try (JsonParser parser = format.factory().createParser(frame)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Request phải là 1 JSON object");
+            }
+            String action = "";
+            JsonNode requestId = null;
+            Payload payload = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "action" -> {
+                        String value = text(parser);
+                        action = value == null ? "" : value;
+                    }
+                    case "requestId" -> {
+                        if (token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+                            requestId = parser.readValueAsTree();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    case "payload" -> payload = readPayload(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            String name = action.toUpperCase().trim();
+            return new Decoded(requestId, name, toRequest(name, payload));
+        }
+    }
+
+    private Request toRequest(String action, Payload payload) {
+        boolean missing = payload == null || payload.fieldCount == 0;
+        switch (action) {
+            case "INSERT": {
+                if (missing) return missingPayload(action);
+                Student student = payload.toStudent();
+                Request.Invalid error = validateStudent(student);
+                return error != null ? error : new Request.Insert(student);
+            }
+            case "FIND":
+            case "DELETE": {
+                if (missing) return missingPayload(action);
+                if (payload.id < 0) return invalidId();
+                return action.equals("FIND") ? new Request.Find(payload.id) : new Request.Delete(payload.id);
+            }
+            case "UPDATE": {
+                if (missing) return missingPayload(action);
+                if (payload.id < 0) return invalidId();
+                return new Request.Update(payload.id, payload.toStudent());
+            }
+            case "LIST": {
+                if (payload == null) return LIST_ALL;
+                if (payload.stream) return LIST_STREAM;
+                if (!payload.hasAfterId && !payload.hasLimit) return LIST_ALL;
+                long afterId = payload.hasAfterId ? payload.afterId : 0;
+                int limit = payload.hasLimit ? payload.limit : DEFAULT_PAGE_SIZE;
+                if (afterId < 0) {
+                    return new Request.Invalid("INVALID_ID", "afterId phải là số nguyên không âm");
+                }
+                if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                    return new Request.Invalid("INVALID_LIMIT", "limit phải nằm trong 1 và " + MAX_PAGE_SIZE);
+                }
+                return new Request.ListPage(afterId, limit);
+            }
+            case "QUERY": {
+                if (payload == null) payload = new Payload();
+                if (payload.afterId < 0) {
+                    return new Request.Invalid("INVALID_ID", "afterId phải là số nguyên không âm");
+                }
+                int limit = payload.hasLimit ? payload.limit : DEFAULT_PAGE_SIZE;
+                if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                    return new Request.Invalid("INVALID_LIMIT", "limit phải nằm trong 1 và " + MAX_PAGE_SIZE);
+                }
+                return toQuery(payload, limit);
+            }
+            case "SEARCH": {
+                if (missing) return missingPayload(action);
+                String query = payload.query == null ? "" : payload.query.trim();
+                if (query.isEmpty() || query.length() > MAX_QUERY_LENGTH) {
+                    return new Request.Invalid("INVALID_QUERY", "query không để trống và tối đa " + MAX_QUERY_LENGTH + " ký tự");
+                }
+                int limit = payload.hasLimit ? payload.limit : DEFAULT_SEARCH_LIMIT;
+                if (limit <= 0 || limit > MAX_SEARCH_LIMIT) {
+                    return new Request.Invalid("INVALID_LIMIT", "limit phải nằm trong 1 và " + MAX_SEARCH_LIMIT);
+                }
+                return new Request.Search(query, limit);
+            }
+            case "BATCH_INSERT":
+            case "UPSERT": {
+                if (missing) return missingPayload(action);
+                if (payload.tooManyStudents) {
+                    return new Request.Invalid("BATCH_TOO_LARGE", "Mỗi lần chỉ được gửi tối đa " + MAX_BATCH_SIZE + " students");
+                }
+                if (payload.students == null || payload.students.isEmpty()) {
+                    return new Request.Invalid("INVALID_STUDENTS", "students phải là mảng không rỗng");
+                }
+                boolean upsert = action.equals("UPSERT");
+                List<Request.BatchRow> rows = new ArrayList<>(payload.students.size());
+                for (Payload row : payload.students) {
+                    rows.add(toBatchRow(row, upsert));
+                }
+                return new Request.Batch(upsert, rows);
+            }
+            case "HELLO": {
+                WireFormat format = WireFormat.fromId(payload == null || payload.format == null ? "" : payload.format);
+                if (format == null) {
+                    return new Request.Invalid("UNSUPPORTED_FORMAT", "Chỉ hỗ trợ format: json, smile");
+                }
+                return new Request.Hello(format);
+            }
+            case "CHANGES_SINCE":
+                if (payload == null) return new Request.ChangesSince(-1, 0);
+                return new Request.ChangesSince(payload.since, payload.epoch);
+            case "SUBSCRIBE": {
+                if (payload == null) return new Request.Subscribe(ChangeFeed.Filter.ALL);
+                long toId = payload.hasToId ? payload.toId : Long.MAX_VALUE;
+                if (payload.fromId < 0 || toId < payload.fromId) {
+                    return new Request.Invalid("INVALID_ID", "fromId, toId phải là số nguyên không âm, fromId <= toId");
+                }
+                String major = payload.major == null || payload.major.isBlank() ? null : payload.major.trim();
+                return new Request.Subscribe(new ChangeFeed.Filter(major, payload.fromId, toId));
+            }
+            case "UNSUBSCRIBE":
+                return UNSUBSCRIBE;
+            case "STATS":
+                return STATS;
+            case "METRICS":
+                return METRICS;
+            case "PING":
+                return PING;
+            case "QUIT":
+                return QUIT;
+            default:
+                return new Request.Invalid("UNKNOWN_ACTION", "Chỉ hỗ trợ: HELLO,INSERT,BATCH_INSERT,UPSERT,FIND,LIST,QUERY,SEARCH,CHANGES_SINCE,SUBSCRIBE,UNSUBSCRIBE,STATS,METRICS,PING,UPDATE,DELETE,QUIT");
+        }
+    }
+
+    // QUERY: khoảng gpa trong [0, 4], khoảng ngày dạng YYYY-MM-DD, đầu khoảng không được lớn hơn cuối
+    private static Request toQuery(Payload payload, int limit) {
+        Double minGpa = payload.minGpa;
+        Double maxGpa = payload.maxGpa;
+        if ((minGpa != null && (minGpa.isNaN() || minGpa < 0 || minGpa > 4))
+                || (maxGpa != null && (maxGpa.isNaN() || maxGpa < 0 || maxGpa > 4))
+                || (minGpa != null && maxGpa != null && minGpa > maxGpa)) {
+            return new Request.Invalid("INVALID_GPA", "minGpa/maxGpa phải nằm trong 0 và 4, minGpa <= maxGpa");
+        }
+        LocalDate dobFrom;
+        LocalDate dobTo;
+        try {
+            dobFrom = payload.dobFrom == null ? null : LocalDate.parse(payload.dobFrom);
+            dobTo = payload.dobTo == null ? null : LocalDate.parse(payload.dobTo);
+        } catch (DateTimeParseException e) {
+            return new Request.Invalid("INVALID_DOB", "dobFrom/dobTo chỉ được để ở dạng YYYY-MM-DD");
+        }
+        if (dobFrom != null && dobTo != null && dobFrom.isAfter(dobTo)) {
+            return new Request.Invalid("INVALID_DOB", "dobFrom phải trước hoặc bằng dobTo");
+        }
+        Sex sex = null;
+        if (payload.sex != null) {
+            try {
+                sex = Sex.valueOf(payload.sex.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return new Request.Invalid("INVALID_SEX", "Sex chỉ nhận MALE, FEMALE, OTHER");
+            }
+        }
+        String major = payload.major == null || payload.major.isBlank() ? null : payload.major.trim();
+        StudentFilter filter = new StudentFilter(minGpa, maxGpa, dobFrom, dobTo, major, sex);
+        return new Request.Query(filter, payload.afterId, limit);
+    }
+
+    private Request.BatchRow toBatchRow(Payload row, boolean upsert) {
+        if (row == null) {
+            return new Request.BatchRow(null, "INVALID_STUDENT", "Phần tử phải là object");
+        }
+        Student student = row.toStudent();
+        Request.Invalid error = validateStudent(student);
+        if (error == null && upsert) {
+            student.setId(row.id);
+            if (row.id <= 0) error = new Request.Invalid("INVALID_ID", "UPSERT cần id là số nguyên dương");
+        }
+        return error == null
+                ? new Request.BatchRow(student, null, null)
+                : new Request.BatchRow(student, error.code(), error.message());
+    }
+
+    private static Request.Invalid missingPayload(String action) {
+        return new Request.Invalid(action, "Payload phải có để yêu cầu " + action);
+    }
+
+    private static Request.Invalid invalidId() {
+        return new Request.Invalid("INVALID_ID", "Id hợp lệ phải là số nguyên dương");
+    }
+
+    //kiểm tra đủ các trường bắt buộc của 1 student mới, null nếu hợp lệ
+    private static Request.Invalid validateStudent(Student student) {
+        if (student.getName() == null || student.getName().isBlank()) {
+            return new Request.Invalid("INVALID_NAME", "Name không thể để trống");
+        }
+        if (student.getDob() == null) {
+            return new Request.Invalid("INVALID_DOB", "Dob không để trống và chỉ được để ở dạng YYYY-MM-DD");
+        }
+        if (student.getGpa() == -1) {
+            return new Request.Invalid("INVALID_GPA", "Gpa không để trống và chỉ nằm trong 0 và 4");
+        }
+        if (student.getSex() == null) {
+            return new Request.Invalid("INVALID_SEX", "Sex không để trống và phải điền đúng yêu cầu");
+        }
+        if (student.getMajor() == null || student.getMajor().isBlank()) {
+            return new Request.Invalid("INVALID_MAJOR", "Major không thể để trống");
+        }
+        return null;
+    }
+
+    /**
+     * Các field có thể có trong payload của mọi action (và trong từng phần tử students).
+     * Giá trị mặc định giống path(...).asXxx(default) của bản dùng ObjectNode.
+     */
+    private static final class Payload {
+        int fieldCount;
+        String name;
+        String dob;
+        double gpa = -1;
+        String sex;
+        String major;
+        long id = -1;
+        boolean hasAfterId;
+        long afterId;
+        long since = -1;
+        long fromId;
+        boolean hasToId;
+        long toId;
+        long epoch;
+        boolean hasLimit;
+        int limit;
+        boolean stream;
+        String format;
+        String query;
+        Double minGpa;// NaN = không phải số
+        Double maxGpa;
+        String dobFrom;
+        String dobTo;
+        List<Payload> students;// phần tử null = không phải object
+        boolean tooManyStudents;
+
+        Student toStudent() {
+            LocalDate birthday = null;
+            if (dob != null) { // cần check null nếu không khi parse sẽ ném ra NullPointException
+                try {
+                    birthday = LocalDate.parse(dob);
+                } catch (DateTimeParseException e) {
+                }
+            }
+            Sex parsedSex = null;
+            if (sex != null) {
+                try {
+                    parsedSex = Sex.valueOf(sex.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                }
+            }
+            return Student.builder()
+                    .name(name)
+                    .dob(birthday)
+                    .gpa(gpa < 0 || gpa > 4 ? -1 : gpa)
+                    .sex(parsedSex)
+                    .major(major)
+                    .build();
+        }
+    }
+
+    // parser đang ở token đầu của payload; payload không phải object thì coi như không có
+    private Payload readPayload(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        Payload payload = new Payload();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            payload.fieldCount++;
+            switch (field) {
+                case "name" -> payload.name = text(parser);
+                case "dob" -> payload.dob = text(parser);
+                case "gpa" -> payload.gpa = decimal(parser, -1);
+                case "sex" -> payload.sex = text(parser);
+                case "major" -> payload.major = text(parser);
+                case "id" -> payload.id = integer(parser, -1);
+                case "afterId" -> {
+                    payload.hasAfterId = true;
+                    payload.afterId = integer(parser, 0);
+                }
+                case "limit" -> {
+                    payload.hasLimit = true;
+                    long limit = integer(parser, DEFAULT_PAGE_SIZE);
+                    payload.limit = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, limit));
+                }
+                case "stream" -> payload.stream = parser.currentToken().isScalarValue() && parser.getValueAsBoolean(false);
+                case "format" -> payload.format = text(parser);
+                case "query" -> payload.query = text(parser);
+                case "minGpa" -> payload.minGpa = optionalDecimal(parser);
+                case "maxGpa" -> payload.maxGpa = optionalDecimal(parser);
+                case "dobFrom" -> payload.dobFrom = text(parser);
+                case "dobTo" -> payload.dobTo = text(parser);
+                case "since" -> payload.since = integer(parser, -1);
+                case "fromId" -> payload.fromId = integer(parser, -1);
+                case "toId" -> {
+                    payload.hasToId = true;
+                    payload.toId = integer(parser, -1);
+                }
+                case "epoch" -> payload.epoch = integer(parser, 0);
+                case "students" -> readStudents(parser, payload);
+                default -> parser.skipChildren();
+            }
+        }
+        return payload;
+    }
+
+    private void readStudents(JsonParser parser, Payload payload) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        payload.students = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (payload.students.size() >= MAX_BATCH_SIZE) {
+                // không cần đọc tiếp, cả lô bị từ chối
+                payload.tooManyStudents = true;
+                parser.skipChildren();
+                continue;
+            }
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                payload.students.add(readPayload(parser));
+            } else {
+                parser.skipChildren();
+                payload.students.add(null);
+            }
+        }
+    }
+
+    // giá trị dạng text (số, boolean được đổi sang text), object/mảng/null coi như không có
+    private static String text(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (!token.isScalarValue()) {
+            parser.skipChildren();
+            return null;
+        }
+        return token == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+    }
+
+    private static long integer(JsonParser parser, long defaultValue) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (!token.isScalarValue()) {
+            parser.skipChildren();
+            return defaultValue;
+        }
+        return token == JsonToken.VALUE_NULL ? defaultValue : parser.getValueAsLong(defaultValue);
+    }
+
+    // null nếu không có giá trị, NaN nếu có nhưng không đọc được thành số
+    private static Double optionalDecimal(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) return null;
+        return decimal(parser, Double.NaN);
+    }
+
+    private static double decimal(JsonParser parser, double defaultValue) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (!token.isScalarValue()) {
+            parser.skipChildren();
+            return defaultValue;
+        }
+        return token == JsonToken.VALUE_NULL ? defaultValue : parser.getValueAsDouble(defaultValue);
+    }
+}
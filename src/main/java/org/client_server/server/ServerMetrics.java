@@ -0,0 +1,241 @@
+package org.client_server.server;
+
+import org.client_server.util.LatencyHistogram;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Số liệu vận hành của server, dùng chung cho mọi chế độ (pool, virtual, nio).
+ * - ClientHandler: số request, độ trễ và thời gian chờ hàng đợi theo action, lỗi theo code, byte nhận/gửi
+ * - MeteredStudentRepository: thời gian của từng thao tác DB, cộng dồn vào request đang chạy trên thread đó
+ * - gauge/counter đăng ký thêm (kết nối, hàng đợi executor, pool DB, cache...), chỉ được đọc khi xuất số liệu
+ * Mọi số liệu cộng dồn từ lúc server chạy. Ghi chỉ tốn vài LongAdder/histogram không lock.
+ *
+ * Xuất ra 2 dạng: snapshot() cho action METRICS và prometheus() cho endpoint /metrics (MetricsEndpoint).
+ */
+public final class ServerMetrics {
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private static final class Holder {
+        static final ServerMetrics INSTANCE = new ServerMetrics();
+    }
+
+    public static ServerMetrics shared() {
+        return Holder.INSTANCE;
+    }
+
+    // thời gian DB của request đang xử lý trên thread hiện tại
+    private static final ThreadLocal<long[]> REQUEST_DB_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final Instant startedAt = Instant.now();
+    private final Map<String, ActionMeter> actions = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> dbOperations = new ConcurrentHashMap<>();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final Map<String, Meter> meters = new ConcurrentSkipListMap<>();// theo tên, xuất theo thứ tự tên
+
+    private static final class ActionMeter {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram db = new LatencyHistogram();
+    }
+
+    // giá trị đọc lúc xuất số liệu, counter chỉ tăng còn gauge lên xuống tùy lúc
+    private record Meter(String name, String help, boolean counter, Supplier<Number> value) {
+    }
+
+    public ServerMetrics() {
+    }
+
+    // ---- ghi ----
+
+    // gọi trước khi xử lý 1 request, xóa thời gian DB còn lại của request trước trên thread này
+    public void requestStarted() {
+        REQUEST_DB_NANOS.get()[0] = 0;
+    }
+
+    /**
+     * @param action        tên action đã chuẩn hóa (action lạ gộp thành UNKNOWN để số nhãn không tăng mãi)
+     * @param receivedNanos lúc request được đọc xong, startedNanos lúc bắt đầu xử lý (System.nanoTime)
+     */
+    public void requestFinished(String action, long receivedNanos, long startedNanos) {
+        long now = System.nanoTime();
+        ActionMeter meter = actions.computeIfAbsent(action, a -> new ActionMeter());
+        meter.latency.record(now - startedNanos);
+        meter.db.record(REQUEST_DB_NANOS.get()[0]);
+        queueWait.record(startedNanos - receivedNanos);
+    }
+
+    public void error(String code) {
+        errors.computeIfAbsent(code, c -> new LongAdder()).increment();
+    }
+
+    // 1 lời gọi repository đã xong, thời gian được cộng vào request đang chạy trên thread này
+    public void dbCall(String operation, long startedNanos) {
+        long elapsed = System.nanoTime() - startedNanos;
+        dbOperations.computeIfAbsent(operation, o -> new LatencyHistogram()).record(elapsed);
+        REQUEST_DB_NANOS.get()[0] += elapsed;
+    }
+
+    public void bytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void bytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * name theo quy ước Prometheus (chữ thường, _). Đăng ký lại cùng tên (ServerProgram.main chạy lần nữa trong cùng JVM)
+     * thì thay meter cũ, /metrics không bao giờ có 2 series trùng tên.
+     */
+    public void gauge(String name, String help, Supplier<Number> value) {
+        meters.put(name, new Meter(name, help, false, value));
+    }
+
+    public void counter(String name, String help, Supplier<Number> value) {
+        meters.put(name, new Meter(name, help, true, value));
+    }
+
+    // ---- METRICS ----
+
+    // thời gian tính bằng ms
+    public record Timing(long count, double meanMs, double p50Ms, double p99Ms, double p999Ms, double maxMs) {
+        static Timing of(LatencyHistogram.Snapshot s) {
+            return new Timing(s.count(), millis(s.mean()), millis(s.valueAt(0.5)), millis(s.valueAt(0.99)),
+                    millis(s.valueAt(0.999)), millis(s.max()));
+        }
+
+        private static double millis(double nanos) {
+            return Math.round(nanos / 1_000) / 1_000.0;
+        }
+    }
+
+    // dbShare: tổng thời gian DB / tổng thời gian xử lý của action
+    public record ActionStats(long requests, Timing latency, Timing db, double dbShare) {
+    }
+
+    public record Snapshot(long uptimeSeconds, long bytesIn, long bytesOut, Timing queueWait,
+                           Map<String, ActionStats> actions, Map<String, Long> errors,
+                           Map<String, Timing> dbOperations, Map<String, Number> gauges) {
+    }
+
+    public Snapshot snapshot() {
+        Map<String, ActionStats> actionStats = new TreeMap<>();
+        actions.forEach((action, meter) -> {
+            LatencyHistogram.Snapshot latency = meter.latency.snapshot();
+            LatencyHistogram.Snapshot db = meter.db.snapshot();
+            double dbShare = latency.sum() == 0 ? 0 : Math.round(1000.0 * db.sum() / latency.sum()) / 1000.0;
+            actionStats.put(action, new ActionStats(latency.count(), Timing.of(latency), Timing.of(db), dbShare));
+        });
+        Map<String, Long> errorCounts = new TreeMap<>();
+        errors.forEach((code, count) -> errorCounts.put(code, count.sum()));
+        Map<String, Timing> db = new TreeMap<>();
+        dbOperations.forEach((operation, histogram) -> db.put(operation, Timing.of(histogram.snapshot())));
+        Map<String, Number> gauges = new LinkedHashMap<>();
+        for (Meter meter : meters.values()) {
+            gauges.put(meter.name(), read(meter));
+        }
+        return new Snapshot(uptimeSeconds(), bytesIn.sum(), bytesOut.sum(), Timing.of(queueWait.snapshot()),
+                actionStats, errorCounts, db, gauges);
+    }
+
+    private long uptimeSeconds() {
+        return Duration.between(startedAt, Instant.now()).toSeconds();
+    }
+
+    // gauge lỗi (ví dụ pool DB chưa khởi tạo được) không làm hỏng cả lần xuất số liệu
+    private static Number read(Meter meter) {
+        try {
+            return meter.value().get();
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    // ---- Prometheus ----
+
+    /**
+     * Định dạng text 0.0.4 của Prometheus. Độ trễ xuất dạng summary (phân vị 0.5/0.99/0.999 + _sum + _count),
+     * đơn vị giây theo quy ước của Prometheus.
+     */
+    public String prometheus() {
+        StringBuilder out = new StringBuilder(8 * 1024);
+        header(out, "server_uptime_seconds", "Thời gian server đã chạy", "gauge");
+        sample(out, "server_uptime_seconds", "", uptimeSeconds());
+
+        Map<String, LatencyHistogram.Snapshot> latencies = new TreeMap<>();
+        Map<String, LatencyHistogram.Snapshot> dbTimes = new TreeMap<>();
+        actions.forEach((action, meter) -> {
+            latencies.put(action, meter.latency.snapshot());
+            dbTimes.put(action, meter.db.snapshot());
+        });
+
+        header(out, "server_requests_total", "Số request theo action", "counter");
+        latencies.forEach((action, s) -> sample(out, "server_requests_total", label("action", action), s.count()));
+        summary(out, "server_request_duration_seconds", "Thời gian xử lý request theo action", "action", latencies);
+        summary(out, "server_request_db_seconds", "Thời gian DB của mỗi request theo action", "action", dbTimes);
+        summary(out, "server_request_queue_seconds", "Thời gian request chờ worker", null,
+                Map.of("", queueWait.snapshot()));
+
+        header(out, "server_errors_total", "Số response lỗi theo code", "counter");
+        new TreeMap<>(errors).forEach((code, count) -> sample(out, "server_errors_total", label("code", code), count.sum()));
+
+        header(out, "server_received_bytes_total", "Số byte request đã nhận", "counter");
+        sample(out, "server_received_bytes_total", "", bytesIn.sum());
+        header(out, "server_sent_bytes_total", "Số byte response đã gửi", "counter");
+        sample(out, "server_sent_bytes_total", "", bytesOut.sum());
+
+        Map<String, LatencyHistogram.Snapshot> operations = new TreeMap<>();
+        dbOperations.forEach((operation, histogram) -> operations.put(operation, histogram.snapshot()));
+        summary(out, "db_operation_duration_seconds", "Thời gian từng thao tác của repository", "operation", operations);
+
+        for (Meter meter : meters.values()) {
+            header(out, meter.name(), meter.help(), meter.counter() ? "counter" : "gauge");
+            sample(out, meter.name(), "", read(meter));
+        }
+        return out.toString();
+    }
+
+    private static void summary(StringBuilder out, String name, String help, String labelName,
+                                Map<String, LatencyHistogram.Snapshot> series) {
+        header(out, name, help, "summary");
+        series.forEach((labelValue, s) -> {
+            String base = labelName == null ? "" : label(labelName, labelValue);
+            for (double quantile : QUANTILES) {
+                String labels = (base.isEmpty() ? "" : base + ",") + label("quantile", String.valueOf(quantile));
+                sample(out, name, labels, seconds(s.valueAt(quantile)));
+            }
+            sample(out, name + "_sum", base, seconds(s.sum()));
+            sample(out, name + "_count", base, s.count());
+        });
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Number value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String label(String name, String value) {
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return name + "=\"" + escaped + "\"";
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -1,61 +1,233 @@
 package org.client_server.server;
 
 import lombok.extern.slf4j.Slf4j;
+import org.client_server.util.ServerConfig;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class ServerProgram {
-    private static final int PORT = 12345;
-    private static final int THREAD_POOL_SIZE = 10;// pool chứa số các luồng của client khi truy cập server
+    private static final int PORT = ServerConfig.getInt("server.port", 12345);
+    private static final int THREAD_POOL_SIZE = ServerConfig.getInt("server.poolSize", 10);// pool chứa số các luồng của client khi truy cập server
+    private static final int QUEUE_CAPACITY = ServerConfig.getInt("server.queueCapacity", 100);
+    private static final int VIRTUAL_MAX_DB_CALLS = ServerConfig.getInt("virtual.maxDbCalls", 8);
+    private static final int METRICS_HTTP_PORT = ServerConfig.getInt("metrics.http.port", 9464);
+    private static final List<String> MODES = List.of("pool", "virtual", "nio");
 
 
     public static void main(String[] args) {
-        ExecutorService executor = new ThreadPoolExecutor(
+        // chế độ chạy: tham số đầu tiên hoặc server.mode trong server.properties, tham số thứ 2 là port
+        String mode = resolveMode(args);
+        int port = resolvePort(args);
+
+        // mở engine lưu trữ (mysql: kiểm tra/tạo index) trước khi nhận kết nối thay vì ở request đầu tiên
+        StudentRepository.shared();
+        registerAdmissionMetrics(ServerMetrics.shared(), AdmissionControl.shared());
+        registerTimeoutMetrics(ServerMetrics.shared());
+        registerChangeFeedMetrics(ServerMetrics.shared());
+        if (METRICS_HTTP_PORT > 0) {
+            MetricsEndpoint.start(ServerMetrics.shared(), ServerConfig.getString("metrics.http.host", "127.0.0.1"), METRICS_HTTP_PORT);
+        }
+
+        switch (mode) {
+            case "nio":
+                runNio(port);
+                break;
+            case "virtual":
+                runVirtualThreads(port);
+                break;
+            default:
+                runThreadPool(port);
+        }
+    }
+
+    // tham số sai thì báo lỗi rồi dùng server.mode, server.mode cũng sai thì chạy pool
+    private static String resolveMode(String[] args) {
+        if (args.length > 0) {
+            String mode = args[0].toLowerCase().trim();
+            if (MODES.contains(mode)) return mode;
+            log.error("Không hỗ trợ chế độ chạy '{}'. Chỉ hỗ trợ: {}, dùng server.mode trong server.properties", args[0], MODES);
+        }
+        String configured = ServerConfig.getString("server.mode", "pool");
+        String mode = configured.toLowerCase().trim();
+        if (MODES.contains(mode)) return mode;
+        log.error("Không hỗ trợ server.mode = {}. Chỉ hỗ trợ: {}, chạy pool", configured, MODES);
+        return "pool";
+    }
+
+    // port sai (không phải số hoặc ngoài 0..65535) thì báo lỗi rồi dùng server.port
+    private static int resolvePort(String[] args) {
+        if (args.length < 2) return PORT;
+        try {
+            int port = Integer.parseInt(args[1].trim());
+            if (port >= 0 && port <= 65535) return port;
+        } catch (NumberFormatException ignored) {
+            // báo lỗi bên dưới
+        }
+        log.error("Port '{}' không hợp lệ, dùng server.port = {} trong server.properties", args[1], PORT);
+        return PORT;
+    }
+
+    // mỗi kết nối chiếm 1 thread trong pool suốt thời gian kết nối
+    private static void runThreadPool(int port) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
                 THREAD_POOL_SIZE, THREAD_POOL_SIZE, // số luồng core, số luồng max
 
                 0L,TimeUnit.MILLISECONDS, // thời giản nghỉ của các luồng phụ (max > core)
                                                 // phục vụ việc giãn nở pool thread, cao điểm thì mở rộng pool
 
-                new ArrayBlockingQueue<>(100),// hàng đợi chô client khi thread pool đã đầy, có giới hạn
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),// hàng đợi chô client khi thread pool đã đầy, có giới hạn
 
-                new ThreadPoolExecutor.CallerRunsPolicy()//khi cả thread pool và queue đều đầu thì gọi callerRunsPolicy
-                                                            // hàm main sẽ tự mình chạy thêm 1 client handler và không nhận thêm client kết nối
+                new ThreadPoolExecutor.AbortPolicy()//khi cả thread pool và queue đều đầy thì từ chối ngay (acceptLoop trả BUSY),
+                                                      // thread accept không bao giờ tự chạy ClientHandler nên không bị treo theo 1 client
         );
+        registerExecutorMetrics(ServerMetrics.shared(), executor);
+        acceptLoop(port, executor);
+    }
+
+    // mỗi kết nối chạy trên 1 virtual thread riêng, số lời gọi DB đồng thời giới hạn bằng semaphore
+    // (mysql driver dùng synchronized nên virtual thread bị ghim vào carrier khi chờ DB)
+    private static void runVirtualThreads(int port) {
+        JdbcStudentRepository.limitConcurrentCalls(VIRTUAL_MAX_DB_CALLS);
+        acceptLoop(port, Executors.newVirtualThreadPerTaskExecutor());
+    }
 
-        try(ServerSocket serverSocket = new ServerSocket(PORT)){
+    /**
+     * Thread accept chỉ nhận kết nối và giao đi, không bao giờ chạy ClientHandler.
+     * Quá server.maxConnections, pool + hàng đợi đầy, hoặc kết nối nằm trong hàng đợi quá server.maxQueueMs
+     * thì client nhận ngay 1 dòng BUSY rồi bị đóng.
+     */
+    private static void acceptLoop(int port, ExecutorService executor) {
+        AdmissionControl admission = AdmissionControl.shared();
+        try(ServerSocket serverSocket = new ServerSocket(port)){
 
-            log.info("Server started. Listening on port : {}", PORT);
+            log.info("Server started. Listening on port : {}", port);
 
             while (true){
                 Socket clientSocket = serverSocket.accept();
-                clientSocket.setSoTimeout(100000);// quá 10s mà Client không gửi dữ liệu cho client handler xử lý thì ném ra ngoại lệ
+                if (!admission.tryAcquireConnection()) {
+                    reject(clientSocket, "Server đã đủ số kết nối, vui lòng thử lại sau");
+                    continue;
+                }
                 log.info("New client connected : {}", clientSocket.getRemoteSocketAddress());
 
-                executor.submit(new ClientHandler(clientSocket));
-
+                long acceptedAt = System.nanoTime();
+                try {
+                    executor.execute(() -> serve(clientSocket, acceptedAt, admission));
+                } catch (RejectedExecutionException e) {
+                    admission.releaseConnection();
+                    reject(clientSocket, "Server đang quá tải, vui lòng thử lại sau");
+                }
             }
         } catch (IOException e) {
             log.error("Server có một lỗi", e);
         } finally {
-            executor.shutdown();//shutdown không nhận thêm task mới
-            try {
-                if(!executor.awaitTermination(30, TimeUnit.SECONDS)){
-                    executor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                executor.shutdownNow();
+            shutdown(executor);
+        }
+    }
+
+    private static void serve(Socket clientSocket, long acceptedAt, AdmissionControl admission) {
+        try {
+            if (admission.shouldShed(acceptedAt)) {
+                reject(clientSocket, "Server đang quá tải, vui lòng thử lại sau");
+                return;
             }
-            log.info("Server shut down.");
+            new ClientHandler(clientSocket).run();
+        } finally {
+            admission.releaseConnection();
         }
+    }
+
+    // gửi BUSY rồi đóng, response chỉ vài chục byte nên ghi không bị chặn
+    private static void reject(Socket clientSocket, String message) {
+        try (Socket socket = clientSocket) {
+            socket.getOutputStream().write(ClientHandler.busyResponse(message));
+            log.warn("Từ chối kết nối {}: {}", socket.getRemoteSocketAddress(), message);
+        } catch (IOException e) {
+            log.debug("Không gửi được BUSY cho {}", clientSocket.getRemoteSocketAddress(), e);
+        }
+    }
+
+    // reactor lo I/O, pool chỉ nhận request đã đọc đủ nên hàng đợi không cần giới hạn theo số kết nối
+    private static void runNio(int port) {
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(
+                THREAD_POOL_SIZE, THREAD_POOL_SIZE,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>()
+        );
+        registerExecutorMetrics(ServerMetrics.shared(), workers);
 
+        NioServer server = new NioServer(port,
+                ServerConfig.getInt("nio.reactors", 2),
+                ServerConfig.getBoolean("nio.reusePort", false),
+                ServerConfig.getInt("server.maxFrameBytes", 1 << 20),
+                workers);
+        try {
+            server.start();
+            server.join();
+        } catch (IOException e) {
+            log.error("Server có một lỗi", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            server.close();
+            shutdown(workers);
+        }
+    }
 
+    private static void registerAdmissionMetrics(ServerMetrics metrics, AdmissionControl admission) {
+        metrics.gauge("server_connections_active", "Số kết nối đang mở", admission::activeConnections);
+        metrics.counter("server_connections_rejected_total", "Số kết nối bị từ chối vì quá server.maxConnections",
+                () -> admission.stats().rejectedConnections());
+        metrics.counter("server_requests_shed_total", "Số request/kết nối trả BUSY vì chờ quá server.maxQueueMs",
+                () -> admission.stats().shedRequests());
+        metrics.counter("server_requests_rate_limited_total", "Số request trả RATE_LIMITED",
+                () -> admission.stats().rateLimitedRequests());
+    }
+
+    private static void registerTimeoutMetrics(ServerMetrics metrics) {
+        metrics.counter("server_connections_idle_closed_total", "Số kết nối bị đóng vì không có request quá server.idleTimeoutMs",
+                ConnectionTimeouts::idleEvictions);
+        metrics.counter("server_connections_request_timeout_total", "Số kết nối bị đóng vì 1 request chưa xong sau server.requestTimeoutMs",
+                ConnectionTimeouts::requestEvictions);
+        metrics.gauge("server_timer_wheel_pending", "Số hạn đang chờ trong timer wheel", () -> ConnectionTimeouts.wheel().pending());
+    }
+
+    private static void registerChangeFeedMetrics(ServerMetrics metrics) {
+        ChangeFeed feed = ChangeFeed.shared();
+        metrics.gauge("server_subscribers", "Số kết nối đang SUBSCRIBE", feed::subscribers);
+        metrics.counter("server_change_events_pushed_total", "Số sự kiện thay đổi đã đẩy tới subscriber", feed::pushedEvents);
+        metrics.counter("server_change_resyncs_total", "Số lần subscriber đọc chậm bị bỏ sự kiện và phải RESYNC", feed::resyncs);
+        metrics.gauge("server_change_version", "Version hiện tại của chuỗi thay đổi", () -> feed.changeLog().version());
+    }
+
+    // pool: task là kết nối đang chờ thread, nio: task là lượt xử lý request của 1 kết nối
+    private static void registerExecutorMetrics(ServerMetrics metrics, ThreadPoolExecutor executor) {
+        metrics.gauge("server_executor_queue_depth", "Số task đang chờ trong hàng đợi của executor", () -> executor.getQueue().size());
+        metrics.gauge("server_executor_active_threads", "Số thread của executor đang chạy task", executor::getActiveCount);
+        metrics.gauge("server_executor_pool_size", "Số thread của executor", executor::getPoolSize);
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdown();//shutdown không nhận thêm task mới
+        try {
+            if(!executor.awaitTermination(30, TimeUnit.SECONDS)){
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+        log.info("Server shut down.");
     }
 }
@@ -0,0 +1,70 @@
+package org.client_server.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.client_server.util.DBConnector;
+import org.client_server.util.ServerConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+// khởi tạo lười engine lưu trữ theo storage.engine, lần đầu StudentRepository.shared() được gọi,
+// bọc trong MeteredStudentRepository để đo thời gian DB
+@Slf4j
+final class SharedRepository {
+    static final StudentRepository INSTANCE = new MeteredStudentRepository(create(), ServerMetrics.shared());
+
+    private SharedRepository() {
+    }
+
+    private static StudentRepository create() {
+        String engine = ServerConfig.getString("storage.engine", "mysql").toLowerCase();
+        switch (engine) {
+            case "log":
+                LogStudentRepository.Settings settings = new LogStudentRepository.Settings(
+                        ServerConfig.getLong("storage.log.walInitialBytes", 16L << 20),
+                        ServerConfig.getLong("storage.log.compactThresholdBytes", 64L << 20),
+                        ServerConfig.getLong("storage.log.snapshotIntervalMs", 300_000),
+                        ServerConfig.getBoolean("storage.log.forceEveryWrite", false),
+                        ServerConfig.getLong("storage.log.forceIntervalMs", 1000));
+                Path dir = Path.of(ServerConfig.getString("storage.log.dir", "data"));
+                try {
+                    LogStudentRepository repository = new LogStudentRepository(dir, settings);
+                    Runtime.getRuntime().addShutdownHook(new Thread(repository::close, "log-storage-shutdown"));
+                    return repository;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Không mở được dữ liệu tại " + dir.toAbsolutePath(), e);
+                }
+            case "mysql":
+                if (ServerConfig.getBoolean("storage.mysql.manageIndexes", true)) {
+                    JdbcSchema.ensureIndexes();
+                }
+                registerJdbcMetrics(ServerMetrics.shared());
+                return new JdbcStudentRepository();
+            default:
+                log.warn("storage.engine = {} không hỗ trợ, dùng mysql", engine);
+                registerJdbcMetrics(ServerMetrics.shared());
+                return new JdbcStudentRepository();
+        }
+    }
+
+    // pool connection và cache student chỉ có ở engine mysql
+    private static void registerJdbcMetrics(ServerMetrics metrics) {
+        metrics.gauge("db_pool_active_connections", "Số connection đang được mượn", () -> DBConnector.poolStats().active());
+        metrics.gauge("db_pool_idle_connections", "Số connection đang rảnh trong pool", () -> DBConnector.poolStats().idle());
+        metrics.gauge("db_pool_total_connections", "Tổng số connection vật lý tới MySQL", () -> DBConnector.poolStats().total());
+        metrics.gauge("db_pool_waiting_threads", "Số thread đang chờ mượn connection", () -> DBConnector.poolStats().waiting());
+        metrics.counter("db_statement_cache_hits_total", "Số lần prepare lấy được từ cache statement",
+                () -> DBConnector.poolStats().statementCacheHits());
+        metrics.counter("db_statement_cache_misses_total", "Số lần prepare không có trong cache statement",
+                () -> DBConnector.poolStats().statementCacheMisses());
+        if (JdbcStudentRepository.cacheStats().isPresent()) {
+            metrics.counter("student_cache_hits_total", "Số lần FIND đọc được từ cache",
+                    () -> JdbcStudentRepository.cacheStats().orElseThrow().hits());
+            metrics.counter("student_cache_misses_total", "Số lần FIND phải đọc DB",
+                    () -> JdbcStudentRepository.cacheStats().orElseThrow().misses());
+            metrics.gauge("student_cache_size", "Số student trong cache",
+                    () -> JdbcStudentRepository.cacheStats().orElseThrow().size());
+        }
+    }
+}
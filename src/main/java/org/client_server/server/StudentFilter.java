@@ -0,0 +1,63 @@
+package org.client_server.server;
+
+import org.client_server.model.Sex;
+import org.client_server.model.Student;
+
+import java.time.LocalDate;
+import java.util.function.Predicate;
+
+/**
+ * Điều kiện lọc của QUERY, field null là không lọc theo field đó.
+ * Khoảng gpa/dob có thể chỉ có 1 đầu, đầu còn lại lấy theo giới hạn của kiểu dữ liệu
+ * nên mỗi điều kiện chỉ có 1 dạng SQL (BETWEEN ? AND ?) và số câu SQL khác nhau tối đa là 2^4.
+ */
+public record StudentFilter(Double minGpa, Double maxGpa, LocalDate dobFrom, LocalDate dobTo,
+                            String major, Sex sex) implements Predicate<Student> {
+
+    // các bit của shape()
+    public static final int GPA = 1;
+    public static final int DOB = 2;
+    public static final int MAJOR = 4;
+    public static final int SEX = 8;
+
+    // khoảng của kiểu DATE trong MySQL
+    private static final LocalDate MIN_DOB = LocalDate.of(1000, 1, 1);
+    private static final LocalDate MAX_DOB = LocalDate.of(9999, 12, 31);
+
+    // các field có điều kiện, 2 filter cùng shape dùng chung 1 câu SQL
+    public int shape() {
+        int shape = 0;
+        if (minGpa != null || maxGpa != null) shape |= GPA;
+        if (dobFrom != null || dobTo != null) shape |= DOB;
+        if (major != null) shape |= MAJOR;
+        if (sex != null) shape |= SEX;
+        return shape;
+    }
+
+    public double gpaFrom() {
+        return minGpa == null ? 0 : minGpa;
+    }
+
+    public double gpaTo() {
+        return maxGpa == null ? 4 : maxGpa;
+    }
+
+    public LocalDate dobFromOrMin() {
+        return dobFrom == null ? MIN_DOB : dobFrom;
+    }
+
+    public LocalDate dobToOrMax() {
+        return dobTo == null ? MAX_DOB : dobTo;
+    }
+
+    // lọc trong bộ nhớ, cùng nghĩa với câu SQL (major không phân biệt hoa thường như collation của MySQL)
+    @Override
+    public boolean test(Student student) {
+        int shape = shape();
+        if ((shape & GPA) != 0 && (student.getGpa() < gpaFrom() || student.getGpa() > gpaTo())) return false;
+        if ((shape & DOB) != 0 && (student.getDob() == null
+                || student.getDob().isBefore(dobFromOrMin()) || student.getDob().isAfter(dobToOrMax()))) return false;
+        if ((shape & MAJOR) != 0 && (student.getMajor() == null || !student.getMajor().trim().equalsIgnoreCase(major))) return false;
+        return (shape & SEX) == 0 || student.getSex() == sex;
+    }
+}
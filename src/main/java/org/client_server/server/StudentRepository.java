@@ -1,140 +1,69 @@
 package org.client_server.server;
 
-import lombok.extern.slf4j.Slf4j;
-import org.client_server.exception.ProgramException;
-import org.client_server.model.Sex;
 import org.client_server.model.Student;
-import org.client_server.util.DBConnector;
 
-import java.sql.*;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 
-@Slf4j
-public class StudentRepository {
-
-
-    public long insert(Student student) {
-        String sql = "INSERT INTO Students (FullName, Dob, Gpa, Sex, Major) VALUES (?,?,?,?,?)";
-
-        try (Connection connection = DBConnector.getConnector();
-             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-
-            preparedStatement.setString(1, student.getName());
-            preparedStatement.setDate(2, Date.valueOf(student.getDob()));
-            preparedStatement.setDouble(3, student.getGpa());
-            preparedStatement.setString(4, student.getSex().name());
-            preparedStatement.setString(5, student.getMajor());
-
-            int row = preparedStatement.executeUpdate();
-            if (row > 0){
-                try (ResultSet rs = preparedStatement.getGeneratedKeys()){
-                    if (rs.next()){
-                        long id = rs.getLong("Id_student");
-                        student.setId(id);
-                        log.info("Insert thành công Student : {}", student);
-                        return id;
-                    }
-                }
-            }
-            return -1;
-        } catch (SQLException e) {
-            log.error("Lỗi tại student : {}", student, e);
-            throw new ProgramException("Lỗi không thể insert dữ liệu", e);
-        }
-    }
+/**
+ * Lưu trữ student. Có 2 engine, chọn bằng storage.engine trong server.properties:
+ * - mysql: JdbcStudentRepository, qua DBConnector (mặc định)
+ * - log  : LogStudentRepository, nhúng trong server (index trong bộ nhớ + WAL memory-mapped)
+ * Student trả về là bản sao, người gọi sửa thoải mái mà không ảnh hưởng dữ liệu đã lưu.
+ */
+public interface StudentRepository {
 
-    //lấy ra tất cả trong danh sách
-    public List<Student> findAll(){
-        List<Student> studentList = new ArrayList<>();
-        String sql = "SELECT Id_student, FullName, Dob, Gpa, Sex, Major FROM Students";
-
-        try (Connection connection = DBConnector.getConnector();
-        PreparedStatement statement = connection.prepareStatement(sql);
-             ResultSet rs = statement.executeQuery()){
-
-            while (rs.next()){
-                studentList.add(mapResultStudent(rs));
-            }
-            return studentList;
-        } catch (SQLException e) {
-            log.error("Lỗi không lấy được dữ liệu từ table Students",e);
-            throw new ProgramException("Lỗi không lấy được dữ liệu từ table Students",e);
-        }
+    // kết quả ghi của 1 dòng trong lô: id nếu thành công, error khác null nếu lô chứa dòng đó bị lỗi
+    record BatchRowResult(long id, String error) {
     }
 
-    public boolean update(Student student){
-        String sql = "UPDATE Students SET FullName=?, Dob=?, Gpa=?, Sex=?, Major=? WHERE Id_student=?";
-        try (Connection connection = DBConnector.getConnector();
-        PreparedStatement statement = connection.prepareStatement(sql)){
-
-            statement.setString(1, student.getName());
-            statement.setDate(2, Date.valueOf(student.getDob()));
-            statement.setDouble(3, student.getGpa());
-            statement.setString(4, student.getSex().name());
-            statement.setString(5, student.getMajor());
-            statement.setLong(6, student.getId());
-
-            int row = statement.executeUpdate();
-            if (row > 0){
-                log.info("Update thành công student : {}",student);
-                return true;
-            }
-        } catch (SQLException e) {
-            log.error("Đã có lỗi update tại {}", student,e);
-            throw new ProgramException("Lỗi không thể update",e);
-        }
-        return false;
+    // nhận từng dòng khi duyệt, có thể ghi thẳng ra socket nên cho phép IOException
+    @FunctionalInterface
+    interface RowConsumer {
+        void accept(Student student) throws IOException;
     }
 
-    public boolean delete(long id){
-        String sql = "DELETE FROM Students WHERE Id_student=?";
-        try (Connection connection = DBConnector.getConnector();
-        PreparedStatement statement = connection.prepareStatement(sql)){
-
-            statement.setLong(1,id);
-            int row = statement.executeUpdate();
-            if (row > 0){
-                log.info("Delete thành công student có Id = {}",id);
-                return true;
-            }
-
-        } catch (SQLException e) {
-            log.error("Có lỗi delete tại student có Id = {}",id,e);
-            throw new ProgramException("Lỗi không thể delete",e);
-        }
-        return false;
+    // engine theo cấu hình, dùng chung cho mọi ClientHandler
+    static StudentRepository shared() {
+        return SharedRepository.INSTANCE;
     }
 
-    public Optional<Student> findById(long id){
-        String sql = "SELECT Id_student, FullName, Dob, Gpa, Sex, Major FROM Students WHERE Id_student = ?";
-        try (Connection connection = DBConnector.getConnector();
-        PreparedStatement statement = connection.prepareStatement(sql)){
-
-            statement.setLong(1,id);
-            try (ResultSet rs = statement.executeQuery()){
-                if (rs.next()){
-                    log.info("Đã tìm thấy student có Id = {}", id);
-                    return Optional.of(mapResultStudent(rs));
-                }
-            }
-        } catch (SQLException e) {
-            log.error("Có lỗi xảy ra khi tim student có Id = {}", id, e);
-            throw new ProgramException("Lỗi khi tìm kiếm",e);
-        }
-        return Optional.empty();
-    }
+    // @return id mới, -1 nếu không insert được
+    long insert(Student student);
 
-    //mapping dữ liệu
-    private Student mapResultStudent (ResultSet rs) throws SQLException {
-        return Student.builder()
-                .id(rs.getLong("Id_student"))
-                .name(rs.getString("FullName"))
-                .dob(rs.getDate("Dob").toLocalDate())
-                .gpa(rs.getDouble("Gpa"))
-                .sex(Sex.valueOf(rs.getString("Sex")))
-                .major(rs.getString("Major"))
-                .build();
-    }
+    List<BatchRowResult> insertAll(List<Student> students);
+
+    // insert hoặc cập nhật theo id, id của mỗi student phải > 0
+    List<BatchRowResult> upsertAll(List<Student> students);
+
+    List<Student> findAll();
+
+    /**
+     * Duyệt toàn bộ theo id tăng dần mà không giữ cả danh sách trong bộ nhớ.
+     * @return số dòng đã duyệt
+     */
+    long streamAll(RowConsumer consumer) throws IOException;
+
+    // keyset: các student có id > afterId, tăng dần theo id, tối đa limit dòng
+    List<Student> findPage(long afterId, int limit);
+
+    // keyset như findPage nhưng chỉ lấy các student thỏa filter
+    List<Student> query(StudentFilter filter, long afterId, int limit);
+
+    boolean update(Student student);
+
+    boolean delete(long id);
+
+    Optional<Student> findById(long id);
+
+    // các student có id trong ids (không theo thứ tự nào), id không có trong kết quả là không tồn tại
+    List<Student> findByIds(long[] ids);
+
+    /**
+     * Tìm theo FullName và Major, không phân biệt hoa thường và dấu tiếng Việt.
+     * Mọi từ trong query phải khớp nguyên từ hoặc tiền tố, kết quả xếp theo độ liên quan.
+     * @return tối đa limit student
+     */
+    List<Student> search(String query, int limit);
 }
@@ -0,0 +1,237 @@
+package org.client_server.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.client_server.model.Sex;
+import org.client_server.model.Student;
+import org.client_server.storage.LongIndex;
+import org.client_server.util.ServerConfig;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thống kê GPA (số lượng, trung bình, min, max) toàn bộ, theo Major và theo Sex, giữ sẵn trong bộ nhớ
+ * để STATS không phải duyệt table.
+ * - Seed 1 lần bằng streamAll ở lần STATS đầu tiên
+ * - Sau đó ClientHandler gọi put/remove sau mỗi lần ghi thành công, mỗi lần chỉ tốn O(log n)
+ * - Định kỳ reconcile: duyệt lại table, thay toàn bộ số liệu và log độ lệch
+ *   (ghi thẳng vào DB từ ngoài server, sai số cộng dồn của tổng GPA)
+ *
+ * Giữ (major, sex, gpa) của từng id nên put không cần biết giá trị cũ (UPSERT, UPDATE đều như nhau).
+ * Min/max theo nhóm dùng TreeMap gpa -> số lượng nên xóa phần tử đang là min/max không phải duyệt lại.
+ */
+@Slf4j
+public class StudentStats {
+
+    // số liệu của 1 nhóm, min/avg/max null khi nhóm rỗng
+    public record Group(long count, Double avgGpa, Double minGpa, Double maxGpa) {
+    }
+
+    public record Snapshot(Group total, Map<String, Group> byMajor, Map<Sex, Group> bySex, Instant reconciledAt) {
+    }
+
+    private static final class Holder {
+        static final StudentStats INSTANCE = createShared();
+    }
+
+    // dùng chung cho mọi ClientHandler, cùng engine với StudentRepository.shared()
+    public static StudentStats shared() {
+        return Holder.INSTANCE;
+    }
+
+    private static StudentStats createShared() {
+        StudentStats stats = new StudentStats(StudentRepository.shared());
+        long intervalMs = ServerConfig.getLong("stats.reconcileIntervalMs", 600_000);
+        if (intervalMs > 0) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "stats-reconcile");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(stats::reconcileIfSeeded, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+        return stats;
+    }
+
+    private final StudentRepository repository;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object reconcileLock = new Object();
+    // 3 field dưới chỉ đọc/ghi khi giữ lock
+    private Aggregates current;// null khi chưa seed
+    private List<Write> pendingWrites;// khác null khi đang reconcile
+    private Instant reconciledAt;
+
+    public StudentStats(StudentRepository repository) {
+        this.repository = repository;
+    }
+
+    // phần của 1 student mà thống kê cần
+    private record Row(String major, Sex sex, double gpa) {
+        static Row of(Student student) {
+            return new Row(student.getMajor() == null ? null : student.getMajor().trim(), student.getSex(), student.getGpa());
+        }
+    }
+
+    // row = null là xóa
+    private record Write(long id, Row row) {
+    }
+
+    // student đã được ghi (insert, update, upsert), id phải > 0
+    public void put(Student student) {
+        record(new Write(student.getId(), Row.of(student)));
+    }
+
+    public void remove(long id) {
+        record(new Write(id, null));
+    }
+
+    private void record(Write write) {
+        lock.writeLock().lock();
+        try {
+            // chưa seed thì bỏ qua, lúc seed sẽ đọc được từ DB
+            if (current != null) current.apply(write);
+            if (pendingWrites != null) pendingWrites.add(write);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // seed nếu chưa có rồi trả số liệu hiện tại, O(số nhóm)
+    public Snapshot snapshot() throws IOException {
+        lock.readLock().lock();
+        try {
+            if (current != null) return current.snapshot(reconciledAt);
+        } finally {
+            lock.readLock().unlock();
+        }
+        reconcile();
+        lock.readLock().lock();
+        try {
+            return current.snapshot(reconciledAt);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Duyệt lại toàn bộ table rồi thay số liệu hiện tại. Không giữ lock trong lúc đọc DB,
+     * các lần ghi xảy ra trong lúc đó được ghi lại và áp vào kết quả mới trước khi thay.
+     */
+    public void reconcile() throws IOException {
+        synchronized (reconcileLock) {
+            lock.writeLock().lock();
+            try {
+                pendingWrites = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            long started = System.nanoTime();
+            try {
+                Aggregates fresh = new Aggregates();
+                repository.streamAll(student -> fresh.apply(new Write(student.getId(), Row.of(student))));
+                lock.writeLock().lock();
+                try {
+                    for (Write write : pendingWrites) {
+                        fresh.apply(write);
+                    }
+                    if (current != null) logDrift(current, fresh);
+                    current = fresh;
+                    reconciledAt = Instant.now();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                log.info("Reconcile thống kê {} students trong {} ms", fresh.total.count,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            } finally {
+                lock.writeLock().lock();
+                pendingWrites = null;
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void reconcileIfSeeded() {
+        boolean seeded;
+        lock.readLock().lock();
+        try {
+            seeded = current != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (!seeded) return;// chưa ai dùng STATS thì không tốn công duyệt table
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.error("Không reconcile được thống kê, giữ số liệu cũ", e);
+        }
+    }
+
+    private static void logDrift(Aggregates before, Aggregates after) {
+        long countDrift = after.total.count - before.total.count;
+        double sumDrift = after.total.gpaSum - before.total.gpaSum;
+        if (countDrift != 0 || Math.abs(sumDrift) > 1e-6) {
+            log.warn("Thống kê bị lệch so với DB: count {}, tổng gpa {}", countDrift, sumDrift);
+        }
+    }
+
+    // số liệu cộng dồn, không thread-safe (StudentStats giữ lock)
+    private static final class Aggregates {
+        private final LongIndex<Row> rows = new LongIndex<>();
+        private final Bucket total = new Bucket();
+        private final Map<String, Bucket> byMajor = new HashMap<>();
+        private final Map<Sex, Bucket> bySex = new EnumMap<>(Sex.class);
+
+        void apply(Write write) {
+            Row previous = rows.remove(write.id());
+            if (previous != null) add(previous, -1);
+            if (write.row() != null) {
+                rows.put(write.id(), write.row());
+                add(write.row(), 1);
+            }
+        }
+
+        private void add(Row row, int sign) {
+            total.add(row.gpa(), sign);
+            if (row.major() != null) {
+                Bucket major = byMajor.computeIfAbsent(row.major(), m -> new Bucket());
+                major.add(row.gpa(), sign);
+                if (major.count == 0) byMajor.remove(row.major());
+            }
+            if (row.sex() != null) {
+                bySex.computeIfAbsent(row.sex(), s -> new Bucket()).add(row.gpa(), sign);
+            }
+        }
+
+        Snapshot snapshot(Instant reconciledAt) {
+            Map<String, Group> majors = new TreeMap<>();
+            byMajor.forEach((major, bucket) -> majors.put(major, bucket.toGroup()));
+            Map<Sex, Group> sexes = new EnumMap<>(Sex.class);
+            bySex.forEach((sex, bucket) -> {
+                if (bucket.count > 0) sexes.put(sex, bucket.toGroup());
+            });
+            return new Snapshot(total.toGroup(), majors, sexes, reconciledAt);
+        }
+    }
+
+    private static final class Bucket {
+        long count;
+        double gpaSum;
+        final TreeMap<Double, Integer> gpas = new TreeMap<>();// gpa -> số student có gpa đó
+
+        void add(double gpa, int sign) {
+            count += sign;
+            gpaSum += sign * gpa;
+            gpas.merge(gpa, sign, (a, b) -> a + b == 0 ? null : a + b);
+        }
+
+        Group toGroup() {
+            if (count == 0) return new Group(0, null, null, null);
+            return new Group(count, gpaSum / count, gpas.firstKey(), gpas.lastKey());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.client_server.storage;
+
+import java.util.*;
+
+/**
+ * Inverted index từ -> danh sách id cho tìm kiếm full-text đơn giản.
+ * Mỗi document có id (long), giá trị V trả về khi tìm thấy và vài field text,
+ * field đầu tiên quan trọng nhất (ví dụ name trước major).
+ * Text được chuẩn hóa bằng TextNormalizer nên "nguyen" khớp "Nguyễn".
+ *
+ * Tìm kiếm: mọi từ trong câu truy vấn đều phải khớp (AND), mỗi từ khớp nguyên từ hoặc là tiền tố
+ * của 1 từ trong document. Điểm của 1 từ: khớp nguyên từ x2, khớp ở field đầu x2, lấy cách khớp cao nhất.
+ * Cùng điểm thì id nhỏ đứng trước.
+ *
+ * Từ điển là TreeMap nên tìm theo tiền tố là 1 subMap. Không thread-safe, người dùng tự đồng bộ.
+ */
+public class InvertedIndex<V> {
+    private static final byte PRIMARY_FIELD = 1;
+    private static final byte OTHER_FIELD = 2;
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final LongIndex<Document<V>> documents = new LongIndex<>();
+
+    private record Document<V>(V value, String[] terms) {
+    }
+
+    public record Hit<V>(long id, V value, double score) {
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    // thêm hoặc thay document id, field null coi như rỗng
+    public void put(long id, V value, String... fields) {
+        remove(id);
+        Map<String, Byte> termFields = new LinkedHashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            byte field = i == 0 ? PRIMARY_FIELD : OTHER_FIELD;
+            for (String token : TextNormalizer.tokens(fields[i])) {
+                termFields.merge(token, field, (a, b) -> (byte) (a | b));
+            }
+        }
+        for (Map.Entry<String, Byte> entry : termFields.entrySet()) {
+            terms.computeIfAbsent(entry.getKey(), t -> new Postings()).add(id, entry.getValue());
+        }
+        documents.put(id, new Document<>(value, termFields.keySet().toArray(new String[0])));
+    }
+
+    public void remove(long id) {
+        Document<V> document = documents.remove(id);
+        if (document == null) return;
+        for (String term : document.terms()) {
+            Postings postings = terms.get(term);
+            if (postings != null && postings.remove(id) && postings.size == 0) {
+                terms.remove(term);
+            }
+        }
+    }
+
+    public void clear() {
+        terms.clear();
+        documents.clear();
+    }
+
+    /**
+     * @return tối đa limit kết quả, điểm giảm dần; rỗng nếu truy vấn không có từ nào
+     */
+    public List<Hit<V>> search(String query, int limit) {
+        List<String> queryTokens = TextNormalizer.tokens(query);
+        if (queryTokens.isEmpty() || limit <= 0) return List.of();
+
+        Map<Long, double[]> scores = null;
+        for (String token : queryTokens) {
+            Map<Long, double[]> matched = new HashMap<>();
+            for (Map.Entry<String, Postings> entry : terms.subMap(token, true, token + Character.MAX_VALUE, false).entrySet()) {
+                double termWeight = entry.getKey().length() == token.length() ? 2 : 1;
+                Postings postings = entry.getValue();
+                for (int i = 0; i < postings.size; i++) {
+                    long id = postings.ids[i];
+                    if (scores != null && !scores.containsKey(id)) continue;
+                    double score = termWeight * ((postings.fields[i] & PRIMARY_FIELD) != 0 ? 2 : 1);
+                    double[] best = matched.computeIfAbsent(id, k -> new double[1]);
+                    best[0] = Math.max(best[0], score);
+                }
+            }
+            if (scores != null) {
+                for (Map.Entry<Long, double[]> entry : matched.entrySet()) {
+                    entry.getValue()[0] += scores.get(entry.getKey())[0];
+                }
+            }
+            scores = matched;
+            if (scores.isEmpty()) return List.of();
+        }
+
+        // giữ limit kết quả tốt nhất, đầu heap là kết quả tệ nhất đang giữ
+        Comparator<Map.Entry<Long, double[]>> ranking = Comparator
+                .<Map.Entry<Long, double[]>>comparingDouble(e -> e.getValue()[0])
+                .thenComparing(Map.Entry::getKey, Comparator.reverseOrder());
+        PriorityQueue<Map.Entry<Long, double[]>> top = new PriorityQueue<>(Math.min(limit, scores.size()) + 1, ranking);
+        for (Map.Entry<Long, double[]> entry : scores.entrySet()) {
+            top.add(entry);
+            if (top.size() > limit) top.poll();
+        }
+        List<Hit<V>> hits = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            Map.Entry<Long, double[]> entry = top.poll();
+            hits.add(new Hit<>(entry.getKey(), documents.get(entry.getKey()).value(), entry.getValue()[0]));
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    // id tăng dần kèm field chứa từ; id mới (tự tăng) thêm vào cuối nên add thường là O(1)
+    private static final class Postings {
+        long[] ids = new long[4];
+        byte[] fields = new byte[4];
+        int size;
+
+        void add(long id, byte field) {
+            int i = size == 0 || id > ids[size - 1] ? -size - 1 : Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) {
+                fields[i] = field;
+                return;
+            }
+            int at = -i - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                fields = Arrays.copyOf(fields, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            System.arraycopy(fields, at, fields, at + 1, size - at);
+            ids[at] = id;
+            fields[at] = field;
+            size++;
+        }
+
+        boolean remove(long id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i < 0) return false;
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            System.arraycopy(fields, i + 1, fields, i, size - i - 1);
+            size--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.client_server.storage;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Index long -> value sắp theo key, lưu bằng 2 mảng song song (long[] key, Object[] value)
+ * nên không boxing key và duyệt theo thứ tăng dần rẻ.
+ * - get/remove: tìm nhị phân O(log n), remove chỉ đánh dấu (value = null), đủ nhiều thì dồn mảng
+ * - put key lớn hơn mọi key hiện có (id tự tăng): thêm vào cuối O(1)
+ * - put key chen giữa: dịch mảng O(n), hiếm gặp (UPSERT với id cũ đã bị xóa)
+ * Không thread-safe, người dùng tự đồng bộ.
+ */
+public class LongIndex<V> {
+    private long[] keys;
+    private Object[] values;
+    private int length;   // số ô đã dùng (tính cả ô đã xóa)
+    private int size;     // số phần tử còn sống
+
+    public LongIndex() {
+        this(1024);
+    }
+
+    public LongIndex(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    // @return giá trị cũ, null nếu trước đó chưa có
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) throw new IllegalArgumentException("value không được null");
+        if (length == 0 || key > keys[length - 1]) {
+            ensureCapacity(length + 1);
+            keys[length] = key;
+            values[length] = value;
+            length++;
+            size++;
+            return null;
+        }
+        int i = Arrays.binarySearch(keys, 0, length, key);
+        if (i >= 0) {
+            V previous = (V) values[i];
+            values[i] = value;
+            if (previous == null) size++;
+            return previous;
+        }
+        int insertAt = -i - 1;
+        ensureCapacity(length + 1);
+        System.arraycopy(keys, insertAt, keys, insertAt + 1, length - insertAt);
+        System.arraycopy(values, insertAt, values, insertAt + 1, length - insertAt);
+        keys[insertAt] = key;
+        values[insertAt] = value;
+        length++;
+        size++;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = indexOf(key);
+        if (i < 0) return null;
+        V previous = (V) values[i];
+        values[i] = null;
+        size--;
+        // quá nửa số ô là ô đã xóa thì dồn lại
+        if (length > 64 && size < length / 2) {
+            compact();
+        }
+        return previous;
+    }
+
+    public long maxKey() {
+        for (int i = length - 1; i >= 0; i--) {
+            if (values[i] != null) return keys[i];
+        }
+        return 0;
+    }
+
+    // thêm vào out tối đa limit giá trị có key > afterKey theo thứ tự tăng dần, trả về số đã thêm
+    public int after(long afterKey, int limit, List<? super V> out) {
+        return after(afterKey, limit, value -> true, out);
+    }
+
+    // như trên nhưng chỉ lấy giá trị thỏa filter
+    @SuppressWarnings("unchecked")
+    public int after(long afterKey, int limit, Predicate<? super V> filter, List<? super V> out) {
+        int i = Arrays.binarySearch(keys, 0, length, afterKey);
+        i = i >= 0 ? i + 1 : -i - 1;
+        int added = 0;
+        for (; i < length && added < limit; i++) {
+            if (values[i] != null && filter.test((V) values[i])) {
+                out.add((V) values[i]);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> action) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] != null) action.accept((V) values[i]);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(values, 0, length, null);
+        length = 0;
+        size = 0;
+    }
+
+    private int indexOf(long key) {
+        int i = Arrays.binarySearch(keys, 0, length, key);
+        return i >= 0 && values[i] != null ? i : -1;
+    }
+
+    private void compact() {
+        int j = 0;
+        for (int i = 0; i < length; i++) {
+            if (values[i] != null) {
+                keys[j] = keys[i];
+                values[j] = values[i];
+                j++;
+            }
+        }
+        Arrays.fill(values, j, length, null);
+        length = j;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            int newCapacity = Math.max(capacity, keys.length * 2);
+            keys = Arrays.copyOf(keys, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+}
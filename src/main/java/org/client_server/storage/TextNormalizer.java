@@ -0,0 +1,51 @@
+package org.client_server.storage;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Chuẩn hóa text để tìm kiếm: chữ thường, bỏ dấu tiếng Việt ("Nguyễn Đức" -> "nguyen duc").
+ * NFD tách chữ có dấu thành chữ gốc + dấu (combining mark) rồi bỏ dấu đi,
+ * riêng đ/Đ không tách được nên đổi tay thành d.
+ */
+public final class TextNormalizer {
+
+    private TextNormalizer() {
+    }
+
+    public static String fold(String text) {
+        if (text == null) return "";
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            if (c == 'đ' || c == 'Đ') {
+                sb.append('d');
+            } else {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    // các từ (chuỗi chữ/số liên tiếp) đã chuẩn hóa, không trùng, giữ thứ tự xuất hiện
+    public static List<String> tokens(String text) {
+        String folded = fold(text);
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean letter = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+}
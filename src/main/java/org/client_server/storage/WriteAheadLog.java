@@ -0,0 +1,161 @@
+package org.client_server.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log chỉ ghi nối tiếp vào 1 file memory-mapped.
+ * Mỗi record: [int độ dài][int crc32c][nội dung]. Độ dài = 0 đánh dấu hết log
+ * (phần file chưa dùng luôn toàn byte 0), độ dài được ghi sau cùng nên record ghi dở không được đọc lại.
+ * File đầy thì map lại với kích thước gấp đôi.
+ *
+ * Ghi vào mapped buffer đã an toàn khi process chết (nằm trong page cache của OS),
+ * force() mới đảm bảo dữ liệu xuống đĩa khi mất điện. append/close không thread-safe,
+ * force() gọi được từ thread khác song song với append (msync phần đã ghi, không chặn người ghi).
+ */
+@Slf4j
+public class WriteAheadLog implements Closeable {
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private final Path path;
+    private final FileChannel channel;
+    // volatile cho force() từ thread khác: đọc position trước rồi mới đọc buffer, buffer đó luôn đủ lớn
+    private volatile MappedByteBuffer buffer;
+    private volatile int position;
+    private final CRC32C crc = new CRC32C();
+
+    private WriteAheadLog(Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Mở (hoặc tạo) log và đọc lại các record hợp lệ theo thứ tự ghi.
+     * Từ record hỏng đầu tiên (ghi dở khi crash) tới cuối file bị bỏ qua và xóa trắng để ghi đè.
+     * @param replay nhận nội dung từng record (buffer chỉ đọc, chỉ hợp lệ trong lúc gọi)
+     */
+    public static WriteAheadLog open(Path path, long initialBytes, Consumer<ByteBuffer> replay) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long capacity = Math.max(channel.size(), Math.max(initialBytes, 4096));
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IOException("File WAL quá lớn: " + capacity + " byte");
+            }
+            WriteAheadLog wal = new WriteAheadLog(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+            wal.recover(replay);
+            return wal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Đọc tới record hỏng đầu tiên (hoặc độ dài 0) rồi xóa trắng toàn bộ phần sau nó tới cuối file:
+     * không force thì khi mất điện các trang có thể xuống đĩa lệch thứ tự, sau chỗ hỏng vẫn còn record cũ nguyên vẹn,
+     * không xóa thì lần ghi mới có thể kết thúc đúng tại đầu 1 record cũ và lần khởi động sau đọc lại nó.
+     */
+    private void recover(Consumer<ByteBuffer> replay) {
+        int capacity = buffer.capacity();
+        int count = 0;
+        while (position + RECORD_HEADER_BYTES <= capacity) {
+            int length = buffer.getInt(position);
+            if (length == 0) break;
+            int storedCrc = buffer.getInt(position + 4);
+            if (length < 0 || position + RECORD_HEADER_BYTES + (long) length > capacity
+                    || storedCrc != checksum(position + RECORD_HEADER_BYTES, length)) {
+                log.warn("WAL {}: record tại vị trí {} bị hỏng, bỏ phần cuối log", path, position);
+                break;
+            }
+            replay.accept(buffer.slice(position + RECORD_HEADER_BYTES, length).asReadOnlyBuffer());
+            position += RECORD_HEADER_BYTES + length;
+            count++;
+        }
+        zeroTail();
+        log.info("WAL {}: đọc lại {} record ({} byte)", path, count, position);
+    }
+
+    // phần từ position tới cuối file phải toàn byte 0, chỉ ghi (và force) khi thật sự còn dữ liệu cũ
+    private void zeroTail() {
+        int capacity = buffer.capacity();
+        int dirtyFrom = -1;
+        for (int i = position; i < capacity; i++) {
+            if (buffer.get(i) != 0) {
+                dirtyFrom = i;
+                break;
+            }
+        }
+        if (dirtyFrom < 0) return;
+        log.warn("WAL {}: xóa dữ liệu cũ từ vị trí {} tới cuối file", path, dirtyFrom);
+        byte[] zeros = new byte[64 * 1024];
+        for (int i = dirtyFrom; i < capacity; i += zeros.length) {
+            buffer.put(i, zeros, 0, Math.min(zeros.length, capacity - i));
+        }
+        buffer.force();
+    }
+
+    // ghi nội dung từ position tới limit của payload thành 1 record
+    public void append(ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+        if (length == 0) throw new IllegalArgumentException("Record rỗng");
+        int start = position;
+        ensureCapacity((long) start + RECORD_HEADER_BYTES + length);
+
+        buffer.put(start + RECORD_HEADER_BYTES, payload, payload.position(), length);
+        buffer.putInt(start + 4, checksum(start + RECORD_HEADER_BYTES, length));
+        buffer.putInt(start, length);// ghi sau cùng: chưa có độ dài thì record chưa tồn tại
+        position = start + RECORD_HEADER_BYTES + length;
+    }
+
+    public void force() {
+        int end = position;
+        if (end > 0) buffer.force(0, end);
+    }
+
+    // số byte đã dùng
+    public long size() {
+        return position;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    private int checksum(int offset, int length) {
+        crc.reset();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private void ensureCapacity(long required) throws IOException {
+        long capacity = buffer.capacity();
+        if (required <= capacity) return;
+        while (capacity < required) capacity *= 2;
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("WAL " + path + " vượt quá 2GB, cần compaction");
+        }
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+}
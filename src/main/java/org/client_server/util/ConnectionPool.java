@@ -0,0 +1,379 @@
+package org.client_server.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool connection JDBC có giới hạn kích thước.
+ * - Mượn connection: chờ tối đa borrowTimeoutMs, kiểm tra isValid trước khi giao
+ * - Connection rảnh quá idleTimeoutMs bị đóng (giữ lại tối thiểu minIdle), quá maxLifetimeMs thì thay mới
+ * - close() trên connection đã mượn chỉ trả nó về pool
+ * - Mỗi connection vật lý giữ 1 cache PreparedStatement theo câu SQL (LRU, statementCacheSize),
+ *   close() trên statement lấy từ cache chỉ xóa tham số, lần prepare sau dùng lại được ngay
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Settings settings;
+
+    private final Semaphore permits;                                       // số connection được mượn cùng lúc
+    private final BlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger total = new AtomicInteger();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * Các tham số của pool, đọc từ db.properties (db.pool.*).
+     */
+    public record Settings(int maxSize, int minIdle, long borrowTimeoutMs, long idleTimeoutMs,
+                           long maxLifetimeMs, int validationTimeoutSeconds, long housekeepingIntervalMs,
+                           int statementCacheSize) {
+    }
+
+    /**
+     * Số liệu tại 1 thời điểm: đang mượn, đang rảnh, đang chờ mượn, tổng số connection vật lý
+     * và số lần prepare lấy được / không lấy được từ cache statement.
+     */
+    public record Stats(int active, int idle, int waiting, int total,
+                        long statementCacheHits, long statementCacheMisses) {
+    }
+
+    public ConnectionPool(String url, String user, String password, Settings settings) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.settings = settings;
+        this.permits = new Semaphore(settings.maxSize(), true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep,
+                settings.housekeepingIntervalMs(), settings.housekeepingIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    public Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Pool connection đã đóng");
+        try {
+            if (!permits.tryAcquire(settings.borrowTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("Hết thời gian chờ connection sau "
+                        + settings.borrowTimeoutMs() + " ms " + stats());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Bị ngắt khi chờ connection", e);
+        }
+
+        try {
+            PooledEntry entry;
+            while ((entry = idle.pollFirst()) != null) {
+                if (!entry.isExpired(System.currentTimeMillis()) && entry.isValid()) break;
+                discard(entry);
+            }
+            if (entry == null) {
+                entry = create();
+            }
+            active.incrementAndGet();
+            return entry.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(active.get(), idle.size(), permits.getQueueLength(), total.get(),
+                statementCacheHits.sum(), statementCacheMisses.sum());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            discard(entry);
+        }
+    }
+
+    private PooledEntry create() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, user, password);
+        total.incrementAndGet();
+        return new PooledEntry(raw);
+    }
+
+    // gọi khi connection đã mượn được close()
+    private void giveBack(PooledEntry entry) {
+        try {
+            active.decrementAndGet();
+            if (closed || entry.isExpired(System.currentTimeMillis()) || !entry.reset()) {
+                discard(entry);
+            } else {
+                entry.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(entry);// LIFO: connection vừa dùng được mượn lại trước, connection cũ sẽ rảnh lâu và bị dọn
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledEntry entry) {
+        total.decrementAndGet();
+        try {
+            entry.raw.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Lỗi khi đóng connection", e);
+        }
+    }
+
+    // dọn connection rảnh quá lâu / quá tuổi, rồi bù lại cho đủ minIdle
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+            for (PooledEntry entry : idle) {
+                boolean idleTooLong = now - entry.lastUsed > settings.idleTimeoutMs() && idle.size() > settings.minIdle();
+                if ((idleTooLong || entry.isExpired(now)) && idle.remove(entry)) {
+                    discard(entry);
+                }
+            }
+            while (!closed && idle.size() < settings.minIdle() && total.get() < settings.maxSize()) {
+                idle.offerLast(create());
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Không thể tạo connection cho pool", e);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Lỗi khi dọn pool connection", e);
+        }
+    }
+
+    private final class PooledEntry {
+        private final Connection raw;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long lastUsed = createdAt;
+
+        // chỉ người đang mượn connection mới dùng cache nên không cần đồng bộ
+        private final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= settings.statementCacheSize()) return false;
+                eldest.getValue().closeRaw();
+                return true;
+            }
+        };
+
+        PooledEntry(Connection raw) {
+            this.raw = raw;
+        }
+
+        boolean isExpired(long now) {
+            return now - createdAt > settings.maxLifetimeMs();
+        }
+
+        boolean isValid() {
+            try {
+                return raw.isValid(settings.validationTimeoutSeconds());
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        // trả connection về trạng thái mặc định trước khi cho mượn lại
+        boolean reset() {
+            try {
+                if (raw.isClosed()) return false;
+                if (!raw.getAutoCommit()) {
+                    raw.rollback();
+                    raw.setAutoCommit(true);
+                }
+                raw.clearWarnings();
+                // statement người mượn quên đóng thì coi như đóng cùng connection
+                for (CachedStatement cached : statements.values()) {
+                    if (cached.inUse) {
+                        cached.raw.clearParameters();
+                        cached.inUse = false;
+                    }
+                }
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        // mỗi lần mượn là 1 proxy mới, close() 2 lần cũng chỉ trả về pool 1 lần
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new LeaseHandler(this));
+        }
+
+        PreparedStatement prepare(Connection lease, LeaseHandler owner, String sql, int autoGeneratedKeys) throws SQLException {
+            String key = autoGeneratedKeys + ":" + sql;
+            CachedStatement cached = statements.get(key);
+            if (cached != null && cached.inUse) {
+                // cùng câu SQL đang mở ở chỗ khác -> tạo statement thường, không cache
+                statementCacheMisses.increment();
+                return raw.prepareStatement(sql, autoGeneratedKeys);
+            }
+            if (cached == null) {
+                statementCacheMisses.increment();
+                cached = new CachedStatement(key, raw.prepareStatement(sql, autoGeneratedKeys));
+                statements.put(key, cached);
+            } else {
+                statementCacheHits.increment();
+            }
+            cached.inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new StatementHandler(this, cached, lease, owner));
+        }
+    }
+
+    private static final class CachedStatement {
+        private final String key;
+        private final PreparedStatement raw;
+        private boolean inUse;
+
+        CachedStatement(String key, PreparedStatement raw) {
+            this.key = key;
+            this.raw = raw;
+        }
+
+        void closeRaw() {
+            try {
+                raw.close();
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Lỗi khi đóng statement", e);
+            }
+        }
+    }
+
+    /**
+     * close() không đóng statement thật mà trả nó lại cache của connection.
+     * Connection đã trả về pool thì proxy này hết hiệu lực (reset() đã thu statement về cho người mượn sau),
+     * mọi lời gọi ném "Statement đã đóng" và close() không được đụng tới statement thật nữa.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final PooledEntry entry;
+        private final CachedStatement cached;
+        private final Connection lease;
+        private final LeaseHandler owner;
+        private boolean released;
+
+        StatementHandler(PooledEntry entry, CachedStatement cached, Connection lease, LeaseHandler owner) {
+            this.entry = entry;
+            this.cached = cached;
+            this.lease = lease;
+            this.owner = owner;
+        }
+
+        private boolean stale() {
+            return released || owner.returned;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        if (!owner.returned) release();
+                    }
+                    return null;
+                case "isClosed":
+                    return stale() || cached.raw.isClosed();
+                case "getConnection":
+                    return lease;
+                case "toString":
+                    return "Cached" + cached.raw;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (stale()) throw new SQLException("Statement đã đóng");
+                    try {
+                        return method.invoke(cached.raw, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+
+        private void release() {
+            try {
+                cached.raw.clearParameters();
+                cached.raw.clearBatch();
+                cached.inUse = false;
+            } catch (SQLException e) {
+                // statement hỏng thì bỏ khỏi cache
+                entry.statements.remove(cached.key, cached);
+                cached.closeRaw();
+            }
+        }
+    }
+
+    private final class LeaseHandler implements InvocationHandler {
+        private final PooledEntry entry;
+        private volatile boolean returned;// statement proxy của lần mượn này cũng đọc
+
+        LeaseHandler(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        giveBack(entry);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || entry.raw.isClosed();
+                case "prepareStatement":
+                    if (!returned && settings.statementCacheSize() > 0 && isCacheable(method)) {
+                        int keys = args.length > 1 ? (int) args[1] : Statement.NO_GENERATED_KEYS;
+                        return entry.prepare((Connection) proxy, this, (String) args[0], keys);
+                    }
+                    break;
+                case "toString":
+                    return "Pooled" + entry.raw;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (returned) throw new SQLException("Connection đã được trả về pool");
+            try {
+                return method.invoke(entry.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        // chỉ cache prepareStatement(sql) và prepareStatement(sql, autoGeneratedKeys)
+        private boolean isCacheable(Method method) {
+            Class<?>[] types = method.getParameterTypes();
+            return types.length == 1 || (types.length == 2 && types[1] == int.class);
+        }
+    }
+}
@@ -5,7 +5,6 @@ import com.sun.jdi.connect.Connector;
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Objects;
 import java.util.Properties;
@@ -18,20 +17,34 @@ public class DBConnector {
     private static String url;
     private static String user;
     private static String password;
+    private static ConnectionPool.Settings poolSettings;
+    private static ConnectionPool pool;
+    private static int batchChunkSize;
 
     //Khối này sẽ được chạy ngay khi được nhắc đến và chạy 1 lần duy nhất
     static {
         loadProperties();
         loadJdbcDriver();
         checkURL();
+        pool = new ConnectionPool(url, user, password, poolSettings);
     }
 
     private DBConnector() {
         //ngăn tạo instance - không cho tạo như 1 object bình thường
     }
 
+    //mượn connection từ pool, close() sẽ trả connection về pool thay vì đóng kết nối tới MySQL
     public static Connection getConnector() throws SQLException {
-        return DriverManager.getConnection(url,user,password);
+        return pool.borrow();
+    }
+
+    //số dòng tối đa trong 1 lần executeBatch
+    public static int batchChunkSize() {
+        return batchChunkSize;
+    }
+
+    public static ConnectionPool.Stats poolStats() {
+        return pool.stats();
     }
 
     private static void loadProperties(){
@@ -50,8 +63,28 @@ public class DBConnector {
             user = require(properties, "db.user");
             password = require(properties, "db.password");
 
+            poolSettings = new ConnectionPool.Settings(
+                    optionalInt(properties, "db.pool.maxSize", 10),
+                    optionalInt(properties, "db.pool.minIdle", 2),
+                    optionalInt(properties, "db.pool.borrowTimeoutMs", 5000),
+                    optionalInt(properties, "db.pool.idleTimeoutMs", 600000),
+                    optionalInt(properties, "db.pool.maxLifetimeMs", 1800000),
+                    optionalInt(properties, "db.pool.validationTimeoutSeconds", 2),
+                    optionalInt(properties, "db.pool.housekeepingIntervalMs", 30000),
+                    optionalInt(properties, "db.pool.statementCacheSize", 32));
+
+            //cache statement chỉ có ý nghĩa khi MySQL prepare phía server (parse/plan 1 lần cho mỗi connection)
+            if (poolSettings.statementCacheSize() > 0) {
+                url = withUrlParam(url, "useServerPrepStmts", "true");
+            }
+            batchChunkSize = Math.max(1, optionalInt(properties, "db.batch.chunkSize", 500));
+            //driver gộp executeBatch của INSERT thành 1 câu nhiều VALUES, tránh 1 round-trip mỗi dòng
+            url = withUrlParam(url, "rewriteBatchedStatements", "true");
+            //statement có setFetchSize > 0 sẽ đọc theo lô qua server-side cursor thay vì kéo hết kết quả về
+            url = withUrlParam(url, "useCursorFetch", "true");
+
             //log để kiểm tra
-            LOGGER.info(()->"DB properties load. url = " + url + " \tuser = "+user);
+            LOGGER.info(()->"DB properties load. url = " + url + " \tuser = "+user + " \tpool = " + poolSettings);
 
         } catch (IOException e) {
             throw new IllegalStateException("Lỗi khi đọc file cấu hình " + DB_PROPERTIES_FILE, e);
@@ -63,6 +96,22 @@ public class DBConnector {
         return Objects.requireNonNull(v,"Thiếu khóa cấu hình: "+ key);
     }
 
+    //thêm tham số vào jdbc url nếu url chưa tự khai báo
+    private static String withUrlParam(String url, String key, String value){
+        if (url.contains(key + "=")) return url;
+        return url + (url.contains("?") ? "&" : "?") + key + "=" + value;
+    }
+
+    private static int optionalInt(Properties p, String key, int defaultValue){
+        String v = p.getProperty(key);
+        if (v == null || v.isBlank()) return defaultValue;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e){
+            throw new IllegalStateException("Khóa cấu hình " + key + " phải là số: " + v, e);
+        }
+    }
+
     private static void loadJdbcDriver(){
         try {
             //bây giờ thì gần như không cần khai báo như này nữa vì jdbc 4.0+ và java 6 trở lên đã tự động
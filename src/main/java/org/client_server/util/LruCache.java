@@ -0,0 +1,170 @@
+package org.client_server.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Cache key -> value có giới hạn kích thước, hết hạn theo TTL và loại bỏ theo LRU.
+ * Chia thành nhiều segment (mỗi segment 1 LinkedHashMap access-order + 1 lock riêng),
+ * các thread chỉ tranh chấp khi truy cập cùng segment, không có lock chung cho cả cache.
+ *
+ * Để tránh ghi lại giá trị cũ sau khi đã invalidate (đọc DB song song với update):
+ * lấy stamp(key) trước khi đọc nguồn dữ liệu, rồi put(key, value, stamp);
+ * nếu segment đã có invalidate xen giữa thì giá trị bị bỏ qua.
+ */
+public class LruCache<K, V> {
+
+    public record Stats(long hits, long misses, long evictions, long expirations, int size) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAtNanos) {
+    }
+
+    private final Segment<K, V>[] segments;
+    private final long ttlNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxSize      tổng số phần tử tối đa (chia đều cho các segment)
+     * @param ttlMillis    thời gian sống của 1 phần tử, <= 0 là không hết hạn
+     * @param segmentCount số segment, làm tròn lên lũy thừa của 2
+     */
+    @SuppressWarnings("unchecked")
+    public LruCache(int maxSize, long ttlMillis, int segmentCount) {
+        int count = Integer.highestOneBit(Math.max(1, Math.min(segmentCount, maxSize)) * 2 - 1);
+        this.segments = new Segment[count];
+        int perSegment = Math.max(1, (maxSize + count - 1) / count);
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(perSegment, evictions);
+        }
+        this.ttlNanos = ttlMillis <= 0 ? Long.MAX_VALUE : ttlMillis * 1_000_000L;
+    }
+
+    // null nếu không có hoặc đã hết hạn
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            Entry<V> entry = segment.map.get(key);
+            if (entry != null && System.nanoTime() - entry.expiresAtNanos() >= 0) {
+                segment.map.remove(key);
+                expirations.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value();
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // số lần invalidate của segment chứa key, dùng cho put(key, value, stamp)
+    public long stamp(K key) {
+        return segmentFor(key).invalidations;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, stamp(key));
+    }
+
+    // chỉ ghi nếu từ lúc lấy stamp tới giờ segment chưa bị invalidate
+    public void put(K key, V value, long stamp) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            if (segment.invalidations != stamp) return;
+            long expiresAt = ttlNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + ttlNanos;
+            segment.map.put(key, new Entry<>(value, expiresAt));
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Lấy từ cache, không có thì gọi loader rồi lưu lại (loader trả null thì không lưu).
+     * loader chạy ngoài lock nên 2 thread cùng miss có thể cùng gọi loader.
+     */
+    public V get(K key, Function<K, V> loader) {
+        V value = get(key);
+        if (value != null) return value;
+        long stamp = stamp(key);
+        value = loader.apply(key);
+        if (value != null) put(key, value, stamp);
+        return value;
+    }
+
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            segment.invalidations++;
+            segment.map.remove(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.invalidations++;
+                segment.map.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    public Stats stats() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), size);
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    private static final class Segment<K, V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<K, Entry<V>> map;
+        private volatile long invalidations;// chỉ ghi khi giữ lock
+
+        Segment(int maxSize, LongAdder evictions) {
+            this.map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() > maxSize) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.client_server.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Cấu hình phía server, đọc từ server.properties trong resource/.
+ * Mọi khóa đều có thể ghi đè bằng system property, ví dụ: -Dserver.mode=nio
+ */
+public class ServerConfig {
+    private static final Logger LOGGER = Logger.getLogger(ServerConfig.class.getName());
+    private static final String SERVER_PROPERTIES_FILE = "server.properties";
+
+    private static final Properties properties = new Properties();
+
+    static {
+        loadProperties();
+    }
+
+    private ServerConfig() {
+        //ngăn tạo instance
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String v = System.getProperty(key, properties.getProperty(key));
+        return (v == null || v.isBlank()) ? defaultValue : v.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String v = getString(key, null);
+        if (v == null) return defaultValue;
+        try {
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            LOGGER.warning(() -> "Giá trị cấu hình " + key + " = " + v + " không phải số, dùng mặc định " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static double getDouble(String key, double defaultValue) {
+        String v = getString(key, null);
+        if (v == null) return defaultValue;
+        try {
+            return Double.parseDouble(v);
+        } catch (NumberFormatException e) {
+            LOGGER.warning(() -> "Giá trị cấu hình " + key + " = " + v + " không phải số, dùng mặc định " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String v = getString(key, null);
+        return v == null ? defaultValue : Boolean.parseBoolean(v);
+    }
+
+    private static void loadProperties() {
+        try (InputStream in = Thread.currentThread()
+                .getContextClassLoader()
+                .getResourceAsStream(SERVER_PROPERTIES_FILE)) {
+
+            //không có file thì chạy với giá trị mặc định
+            if (in == null) {
+                LOGGER.warning("Không tìm thấy " + SERVER_PROPERTIES_FILE + ", dùng cấu hình mặc định");
+                return;
+            }
+            properties.load(in);
+            LOGGER.info(() -> "Server properties load. " + properties);
+
+        } catch (IOException e) {
+            throw new IllegalStateException("Lỗi khi đọc file cấu hình " + SERVER_PROPERTIES_FILE, e);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.client_server.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timer wheel: 1 thread duy nhất quay qua wheelSize ô, mỗi ô ứng với tickMillis.
+ * Timeout hẹn sau delay nằm ở ô (delay / tick) % wheelSize và chờ thêm (delay / tick) / wheelSize vòng.
+ * - schedule/cancel chỉ thêm vào 1 hàng đợi không lock, thread của wheel mới đụng tới các ô
+ * - mỗi tick chỉ duyệt 1 ô, chi phí không phụ thuộc tổng số timeout đang chờ
+ * - timeout bị hủy được gỡ khỏi ô ở tick kế tiếp, không nằm chờ tới hạn
+ * Độ chính xác bằng 1 tick (timeout không bao giờ chạy sớm), hợp với hàng nghìn hạn dài như idle/deadline
+ * của kết nối; task chạy trên thread của wheel nên phải ngắn (đóng socket, giao việc cho thread khác).
+ */
+public class TimerWheel implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(TimerWheel.class.getName());
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startNanos = System.nanoTime();
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread worker;
+    private long tick;// chỉ thread của wheel đọc/ghi
+    private volatile boolean closed;
+
+    /**
+     * @param wheelSize làm tròn lên lũy thừa của 2
+     */
+    public TimerWheel(String name, long tickMillis, int wheelSize) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("tickMillis phải > 0");
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Hẹn task chạy sau delay (làm tròn lên theo tick) trên thread của wheel.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (closed) throw new IllegalStateException("Timer wheel đã đóng");
+        long deadline = System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay));
+        Timeout timeout = new Timeout(this, task, deadline);
+        pending.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    // số timeout đã hẹn mà chưa chạy hoặc chưa được gỡ sau khi hủy
+    public int pending() {
+        return pending.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        while (!closed) {
+            long now = waitForNextTick();
+            if (closed) break;
+            removeCancelled();
+            transferAdded();
+            wheel[(int) (tick & mask)].expire(now);
+            tick++;
+        }
+    }
+
+    // ngủ tới đầu tick kế tiếp, trả về thời điểm hiện tại tính từ startNanos
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (!closed) {
+            long now = System.nanoTime() - startNanos;
+            if (now >= deadline) return now;
+            LockSupport.parkNanos(deadline - now);
+        }
+        return deadline;
+    }
+
+    private void transferAdded() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = added.poll();
+            if (timeout == null) return;
+            if (timeout.state.get() != Timeout.WAITING) continue;// đã hủy trước khi vào ô, pending đã giảm lúc hủy
+
+            long expiresAtTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (expiresAtTick - tick) / wheel.length;
+            // hạn đã qua thì đặt vào ô hiện tại, chạy ngay trong tick này
+            wheel[(int) (Math.max(expiresAtTick, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+        }
+    }
+
+    /**
+     * 1 lần hẹn, cancel() được gọi từ thread bất kỳ.
+     */
+    public static final class Timeout {
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimerWheel owner;
+        private final Runnable task;
+        private final long deadline;// nano giây tính từ startNanos của wheel
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        // các field dưới chỉ thread của wheel đọc/ghi
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(TimerWheel owner, Runnable task, long deadline) {
+            this.owner = owner;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        // false nếu task đã chạy hoặc đã hủy trước đó
+        public boolean cancel() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) return false;
+            owner.pending.decrementAndGet();
+            owner.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(WAITING, EXPIRED)) return;
+            owner.pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOGGER.log(Level.WARNING, "Task của timer wheel bị lỗi", t);
+            }
+        }
+    }
+
+    // danh sách liên kết đôi để gỡ timeout bị hủy trong O(1)
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(long now) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= now) {
+                        timeout.expire();
+                    } else {
+                        // không xảy ra: ô chỉ được duyệt khi đã qua thời điểm của tick
+                        LOGGER.warning("Timeout nằm sai ô của timer wheel");
+                    }
+                } else if (timeout.state.get() == Timeout.CANCELLED) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) return;
+            if (timeout.prev != null) timeout.prev.next = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            if (timeout == head) head = timeout.next;
+            if (timeout == tail) tail = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
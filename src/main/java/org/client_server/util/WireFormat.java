@@ -0,0 +1,61 @@
+package org.client_server.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileParser;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Định dạng trên đường truyền giữa client và server.
+ * - JSON : text UTF-8, mỗi message kết thúc bằng \n (mặc định)
+ * - SMILE: JSON dạng nhị phân, mỗi message = 4 byte độ dài (big-endian) + nội dung.
+ *          Chỉ dùng sau khi client gửi HELLO và server đồng ý.
+ */
+public enum WireFormat {
+    JSON("json", false, new JsonFactory()),
+    // đã có độ dài frame nên bỏ header ":)\n" của mỗi message smile
+    SMILE("smile", true, SmileFactory.builder()
+            .disable(SmileGenerator.Feature.WRITE_HEADER)
+            .disable(SmileParser.Feature.REQUIRE_HEADER)
+            .build());
+
+    private final String id;
+    private final boolean binary;
+    private final ObjectMapper mapper;
+
+    WireFormat(String id, boolean binary, JsonFactory factory) {
+        this.id = id;
+        this.binary = binary;
+        this.mapper = new ObjectMapper(factory)
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    public String id() {
+        return id;
+    }
+
+    // true: frame có độ dài phía trước, false: frame kết thúc bằng \n
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public ObjectMapper mapper() {
+        return mapper;
+    }
+
+    public JsonFactory factory() {
+        return mapper.getFactory();
+    }
+
+    // null nếu không hỗ trợ
+    public static WireFormat fromId(String id) {
+        for (WireFormat format : values()) {
+            if (format.id.equalsIgnoreCase(id)) return format;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,103 @@
+import org.client_server.model.Student;
+import org.client_server.server.ChangeFeed;
+import org.client_server.server.ChangeLog;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Đẩy thay đổi cho SUBSCRIBE: lọc theo major/id, dòng rời filter thành DELETE, hàng đợi đầy thì bỏ và RESYNC.
+ */
+public class ChangeFeedTest {
+
+    private static Student student(long id, String major) {
+        return Student.builder().id(id).name("SV " + id).gpa(3).major(major).build();
+    }
+
+    @Test
+    void testEventsFollowFilterInVersionOrder() {
+        ChangeFeed feed = new ChangeFeed(new ChangeLog(100), 10);
+        ChangeFeed.Subscription all = feed.subscribe(ChangeFeed.Filter.ALL, () -> {});
+        ChangeFeed.Subscription cntt = feed.subscribe(new ChangeFeed.Filter("cntt", 0, Long.MAX_VALUE), () -> {});
+        ChangeFeed.Subscription range = feed.subscribe(new ChangeFeed.Filter(null, 10, 20), () -> {});
+
+        feed.inserted(student(1, "CNTT"));
+        Student moved = student(1, "KT");
+        feed.updated(moved, "CNTT");// rời khỏi filter cntt
+        feed.inserted(student(15, "KT"));
+        feed.deleted(15, "KT");
+
+        List<ChangeFeed.Event> allEvents = all.drain();
+        assertEquals(List.of(1L, 2L, 3L, 4L), allEvents.stream().map(ChangeFeed.Event::version).toList());
+        assertNull(allEvents.get(3).student());
+
+        List<ChangeFeed.Event> cnttEvents = cntt.drain();
+        assertEquals(2, cnttEvents.size());
+        assertEquals("CNTT", cnttEvents.get(0).student().getMajor());
+        assertNull(cnttEvents.get(1).student(), "đổi major ra khỏi filter thì nhận DELETE");
+        assertEquals(1, cnttEvents.get(1).id());
+
+        assertEquals(List.of(3L, 4L), range.drain().stream().map(ChangeFeed.Event::version).toList());
+        assertEquals(0, range.startVersion());
+    }
+
+    @Test
+    void testWakeupOnlyWhenQueueBecomesNonEmpty() {
+        ChangeFeed feed = new ChangeFeed(new ChangeLog(100), 10);
+        AtomicInteger wakeups = new AtomicInteger();
+        ChangeFeed.Subscription subscription = feed.subscribe(ChangeFeed.Filter.ALL, wakeups::incrementAndGet);
+
+        feed.inserted(student(1, "CNTT"));
+        feed.inserted(student(2, "CNTT"));
+        assertEquals(1, wakeups.get(), "chưa drain thì không báo lại");
+        assertEquals(2, subscription.drain().size());
+        assertTrue(subscription.drain().isEmpty());
+
+        feed.inserted(student(3, "CNTT"));
+        assertEquals(2, wakeups.get());
+
+        feed.unsubscribe(subscription);
+        feed.inserted(student(4, "CNTT"));
+        assertTrue(subscription.drain().isEmpty());
+        assertEquals(0, feed.subscribers());
+    }
+
+    @Test
+    void testSlowSubscriberIsDroppedAndResynced() {
+        ChangeFeed feed = new ChangeFeed(new ChangeLog(100), 3);
+        ChangeFeed.Subscription slow = feed.subscribe(ChangeFeed.Filter.ALL, () -> {});
+        for (long id = 1; id <= 5; id++) {
+            feed.inserted(student(id, "CNTT"));
+        }
+
+        // 3 sự kiện đầu đầy hàng đợi, sự kiện 4 làm bỏ hết, sự kiện 5 vào hàng đợi sau RESYNC
+        List<ChangeFeed.Event> events = slow.drain();
+        assertEquals(2, events.size());
+        assertTrue(events.get(0).resync());
+        assertEquals(4, events.get(0).version());
+        assertEquals(5, events.get(1).version());
+        assertEquals(1, feed.resyncs());
+    }
+
+    @Test
+    void testRowLockSerializesWritersOfSameId() throws InterruptedException {
+        ChangeFeed feed = new ChangeFeed(new ChangeLog(100), 10);
+        feed.lockRows(1, 257, 2);// 1 và 257 cùng stripe
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            feed.lockRows(257);
+            acquired.countDown();
+            feed.unlockRows(257);
+        });
+        other.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS), "ghi cùng id phải đợi publish xong");
+        feed.unlockRows(1, 257, 2);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        other.join();
+    }
+}
@@ -0,0 +1,57 @@
+import org.client_server.server.ChangeLog;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Chuỗi thay đổi cho CHANGES_SINCE: mỗi id chỉ trả 1 lần, reset khi epoch khác, version quá cũ hoặc quá nhiều thay đổi.
+ */
+public class ChangeLogTest {
+
+    @Test
+    void testChangesSinceAreDistinctIdsAfterVersion() {
+        ChangeLog log = new ChangeLog(16);
+        ChangeLog.Changes cursor = log.since(-1, 0, 100);
+        assertTrue(cursor.reset());
+        assertEquals(0, cursor.version());
+
+        log.record(5);
+        long afterFirst = log.record(7);
+        log.record(5);
+        log.record(9);
+        assertEquals(4, log.version());
+
+        ChangeLog.Changes all = log.since(0, log.epoch(), 100);
+        assertFalse(all.reset());
+        assertArrayEquals(new long[]{5, 7, 9}, all.ids());
+        assertEquals(4, all.version());
+
+        assertArrayEquals(new long[]{5, 9}, log.since(afterFirst, log.epoch(), 100).ids());
+        assertArrayEquals(new long[0], log.since(4, log.epoch(), 100).ids());
+    }
+
+    @Test
+    void testResetWhenVersionLeftTheRing() {
+        ChangeLog log = new ChangeLog(4);
+        for (long id = 1; id <= 6; id++) {
+            log.record(id);
+        }
+        assertTrue(log.since(1, log.epoch(), 100).reset(), "version 2 đã bị ghi đè");
+        assertArrayEquals(new long[]{3, 4, 5, 6}, log.since(2, log.epoch(), 100).ids());
+        assertTrue(log.since(7, log.epoch(), 100).reset(), "version lớn hơn version hiện tại");
+        assertTrue(log.since(2, log.epoch() + 1, 100).reset(), "epoch của lần chạy khác");
+    }
+
+    @Test
+    void testResetWhenTooManyChanges() {
+        ChangeLog log = new ChangeLog(100);
+        for (long id = 1; id <= 10; id++) {
+            log.record(id);
+        }
+        ChangeLog.Changes changes = log.since(0, log.epoch(), 5);
+        assertTrue(changes.reset());
+        assertEquals(0, changes.ids().length);
+        assertEquals(10, changes.version());
+        assertFalse(log.since(5, log.epoch(), 5).reset());
+    }
+}
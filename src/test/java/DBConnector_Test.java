@@ -1,7 +1,11 @@
+import org.client_server.util.ConnectionPool;
 import org.client_server.util.DBConnector;
 import org.junit.jupiter.api.Test;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,4 +20,50 @@ public class DBConnector_Test {
             LOGGER.info("Test thành công: kết nối hoạt động bình thường");
         }
     }
+
+    @Test
+    void testConnectionReturnedToPool() throws Exception{
+        try(Connection connection = DBConnector.getConnector()){
+            assertTrue(connection.isValid(2));
+            assertTrue(DBConnector.poolStats().active() >= 1, "Connection đang mượn phải được tính là active");
+        }
+        ConnectionPool.Stats stats = DBConnector.poolStats();
+        assertEquals(0, stats.active(), () -> "Sau khi close, connection phải trả về pool: " + stats);
+        assertTrue(stats.idle() >= 1);
+        LOGGER.info("Test thành công: " + stats);
+    }
+
+    @Test
+    void testPreparedStatementReusedFromCache() throws Exception{
+        long hitsBefore = DBConnector.poolStats().statementCacheHits();
+        for (int i = 0; i < 3; i++){
+            try(Connection connection = DBConnector.getConnector();
+                PreparedStatement statement = connection.prepareStatement("SELECT 1")){
+                assertTrue(statement.executeQuery().next());
+            }
+        }
+        ConnectionPool.Stats stats = DBConnector.poolStats();
+        assertTrue(stats.statementCacheHits() - hitsBefore >= 2, () -> "Lần prepare thứ 2 trở đi phải lấy từ cache: " + stats);
+        LOGGER.info("Test thành công: " + stats);
+    }
+
+    @Test
+    void testLeakedStatementUnusableAfterConnectionReturned() throws Exception{
+        Connection leakedConnection = DBConnector.getConnector();
+        PreparedStatement leaked = leakedConnection.prepareStatement("SELECT ?");
+        leakedConnection.close();// quên đóng statement, pool thu statement về cache
+
+        try(Connection connection = DBConnector.getConnector();
+            PreparedStatement statement = connection.prepareStatement("SELECT ?")){
+            statement.setInt(1, 42);
+            assertTrue(leaked.isClosed());
+            assertThrows(SQLException.class, () -> leaked.setInt(1, 7), "Proxy cũ không được dùng statement của người mượn sau");
+            leaked.close();// không được xóa tham số của người mượn sau
+            try (ResultSet rs = statement.executeQuery()){
+                assertTrue(rs.next());
+                assertEquals(42, rs.getInt(1));
+            }
+        }
+        LOGGER.info("Test thành công");
+    }
 }
@@ -0,0 +1,436 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.client_server.client.ClientService;
+import org.client_server.model.Sex;
+import org.client_server.model.Student;
+import org.client_server.util.LatencyHistogram;
+import org.client_server.util.WireFormat;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tạo tải lên 1 ServerProgram đang chạy bằng nhiều kết nối ClientService song song, mỗi kết nối 1 thread.
+ * - closed: mỗi kết nối gửi request kế tiếp ngay khi nhận response (cộng think ms)
+ * - open  : request đến theo lịch cố định rate request/giây, không phụ thuộc server trả lời nhanh hay chậm
+ *
+ * Coordinated omission: server chậm thì client gửi ít đi, nên nếu chỉ đo từ lúc gửi thì các lần chậm bị đếm thiếu.
+ * - open  : độ trễ tính từ thời điểm request lẽ ra được gửi theo lịch, không phải lúc thật sự gửi
+ * - closed: mỗi lần đo dài hơn khoảng gửi dự kiến (p50 lúc warmup + think) được bù thêm các mẫu
+ *           lẽ ra đã được gửi trong lúc chờ (như recordValueWithExpectedInterval của HdrHistogram), warmup=0 thì không bù
+ * Báo cáo có cả số chưa bù (service) để so sánh.
+ *
+ * Tìm điểm bão hòa: mode=open rateStep=500 steps=8 chạy lần lượt rate, rate+500, ... mỗi bước duration giây;
+ * điểm bão hòa là bước mà throughput không theo kịp rate còn p99 tăng vọt.
+ *
+ * Không phải JUnit test, chạy bằng main trên server đang chạy (mọi tham số dạng key=value, đều không bắt buộc):
+ *   java LoadGenerator host=localhost port=12345 connections=32 mode=closed duration=30 warmup=5
+ *                      mix=FIND:80,UPDATE:10,LIST:10 ids=1-1000 seed=0 think=0 format=json
+ *                      rate=1000 rateStep=0 steps=1
+ * mix hỗ trợ FIND, UPDATE, INSERT, LIST (trang 100 dòng), QUERY, SEARCH, STATS.
+ * seed=N: insert trước N student (BATCH_INSERT) rồi dùng id của chúng thay cho ids.
+ * Lưu ý rate limit của server (ratelimit.*) cũng được tính vào lỗi RATE_LIMITED.
+ */
+public class LoadGenerator {
+    private static final int PAGE_SIZE = 100;
+    private static final int SEED_BATCH = 1000;
+    private static final String IO_ERROR = "IO_ERROR";
+
+    enum Action {
+        FIND, UPDATE, INSERT, LIST, QUERY, SEARCH, STATS;
+
+        ObjectNode call(ClientService service, long id, ThreadLocalRandom random) throws IOException {
+            return switch (this) {
+                case FIND -> service.find(id);
+                case UPDATE -> service.update(Student.builder().id(id).gpa(randomGpa(random)).build());
+                case INSERT -> service.insert(randomStudent(random));
+                case LIST -> service.listPage(Math.max(0, id - 1), PAGE_SIZE);
+                case QUERY -> {
+                    double minGpa = randomGpa(random);
+                    yield service.query(minGpa, Math.min(4.0, minGpa + 0.5), null, null, null, null, 0, PAGE_SIZE);
+                }
+                case SEARCH -> service.search("nguyen", 20);
+                case STATS -> service.stats();
+            };
+        }
+    }
+
+    record Config(String host, int port, int connections, boolean open, double rate, double rateStep, int steps,
+                  int durationSeconds, int warmupSeconds, long thinkMs, Action[] mixActions, int[] mixWeights,
+                  long idFrom, long idTo, int seed, WireFormat format) {
+
+        static Config parse(String[] args) {
+            Map<String, String> options = new HashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq <= 0) throw new IllegalArgumentException("Tham số phải có dạng key=value: " + arg);
+                options.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+            }
+            String mode = options.getOrDefault("mode", "closed").toLowerCase();
+            if (!mode.equals("open") && !mode.equals("closed")) {
+                throw new IllegalArgumentException("mode phải là open hoặc closed");
+            }
+
+            List<Action> actions = new ArrayList<>();
+            List<Integer> weights = new ArrayList<>();
+            for (String part : options.getOrDefault("mix", "FIND:80,UPDATE:10,LIST:10").split(",")) {
+                String[] kv = part.split(":");
+                actions.add(Action.valueOf(kv[0].trim().toUpperCase()));
+                weights.add(kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1);
+            }
+            String[] ids = options.getOrDefault("ids", "1-1000").split("-");
+            WireFormat format = WireFormat.fromId(options.getOrDefault("format", "json"));
+            if (format == null) throw new IllegalArgumentException("format chỉ hỗ trợ json, smile");
+
+            return new Config(
+                    options.getOrDefault("host", "localhost"),
+                    Integer.parseInt(options.getOrDefault("port", "12345")),
+                    Integer.parseInt(options.getOrDefault("connections", "32")),
+                    mode.equals("open"),
+                    Double.parseDouble(options.getOrDefault("rate", "1000")),
+                    Double.parseDouble(options.getOrDefault("rateStep", "0")),
+                    Integer.parseInt(options.getOrDefault("steps", "1")),
+                    Integer.parseInt(options.getOrDefault("duration", "30")),
+                    Integer.parseInt(options.getOrDefault("warmup", "5")),
+                    Long.parseLong(options.getOrDefault("think", "0")),
+                    actions.toArray(new Action[0]),
+                    weights.stream().mapToInt(Integer::intValue).toArray(),
+                    Long.parseLong(ids[0].trim()),
+                    Long.parseLong(ids[ids.length - 1].trim()),
+                    Integer.parseInt(options.getOrDefault("seed", "0")),
+                    format);
+        }
+
+        Action pick(ThreadLocalRandom random) {
+            int total = Arrays.stream(mixWeights).sum();
+            int r = random.nextInt(total);
+            for (int i = 0; i < mixActions.length; i++) {
+                r -= mixWeights[i];
+                if (r < 0) return mixActions[i];
+            }
+            return mixActions[mixActions.length - 1];
+        }
+    }
+
+    // số liệu của 1 bước, chỉ ghi sau warmup
+    static final class Recorder {
+        final Map<Action, LatencyHistogram> corrected = new EnumMap<>(Action.class);
+        final Map<Action, LongAdder> requests = new EnumMap<>(Action.class);
+        final LatencyHistogram allCorrected = new LatencyHistogram();
+        final LatencyHistogram allService = new LatencyHistogram();
+        final LatencyHistogram warmup = new LatencyHistogram();
+        final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        final LongAccumulator lastDone = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        long measureFrom;
+
+        Recorder() {
+            for (Action action : Action.values()) {
+                corrected.put(action, new LatencyHistogram());
+                requests.put(action, new LongAdder());
+            }
+        }
+
+        void record(Action action, long correctedNanos, long serviceNanos, long doneNanos) {
+            corrected.get(action).record(correctedNanos);
+            allCorrected.record(correctedNanos);
+            allService.record(serviceNanos);
+            lastDone.accumulate(doneNanos);
+        }
+
+        // số request đo được / thời gian từ lúc hết warmup tới response cuối (request trễ lịch làm bước dài ra)
+        double throughput(long requests) {
+            long elapsed = lastDone.get() - measureFrom;
+            return elapsed <= 0 ? 0 : requests / (elapsed / 1e9);
+        }
+
+        void error(String code) {
+            errors.computeIfAbsent(code, c -> new LongAdder()).increment();
+        }
+    }
+
+    private final Config config;
+    private final long[] seededIds;
+
+    private LoadGenerator(Config config, long[] seededIds) {
+        this.config = config;
+        this.seededIds = seededIds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.parse(args);
+        long[] seeded = config.seed() > 0 ? seed(config) : null;
+        LoadGenerator generator = new LoadGenerator(config, seeded);
+
+        System.out.printf("%s, %d kết nối, mix %s, %d s warmup + %d s mỗi bước%n",
+                config.open() ? "open-loop" : "closed-loop", config.connections(), mixText(config),
+                config.warmupSeconds(), config.durationSeconds());
+        // mở sẵn mọi kết nối và gửi 1 request nạp class trước khi tính giờ, thời gian khởi động không bị tính là tồn đọng
+        ClientService[] services = new ClientService[config.connections()];
+        for (int i = 0; i < services.length; i++) {
+            services[i] = open(config);
+            services[i].find(generator.randomId(ThreadLocalRandom.current()));
+        }
+        int steps = config.open() ? Math.max(1, config.steps()) : 1;
+        for (int step = 0; step < steps; step++) {
+            double rate = config.rate() + step * config.rateStep();
+            generator.report(rate, generator.runStep(rate, services));
+        }
+        for (ClientService service : services) {
+            closeQuietly(service);
+        }
+        System.exit(0);
+    }
+
+    private static long[] seed(Config config) throws IOException {
+        List<Long> ids = new ArrayList<>(config.seed());
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (ClientService service = open(config)) {
+            for (int done = 0; done < config.seed(); done += SEED_BATCH) {
+                List<Student> batch = new ArrayList<>(SEED_BATCH);
+                for (int i = 0; i < Math.min(SEED_BATCH, config.seed() - done); i++) {
+                    batch.add(randomStudent(random));
+                }
+                ObjectNode response = service.insertAll(batch);
+                if (!"OK".equals(response.path("status").asText())) {
+                    throw new IOException("Không seed được dữ liệu: " + response);
+                }
+                for (JsonNode row : response.path("data")) {
+                    if (row.has("id")) ids.add(row.get("id").asLong());
+                }
+            }
+        }
+        System.out.printf("Đã seed %d students%n", ids.size());
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static ClientService open(Config config) throws IOException {
+        ClientService service = new ClientService(config.host(), config.port());
+        if (config.format() != WireFormat.JSON) service.hello(config.format());
+        return service;
+    }
+
+    // services[i] là kết nối của worker i, kết nối hỏng được mở lại và giữ cho bước sau
+    private Recorder runStep(double rate, ClientService[] services) throws InterruptedException {
+        Recorder recorder = new Recorder();
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(config.warmupSeconds());
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(config.durationSeconds());
+        recorder.measureFrom = measureFrom;
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        AtomicLong slots = new AtomicLong();
+        ExpectedInterval expected = new ExpectedInterval(recorder, TimeUnit.MILLISECONDS.toNanos(config.thinkMs()));
+
+        Thread[] workers = new Thread[services.length];
+        for (int i = 0; i < workers.length; i++) {
+            int index = i;
+            workers[i] = new Thread(() -> {
+                if (config.open()) {
+                    openLoop(services, index, recorder, start, measureFrom, end, intervalNanos, slots);
+                } else {
+                    closedLoop(services, index, recorder, measureFrom, end, expected);
+                }
+            }, "load-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return recorder;
+    }
+
+    // request thứ k lẽ ra được gửi lúc start + k * interval, dù kết nối nào rảnh trước
+    private void openLoop(ClientService[] services, int index, Recorder recorder,
+                          long start, long measureFrom, long end, long intervalNanos, AtomicLong slots) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            long intended = start + slots.getAndIncrement() * intervalNanos;
+            if (intended >= end) return;
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measuring = intended >= measureFrom;
+            if (services[index] == null) services[index] = connect(recorder, measuring);
+            if (services[index] == null) continue;
+            Action action = config.pick(random);
+            long sent = System.nanoTime();
+            if (!call(services[index], action, random, recorder, measuring)) {
+                closeQuietly(services[index]);
+                services[index] = null;
+                continue;
+            }
+            long done = System.nanoTime();
+            if (measuring) {
+                recorder.record(action, done - intended, done - sent, done);
+            }
+        }
+    }
+
+    private void closedLoop(ClientService[] services, int index, Recorder recorder,
+                            long measureFrom, long end, ExpectedInterval expected) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            boolean measuring = now >= measureFrom;
+            if (services[index] == null) services[index] = connect(recorder, measuring);
+            if (services[index] == null) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                continue;
+            }
+            Action action = config.pick(random);
+            if (!call(services[index], action, random, recorder, measuring)) {
+                closeQuietly(services[index]);
+                services[index] = null;
+                continue;
+            }
+            long done = System.nanoTime();
+            long latency = done - now;
+            if (!measuring) {
+                recorder.warmup.record(latency);
+            } else {
+                recorder.record(action, latency, latency, done);
+                // bù các request lẽ ra đã được gửi trong lúc chờ response này
+                long interval = expected.nanos();
+                for (long missing = latency - interval; interval > 0 && missing >= interval; missing -= interval) {
+                    recorder.corrected.get(action).record(missing);
+                    recorder.allCorrected.record(missing);
+                }
+            }
+            if (config.thinkMs() > 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(config.thinkMs()));
+            }
+        }
+    }
+
+    // false nếu kết nối hỏng (cần mở lại), response ERROR vẫn là 1 lần đo hợp lệ
+    private boolean call(ClientService service, Action action, ThreadLocalRandom random, Recorder recorder, boolean measuring) {
+        try {
+            ObjectNode response = action.call(service, randomId(random), random);
+            if (measuring) {
+                recorder.requests.get(action).increment();
+                if (!"OK".equals(response.path("status").asText())) {
+                    recorder.error(response.path("code").asText("UNKNOWN"));
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            if (measuring) recorder.error(IO_ERROR);
+            return false;
+        }
+    }
+
+    private ClientService connect(Recorder recorder, boolean measuring) {
+        try {
+            return open(config);
+        } catch (IOException e) {
+            if (measuring) recorder.error(IO_ERROR);
+            return null;
+        }
+    }
+
+    private long randomId(ThreadLocalRandom random) {
+        if (seededIds != null && seededIds.length > 0) {
+            return seededIds[random.nextInt(seededIds.length)];
+        }
+        return random.nextLong(config.idFrom(), config.idTo() + 1);
+    }
+
+    // closed-loop: khoảng gửi dự kiến của 1 kết nối = p50 lúc warmup + think, tính 1 lần khi hết warmup
+    private static final class ExpectedInterval {
+        private final Recorder recorder;
+        private final long thinkNanos;
+        private volatile long nanos = -1;
+
+        ExpectedInterval(Recorder recorder, long thinkNanos) {
+            this.recorder = recorder;
+            this.thinkNanos = thinkNanos;
+        }
+
+        long nanos() {
+            long value = nanos;
+            if (value < 0) {
+                synchronized (this) {
+                    if (nanos < 0) {
+                        LatencyHistogram.Snapshot warmup = recorder.warmup.snapshot();
+                        nanos = warmup.count() == 0 ? 0 : warmup.valueAt(0.5) + thinkNanos;
+                    }
+                    value = nanos;
+                }
+            }
+            return value;
+        }
+    }
+
+    private void report(double rate, Recorder recorder) {
+        long total = recorder.requests.values().stream().mapToLong(LongAdder::sum).sum();
+        double throughput = recorder.throughput(total);
+        System.out.println();
+        if (config.open()) {
+            System.out.printf("rate mục tiêu %.0f req/s -> đạt %.1f req/s%n", rate, throughput);
+        } else {
+            System.out.printf("throughput %.1f req/s%n", throughput);
+        }
+        System.out.printf("%-8s %10s %10s %10s %10s %10s%n", "action", "requests", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Action action : config.mixActions()) {
+            row(action.name(), recorder.requests.get(action).sum(), recorder.corrected.get(action).snapshot());
+        }
+        row("ALL", total, recorder.allCorrected.snapshot());
+        LatencyHistogram.Snapshot service = recorder.allService.snapshot();
+        System.out.printf("chưa bù coordinated omission: p50 %.2f ms, p99 %.2f ms, p999 %.2f ms%n",
+                millis(service.valueAt(0.5)), millis(service.valueAt(0.99)), millis(service.valueAt(0.999)));
+        if (recorder.errors.isEmpty()) {
+            System.out.println("lỗi: không có");
+        } else {
+            Map<String, Long> errors = new TreeMap<>();
+            recorder.errors.forEach((code, count) -> errors.put(code, count.sum()));
+            System.out.println("lỗi: " + errors);
+        }
+    }
+
+    private static void row(String name, long requests, LatencyHistogram.Snapshot s) {
+        System.out.printf("%-8s %10d %10.2f %10.2f %10.2f %10.2f%n", name, requests,
+                millis(s.valueAt(0.5)), millis(s.valueAt(0.99)), millis(s.valueAt(0.999)), millis(s.max()));
+    }
+
+    private static String mixText(Config config) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (int i = 0; i < config.mixActions().length; i++) {
+            joiner.add(config.mixActions()[i] + ":" + config.mixWeights()[i]);
+        }
+        return joiner.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static double randomGpa(ThreadLocalRandom random) {
+        return Math.round(random.nextDouble(0, 4) * 100) / 100.0;
+    }
+
+    private static Student randomStudent(ThreadLocalRandom random) {
+        return Student.builder()
+                .name("Nguyễn Văn " + random.nextInt(100_000))
+                .dob(LocalDate.of(1998, 1, 1).plusDays(random.nextInt(3650)))
+                .gpa(randomGpa(random))
+                .sex(random.nextBoolean() ? Sex.MALE : Sex.FEMALE)
+                .major(random.nextBoolean() ? "Công nghệ thông tin" : "Kinh tế")
+                .build();
+    }
+
+    private static void closeQuietly(ClientService service) {
+        if (service == null) return;
+        try {
+            service.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
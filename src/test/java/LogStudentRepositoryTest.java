@@ -0,0 +1,254 @@
+import lombok.extern.slf4j.Slf4j;
+import org.client_server.model.Sex;
+import org.client_server.model.Student;
+import org.client_server.server.LogStudentRepository;
+import org.client_server.server.StudentFilter;
+import org.client_server.server.StudentRepository;
+import org.client_server.storage.WriteAheadLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Engine lưu trữ nhúng: không cần MySQL, mỗi test dùng 1 thư mục tạm riêng.
+ */
+@Slf4j
+public class LogStudentRepositoryTest {
+    private static final LogStudentRepository.Settings SETTINGS =
+            new LogStudentRepository.Settings(64 * 1024, 1 << 20, 0, false, 0);
+
+    @TempDir
+    Path dir;
+
+    private static Student student(String name) {
+        return student(name, "Công nghệ thông tin");
+    }
+
+    private static Student student(String name, String major) {
+        return Student.builder()
+                .name(name)
+                .dob(LocalDate.parse("2001-10-01"))
+                .gpa(3.6)
+                .sex(Sex.FEMALE)
+                .major(major)
+                .build();
+    }
+
+    private static List<Long> ids(List<Student> students) {
+        return students.stream().map(Student::getId).toList();
+    }
+
+    @Test
+    void testCrudAndRecoverFromWal() throws Exception {
+        long keptId;
+        long deletedId;
+        try (LogStudentRepository repository = new LogStudentRepository(dir, SETTINGS)) {
+            keptId = repository.insert(student("Nguyễn Văn A"));
+            deletedId = repository.insert(student("Trần Thị B"));
+            assertEquals(deletedId, keptId + 1);
+
+            assertEquals(List.of(keptId, deletedId), ids(repository.findByIds(new long[]{keptId, deletedId, 999})),
+                    "id không tồn tại không có trong kết quả");
+
+            Student found = repository.findById(keptId).orElseThrow();
+            found.setGpa(2.5);
+            assertEquals(3.6, repository.findById(keptId).orElseThrow().getGpa(), "Sửa bản trả về không được đổi dữ liệu");
+            assertTrue(repository.update(found));
+            assertTrue(repository.delete(deletedId));
+            assertFalse(repository.delete(deletedId));
+        }
+
+        // mở lại: không có snapshot, toàn bộ trạng thái đọc lại từ WAL
+        try (LogStudentRepository repository = new LogStudentRepository(dir, SETTINGS)) {
+            Student recovered = repository.findById(keptId).orElseThrow();
+            assertEquals("Nguyễn Văn A", recovered.getName());
+            assertEquals(2.5, recovered.getGpa());
+            assertEquals(LocalDate.parse("2001-10-01"), recovered.getDob());
+            assertTrue(repository.findById(deletedId).isEmpty());
+            // id đã cấp không bị dùng lại sau khi xóa
+            assertEquals(deletedId + 1, repository.insert(student("Lê Văn C")));
+        }
+        log.info("Test thành công");
+    }
+
+    @Test
+    void testBatchReportsRowsThatFailed() throws Exception {
+        try (LogStudentRepository repository = new LogStudentRepository(dir, SETTINGS)) {
+            assertNull(repository.insertAll(List.of(student("Student A"))).get(0).error());
+            repository.close();
+            // lỗi ghi WAL không ném ra ngoài: các dòng từ dòng lỗi trở đi nhận error
+            List<StudentRepository.BatchRowResult> results = repository.insertAll(List.of(student("Student B"), student("Student C")));
+            assertEquals(2, results.size());
+            assertTrue(results.stream().allMatch(result -> result.error() != null && result.id() == -1));
+        }
+        log.info("Test thành công");
+    }
+
+    @Test
+    void testWalRecoverDropsEverythingAfterCorruptRecord() throws Exception {
+        Path path = dir.resolve("test.wal");
+        try (WriteAheadLog wal = WriteAheadLog.open(path, 4096, record -> fail("Log mới không có record"))) {
+            for (String text : List.of("aaaa", "bbbb", "cccc")) {
+                wal.append(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        // hỏng 1 byte nội dung của record giữa: record sau nó vẫn nguyên vẹn trên đĩa
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'x'}), 8 + 4 + 8);
+        }
+
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog wal = WriteAheadLog.open(path, 4096, record -> replayed.add(StandardCharsets.UTF_8.decode(record).toString()))) {
+            assertEquals(List.of("aaaa"), replayed);
+            // record mới có cùng độ dài, kết thúc đúng tại đầu record "cccc" cũ
+            wal.append(ByteBuffer.wrap("dddd".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        replayed.clear();
+        try (WriteAheadLog ignored = WriteAheadLog.open(path, 4096, record -> replayed.add(StandardCharsets.UTF_8.decode(record).toString()))) {
+            assertEquals(List.of("aaaa", "dddd"), replayed, "Record sau chỗ hỏng không được đọc lại");
+        }
+        log.info("Test thành công");
+    }
+
+    @Test
+    void testSnapshotCompactsWalAndRecovers() throws Exception {
+        List<Student> batch = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            batch.add(student("Student " + i));
+        }
+        try (LogStudentRepository repository = new LogStudentRepository(dir, SETTINGS)) {
+            List<StudentRepository.BatchRowResult> results = repository.insertAll(batch);
+            assertEquals(2000, results.size());
+            assertTrue(repository.delete(results.get(0).id()));
+
+            repository.snapshot();
+            assertTrue(Files.exists(dir.resolve("students.snapshot")));
+            assertFalse(Files.exists(dir.resolve("students-0.wal")), "WAL cũ phải bị xóa sau compaction");
+
+            Student changed = repository.findById(results.get(1).id()).orElseThrow();
+            changed.setMajor("IT");
+            assertTrue(repository.update(changed));
+        }
+
+        try (LogStudentRepository repository = new LogStudentRepository(dir, SETTINGS)) {
+            assertEquals(1999, repository.findAll().size());
+            List<Student> page = repository.findPage(0, 10);
+            assertEquals(10, page.size());
+            assertEquals("IT", page.get(0).getMajor(), "Thay đổi sau snapshot phải được đọc lại từ WAL mới");
+
+            long[] streamed = {0};
+            assertEquals(1999, repository.streamAll(s -> streamed[0]++));
+            assertEquals(1999, streamed[0]);
+        }
+        log.info("Test thành công");
+    }
+
+    @Test
+    void testRecoverWhenSnapshotStoppedAfterWalRotation() throws Exception {
+        Path oldSnapshot = dir.resolve("old.snapshot");
+        Path oldWal = dir.resolve("old.wal");
+        long a;
+        long b;
+        long c;
+        try (LogStudentRepository repository = new LogStudentRepository(dir, SETTINGS)) {
+            a = repository.insert(student("Student A"));
+            repository.snapshot();
+            b = repository.insert(student("Student B"));
+            // giữ lại trạng thái đĩa ngay trước lần snapshot sau: snapshot thế hệ 1 + WAL thế hệ 1
+            Files.copy(dir.resolve("students.snapshot"), oldSnapshot);
+            Files.copy(dir.resolve("students-1.wal"), oldWal);
+            repository.snapshot();
+            c = repository.insert(student("Student C"));
+        }
+        // như crash sau khi đã chuyển sang WAL thế hệ 2 nhưng chưa rename snapshot mới
+        Files.move(oldSnapshot, dir.resolve("students.snapshot"), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(oldWal, dir.resolve("students-1.wal"));
+
+        try (LogStudentRepository repository = new LogStudentRepository(dir, SETTINGS)) {
+            assertEquals(List.of(a, b, c), ids(repository.findAll()), "Phải đọc lại cả WAL thế hệ 1 và 2");
+            repository.snapshot();
+            assertFalse(Files.exists(dir.resolve("students-1.wal")));
+            assertFalse(Files.exists(dir.resolve("students-2.wal")));
+        }
+        try (LogStudentRepository repository = new LogStudentRepository(dir, SETTINGS)) {
+            assertEquals(List.of(a, b, c), ids(repository.findAll()));
+        }
+        log.info("Test thành công");
+    }
+
+    @Test
+    void testSearchFoldsDiacriticsAndFollowsWrites() throws Exception {
+        long nguyen;
+        long hoa;
+        long duc;
+        try (LogStudentRepository repository = new LogStudentRepository(dir, SETTINGS)) {
+            nguyen = repository.insert(student("Nguyễn Văn An", "Kinh tế"));
+            hoa = repository.insert(student("Trần Thị Hoa", "Công nghệ thông tin"));
+            duc = repository.insert(student("Đặng Đức Nguyên", "Công nghệ thông tin"));
+
+            assertEquals(List.of(nguyen, duc), ids(repository.search("nguyen", 10)), "Khớp nguyên từ trước, khớp tiền tố sau");
+            assertEquals(List.of(duc), ids(repository.search("DUC", 10)));
+            assertEquals(List.of(hoa, duc), ids(repository.search("cong nghe", 10)));
+            assertEquals(List.of(duc), ids(repository.search("nguy công", 10)), "Mọi từ đều phải khớp");
+            assertEquals(1, repository.search("nguy", 1).size());
+            assertTrue(repository.search("!!!", 10).isEmpty());
+
+            Student changed = repository.findById(hoa).orElseThrow();
+            changed.setMajor("Kinh tế");
+            assertTrue(repository.update(changed));
+            assertEquals(List.of(duc), ids(repository.search("thông tin", 10)));
+            assertTrue(repository.delete(nguyen));
+            assertEquals(List.of(hoa), ids(repository.search("kinh te", 10)));
+        }
+
+        // index tìm kiếm được dựng lại từ WAL khi mở lại
+        try (LogStudentRepository repository = new LogStudentRepository(dir, SETTINGS)) {
+            assertEquals(List.of(hoa), ids(repository.search("kinh", 10)));
+            assertEquals("Đặng Đức Nguyên", repository.search("dang", 10).get(0).getName());
+        }
+        log.info("Test thành công");
+    }
+
+    @Test
+    void testQueryFiltersWithKeyset() throws Exception {
+        try (LogStudentRepository repository = new LogStudentRepository(dir, SETTINGS)) {
+            List<Student> batch = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                Student s = student("Student " + i, i % 2 == 0 ? "CNTT" : "Kinh tế");
+                s.setGpa(i / 10.0);
+                s.setDob(LocalDate.parse("2000-01-01").plusMonths(i));
+                s.setSex(i % 3 == 0 ? Sex.MALE : Sex.FEMALE);
+                batch.add(s);
+            }
+            repository.insertAll(batch);
+
+            StudentFilter filter = new StudentFilter(1.0, 3.0, null, null, "cntt", null);
+            assertEquals(StudentFilter.GPA | StudentFilter.MAJOR, filter.shape());
+            List<Student> first = repository.query(filter, 0, 5);
+            assertEquals(5, first.size());
+            assertTrue(first.stream().allMatch(s -> s.getMajor().equals("CNTT") && s.getGpa() >= 1.0 && s.getGpa() <= 3.0));
+            List<Student> rest = repository.query(filter, first.get(4).getId(), 100);
+            assertEquals(6, rest.size(), "gpa 1.0..3.0 với i chẵn: 11 student");
+
+            StudentFilter dobAndSex = new StudentFilter(null, null, LocalDate.parse("2001-01-01"), null, null, Sex.MALE);
+            List<Student> born = repository.query(dobAndSex, 0, 100);
+            assertFalse(born.isEmpty());
+            assertTrue(born.stream().allMatch(s -> s.getSex() == Sex.MALE && !s.getDob().isBefore(LocalDate.parse("2001-01-01"))));
+            assertEquals(40, repository.query(new StudentFilter(null, null, null, null, null, null), 0, 100).size());
+        }
+        log.info("Test thành công");
+    }
+}
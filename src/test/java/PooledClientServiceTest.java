@@ -0,0 +1,148 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.client_server.client.PooledClientService;
+import org.client_server.util.WireFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pool kết nối phía client trên 1 server giả (JSON theo dòng): FIND chờ 200 ms, PING trả PONG,
+ * DELETE đóng kết nối giữa chừng. Không cần MySQL.
+ */
+public class PooledClientServiceTest {
+    private static final long FIND_MS = 200;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger maxOpenConnections = new AtomicInteger();
+    private ServerSocket serverSocket;
+    private ExecutorService serverThreads;
+
+    @BeforeEach
+    void startFakeServer() throws IOException {
+        serverSocket = new ServerSocket(0);
+        serverThreads = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "fake-server");
+            t.setDaemon(true);
+            return t;
+        });
+        serverThreads.execute(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    serverThreads.execute(() -> serve(socket));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    @AfterEach
+    void stopFakeServer() throws IOException {
+        serverSocket.close();
+        serverThreads.shutdownNow();
+    }
+
+    private void serve(Socket socket) {
+        maxOpenConnections.accumulateAndGet(openConnections.incrementAndGet(), Math::max);
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode request = mapper.readTree(line);
+                String response = switch (request.path("action").asText()) {
+                    case "FIND" -> {
+                        Thread.sleep(FIND_MS);
+                        yield "{\"status\":\"OK\",\"data\":{\"id\":" + request.path("payload").path("id").asLong() + "}}";
+                    }
+                    case "PING" -> "{\"status\":\"OK\",\"message\":\"PONG\"}";
+                    case "DELETE" -> null;
+                    default -> "{\"status\":\"ERROR\",\"code\":\"UNKNOWN_ACTION\"}";
+                };
+                if (response == null) return;
+                writer.write(response + "\n");
+                writer.flush();
+            }
+        } catch (IOException | InterruptedException ignored) {
+        } finally {
+            openConnections.decrementAndGet();
+        }
+    }
+
+    private PooledClientService pool(int maxConnections, long borrowTimeoutMs) {
+        return new PooledClientService("localhost", serverSocket.getLocalPort(), new PooledClientService.Settings(
+                0, maxConnections, borrowTimeoutMs, 60_000, 60_000, WireFormat.JSON));
+    }
+
+    @Test
+    void testParallelCallsUseSeparateConnections() throws Exception {
+        try (PooledClientService pool = pool(4, 5_000)) {
+            ExecutorService callers = Executors.newFixedThreadPool(8);
+            long started = System.nanoTime();
+            List<Future<JsonNode>> results = new ArrayList<>();
+            for (int i = 1; i <= 8; i++) {
+                long id = i;
+                results.add(callers.submit(() -> pool.find(id)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                JsonNode response = results.get(i).get(5, TimeUnit.SECONDS);
+                assertEquals("OK", response.path("status").asText());
+                assertEquals(i + 1, response.path("data").path("id").asLong(), "response không bị lẫn giữa các thread");
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            callers.shutdown();
+
+            // 8 request x 200 ms trên 4 kết nối: khoảng 2 lượt, tuần tự sẽ mất 1600 ms
+            assertTrue(elapsedMs < 6 * FIND_MS, "không chạy song song: " + elapsedMs + " ms");
+            assertTrue(maxOpenConnections.get() <= 4);
+            PooledClientService.Stats stats = pool.poolStats();
+            assertEquals(0, stats.active());
+            assertTrue(stats.total() <= 4 && stats.idle() == stats.total());
+        }
+    }
+
+    @Test
+    void testBorrowTimesOutWhenAllConnectionsBusy() throws Exception {
+        try (PooledClientService pool = pool(1, 50)) {
+            CompletableFuture<JsonNode> slow = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return pool.find(1);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Thread.sleep(FIND_MS / 4);
+            IOException e = assertThrows(IOException.class, () -> pool.find(2));
+            assertTrue(e.getMessage().startsWith("Hết thời gian chờ kết nối"), e.getMessage());
+            assertEquals("OK", slow.get(5, TimeUnit.SECONDS).path("status").asText());
+        }
+    }
+
+    @Test
+    void testBrokenConnectionIsDiscardedAndReplaced() throws Exception {
+        try (PooledClientService pool = pool(2, 1_000)) {
+            assertEquals("PONG", pool.ping().path("message").asText());
+            assertThrows(IOException.class, () -> pool.delete(1));// server đóng kết nối giữa chừng
+            PooledClientService.Stats afterError = pool.poolStats();
+            assertEquals(1, afterError.broken());
+            assertEquals(0, afterError.total());
+
+            assertEquals("OK", pool.find(3).path("status").asText());
+            assertEquals(2, pool.poolStats().created());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+import org.client_server.server.ServerMetrics;
+import org.client_server.util.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Phân vị của histogram phải nằm trong sai số của bucket, số liệu của registry phải khớp với những gì đã ghi.
+ */
+public class ServerMetricsTest {
+
+    @Test
+    void testHistogramQuantilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(10_000, snapshot.count());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(10_000), snapshot.max());
+        assertEquals(5_000_500, snapshot.mean(), 1);
+        assertWithin(TimeUnit.MICROSECONDS.toNanos(5_000), snapshot.valueAt(0.5));
+        assertWithin(TimeUnit.MICROSECONDS.toNanos(9_900), snapshot.valueAt(0.99));
+        assertWithin(TimeUnit.MICROSECONDS.toNanos(9_990), snapshot.valueAt(0.999));
+        assertEquals(snapshot.max(), snapshot.valueAt(1.0));
+    }
+
+    @Test
+    void testEmptyHistogram() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.count());
+        assertEquals(0, snapshot.valueAt(0.99));
+        assertEquals(0, snapshot.mean());
+    }
+
+    @Test
+    void testSnapshotSeparatesDbTimeAndErrors() {
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.gauge("test_queue_depth", "Gauge thử", () -> 7);
+
+        long received = System.nanoTime();
+        metrics.requestStarted();
+        metrics.dbCall("findById", System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.requestFinished("FIND", received, received - TimeUnit.MILLISECONDS.toNanos(5));
+
+        metrics.requestStarted();
+        metrics.error("ID_NOT_EXIST");
+        metrics.requestFinished("FIND", received, received);
+        metrics.bytesIn(30);
+        metrics.bytesOut(120);
+
+        ServerMetrics.Snapshot snapshot = metrics.snapshot();
+        ServerMetrics.ActionStats find = snapshot.actions().get("FIND");
+        assertEquals(2, find.requests());
+        assertEquals(2, find.db().count());
+        assertTrue(find.db().maxMs() >= 3, "request đầu có ít nhất 3 ms DB");
+        assertEquals(0, find.db().p50Ms(), "request thứ 2 không gọi DB");
+        assertTrue(find.dbShare() > 0 && find.dbShare() <= 1);
+        assertEquals(1, snapshot.errors().get("ID_NOT_EXIST").longValue());
+        assertEquals(30, snapshot.bytesIn());
+        assertEquals(120, snapshot.bytesOut());
+        assertEquals(7, snapshot.gauges().get("test_queue_depth"));
+    }
+
+    @Test
+    void testPrometheusFormat() {
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.counter("test_rejected_total", "Counter thử", () -> 3L);
+        long now = System.nanoTime();
+        metrics.requestStarted();
+        metrics.requestFinished("LIST", now, now);
+        metrics.error("DB_ERROR");
+
+        String text = metrics.prometheus();
+        assertTrue(text.contains("# TYPE server_request_duration_seconds summary\n"));
+        assertTrue(text.contains("server_requests_total{action=\"LIST\"} 1\n"));
+        assertTrue(text.contains("server_request_duration_seconds{action=\"LIST\",quantile=\"0.99\"} "));
+        assertTrue(text.contains("server_request_duration_seconds_count{action=\"LIST\"} 1\n"));
+        assertTrue(text.contains("server_errors_total{code=\"DB_ERROR\"} 1\n"));
+        assertTrue(text.contains("# TYPE test_rejected_total counter\ntest_rejected_total 3\n"));
+        for (String line : text.split("\n")) {
+            assertTrue(line.startsWith("#") || line.matches("[a-z_]+(\\{[^}]*})? \\S+"), line);
+        }
+    }
+
+    @Test
+    void testRegisteringSameNameReplacesMeter() {
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.gauge("test_pool_size", "Gauge thử", () -> 1);
+        metrics.gauge("test_pool_size", "Gauge thử", () -> 2);// main chạy lần 2 trong cùng JVM
+
+        String text = metrics.prometheus();
+        assertEquals(1, text.split("# TYPE test_pool_size ", -1).length - 1, "Không được có 2 series trùng tên");
+        assertTrue(text.contains("test_pool_size 2\n"));
+        assertEquals(2, metrics.snapshot().gauges().get("test_pool_size"));
+    }
+
+    // cận trên của bucket: không nhỏ hơn giá trị thật và lệch tối đa 1/16
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16,
+                "mong đợi ~" + expected + " nhưng là " + actual);
+    }
+}
@@ -0,0 +1,103 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.client_server.server.ServerProgram;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * So sánh chế độ thread pool (platform thread) và virtual thread của ServerProgram.
+ * Mỗi client liên tục: mở kết nối -> FIND -> đọc response -> đóng, đo connections/sec và p99 latency.
+ * Chỉ response có status OK mới được tính (và lấy mẫu latency), BUSY/ERROR/mất kết nối đếm riêng
+ * để lúc quá tải không bị đọc thành throughput cao hơn.
+ *
+ * Không phải JUnit test, chạy bằng main (cần MySQL như các integration test).
+ * Mỗi lần chạy chỉ 1 chế độ trong 1 JVM (giới hạn DB của virtual là static), so sánh bằng 2 lần chạy:
+ *   java ServerModeBenchmark pool|virtual [số client] [số giây] [id cần FIND]
+ */
+public class ServerModeBenchmark {
+    private static final int BASE_PORT = 22345;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "pool";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        long findId = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        startServer(mode, BASE_PORT);
+        run(mode, BASE_PORT, clients, seconds, findId);
+        System.exit(0);
+    }
+
+    private static void startServer(String mode, int port) throws InterruptedException {
+        Thread server = new Thread(() -> ServerProgram.main(new String[]{mode, String.valueOf(port)}), "bench-server-" + mode);
+        server.setDaemon(true);
+        server.start();
+        TimeUnit.SECONDS.sleep(1);
+    }
+
+    private static void run(String mode, int port, int clients, int seconds, long findId) throws Exception {
+        ObjectNode request = mapper.createObjectNode();
+        request.put("action", "FIND");
+        request.set("payload", mapper.createObjectNode().put("id", findId));
+        byte[] line = (mapper.writeValueAsString(request) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        ConcurrentLinkedQueue<long[]> samples = new ConcurrentLinkedQueue<>();
+        AtomicLong errors = new AtomicLong();// mất kết nối, timeout
+        AtomicLong rejected = new AtomicLong();// response không phải OK (BUSY, RATE_LIMITED, DB_ERROR...)
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        for (int c = 0; c < clients; c++) {
+            pool.submit(() -> {
+                long[] latencies = new long[1 << 16];
+                int n = 0;
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try (Socket socket = new Socket("localhost", port)) {
+                        socket.setSoTimeout(30000);
+                        OutputStream out = socket.getOutputStream();
+                        out.write(line);
+                        out.flush();
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                        String reply = reader.readLine();
+                        if (reply == null) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        if (!"OK".equals(mapper.readTree(reply).path("status").asText())) {
+                            rejected.incrementAndGet();
+                            continue;
+                        }
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                        continue;
+                    }
+                    if (n == latencies.length) latencies = Arrays.copyOf(latencies, n * 2);
+                    latencies[n++] = System.nanoTime() - start;
+                }
+                samples.add(Arrays.copyOf(latencies, n));
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+
+        long[] all = samples.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        double connPerSec = all.length / (double) seconds;
+        System.out.printf("%-8s clients=%d  connections/sec=%.1f  p50=%.2f ms  p99=%.2f ms  max=%.2f ms  rejected=%d  errors=%d%n",
+                mode, clients, connPerSec,
+                percentile(all, 0.50), percentile(all, 0.99),
+                all.length == 0 ? 0 : all[all.length - 1] / 1e6, rejected.get(), errors.get());
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+}
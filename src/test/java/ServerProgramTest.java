@@ -4,7 +4,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.extern.slf4j.Slf4j;
+import org.client_server.client.ClientService;
 import org.client_server.server.ServerProgram;
+import org.client_server.util.WireFormat;
 import org.junit.jupiter.api.*;
 
 import java.io.*;
@@ -208,6 +210,96 @@ public class ServerProgramTest {
             assertEquals("ID_NOT_EXIST", findResp3.path("code").asText());
         }
 
+        @Test
+        @DisplayName("Paged LIST walks through inserted students using the next token")
+        void testListPage() throws Exception {
+            long first = insertStudentReturningId("tst-" + UUID.randomUUID().toString().substring(0, 8));
+            long second = insertStudentReturningId("tst-" + UUID.randomUUID().toString().substring(0, 8));
+
+            ObjectNode req = mapper.createObjectNode();
+            req.put("action", "list");
+            req.set("payload", mapper.createObjectNode().put("afterId", first - 1).put("limit", 1));
+            ObjectNode page1 = sendRequest(req);
+            assertEquals("OK", page1.path("status").asText());
+            assertEquals(1, page1.path("data").size());
+            assertEquals(first, page1.path("data").get(0).path("id").asLong());
+            assertEquals(first, page1.path("next").asLong(), "Còn dữ liệu thì next phải là id cuối của trang");
+
+            req.set("payload", mapper.createObjectNode().put("afterId", page1.path("next").asLong()).put("limit", 1));
+            ObjectNode page2 = sendRequest(req);
+            assertEquals(second, page2.path("data").get(0).path("id").asLong());
+
+            req.set("payload", mapper.createObjectNode().put("afterId", first).put("limit", 0));
+            assertEquals("INVALID_LIMIT", sendRequest(req).path("code").asText());
+        }
+
+        @Test
+        @DisplayName("Streaming LIST sends one ROW per student and an END frame")
+        void testListStream() throws Exception {
+            String name = "tst-" + UUID.randomUUID().toString().substring(0, 8);
+            insertStudentReturningId(name);
+
+            try (Socket socket = new Socket("localhost", PORT);
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+
+                socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(5));
+                ObjectNode req = mapper.createObjectNode();
+                req.put("action", "list");
+                req.set("payload", mapper.createObjectNode().put("stream", true));
+                writer.write(mapper.writeValueAsString(req));
+                writer.write("\n");
+                writer.flush();
+
+                long rows = 0;
+                boolean found = false;
+                JsonNode frame;
+                while (!(frame = mapper.readTree(reader.readLine())).has("status")) {
+                    assertEquals("ROW", frame.path("type").asText());
+                    if (name.equals(frame.path("data").path("name").asText())) found = true;
+                    rows++;
+                }
+                assertEquals("OK", frame.path("status").asText());
+                assertEquals("END", frame.path("type").asText());
+                assertEquals(rows, frame.path("count").asLong(), "count của END phải bằng số dòng ROW");
+                assertTrue(found, "Stream phải chứa student vừa insert");
+            }
+        }
+
+        @Test
+        @DisplayName("BATCH_INSERT returns an id for valid rows and an error for invalid rows")
+        void testBatchInsert() throws Exception {
+            String name = "tst-" + UUID.randomUUID().toString().substring(0, 8);
+            ObjectNode req = mapper.createObjectNode();
+            req.put("action", "batch_insert");
+            ArrayNode students = req.putObject("payload").putArray("students");
+            students.addObject().put("name", name).put("dob", "2000-01-12").put("gpa", 3.1).put("sex", "female").put("major", "IT");
+            students.addObject().put("name", name + "-bad").put("dob", "2000-01-12").put("gpa", 9).put("sex", "male").put("major", "IT");
+
+            ObjectNode resp = sendRequest(req);
+            assertEquals("OK", resp.path("status").asText());
+            assertEquals(1, resp.path("succeeded").asInt());
+            assertEquals(1, resp.path("failed").asInt());
+            assertTrue(resp.path("data").get(0).path("id").asLong() > 0);
+            assertEquals("INVALID_GPA", resp.path("data").get(1).path("code").asText());
+            assertEquals(resp.path("data").get(0).path("id").asLong(), findStudentIdByName(name));
+        }
+
+        @Test
+        @DisplayName("HELLO smile switches later requests to length-prefixed binary frames")
+        void testHelloSmile() throws Exception {
+            try (ClientService client = new ClientService("localhost", PORT)) {
+                ObjectNode hello = client.hello(WireFormat.SMILE);
+                assertEquals("OK", hello.path("status").asText());
+                assertEquals("smile", hello.path("format").asText());
+
+                ObjectNode resp = client.listPage(0, 5);
+                assertEquals("OK", resp.path("status").asText());
+                assertTrue(resp.path("data").isArray());
+                assertEquals("OK", client.quit().path("status").asText());
+            }
+        }
+
         @Test
         @DisplayName("QUIT should close the socket from server side")
         void testQuitClosesSocket() throws Exception {
@@ -288,6 +380,42 @@ public class ServerProgramTest {
             assertEquals("MISSING_PAYLOAD", resp.path("code").asText());
         }
 
+        @Test
+        @DisplayName("HELLO with an unsupported format returns UNSUPPORTED_FORMAT")
+        void testHelloUnsupportedFormat() throws Exception {
+            ObjectNode req = mapper.createObjectNode();
+            req.put("action", "hello");
+            req.set("payload", mapper.createObjectNode().put("format", "xml"));
+
+            ObjectNode resp = sendRequest(req);
+            assertEquals("ERROR", resp.path("status").asText());
+            assertEquals("UNSUPPORTED_FORMAT", resp.path("code").asText());
+        }
+
+        @Test
+        @DisplayName("SEARCH with blank query returns INVALID_QUERY")
+        void testSearchBlankQuery() throws Exception {
+            ObjectNode req = mapper.createObjectNode();
+            req.put("action", "SEARCH");
+            req.set("payload", mapper.createObjectNode().put("query", "   "));
+
+            ObjectNode resp = sendRequest(req);
+            assertEquals("ERROR", resp.path("status").asText());
+            assertEquals("INVALID_QUERY", resp.path("code").asText());
+        }
+
+        @Test
+        @DisplayName("QUERY with minGpa > maxGpa returns INVALID_GPA")
+        void testQueryInvalidGpaRange() throws Exception {
+            ObjectNode req = mapper.createObjectNode();
+            req.put("action", "QUERY");
+            req.set("payload", mapper.createObjectNode().put("minGpa", 3.5).put("maxGpa", 2.0));
+
+            ObjectNode resp = sendRequest(req);
+            assertEquals("ERROR", resp.path("status").asText());
+            assertEquals("INVALID_GPA", resp.path("code").asText());
+        }
+
         @Test
         @DisplayName("Unknown action returns UNKNOWN_ACTION")
         void testUnknownAction() throws Exception {
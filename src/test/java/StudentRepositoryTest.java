@@ -1,7 +1,7 @@
 import lombok.extern.slf4j.Slf4j;
 import org.client_server.model.Sex;
 import org.client_server.model.Student;
-import org.client_server.server.StudentRepository;
+import org.client_server.server.JdbcStudentRepository;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDate;
@@ -11,7 +11,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 @Slf4j
 public class StudentRepositoryTest {
-    private StudentRepository repository = new StudentRepository();
+    private JdbcStudentRepository repository = new JdbcStudentRepository();
 
     @Test
     void testInsertAndFindAll() {
@@ -34,4 +34,33 @@ public class StudentRepositoryTest {
         log.info("Test thành công");
 
     }
+
+    @Test
+    void testFindByIdReadsThroughCacheAndInvalidatesOnWrite() {
+        Student student = Student.builder()
+                .name("Cache")
+                .dob(LocalDate.parse("2001-10-01"))
+                .gpa(3.0)
+                .sex(Sex.MALE)
+                .major("IT")
+                .build();
+        long id = repository.insert(student);
+
+        repository.findById(id);
+        long hitsBefore = JdbcStudentRepository.cacheStats().orElseThrow().hits();
+        Student cached = repository.findById(id).orElseThrow();
+        assertEquals(hitsBefore + 1, JdbcStudentRepository.cacheStats().orElseThrow().hits(), "Lần đọc thứ 2 phải lấy từ cache");
+
+        // sửa bản trả về không được làm bẩn cache
+        cached.setName("Đã sửa ngoài cache");
+        assertEquals("Cache", repository.findById(id).orElseThrow().getName());
+
+        cached.setName("Cache updated");
+        assertTrue(repository.update(cached));
+        assertEquals("Cache updated", repository.findById(id).orElseThrow().getName(), "Update phải invalidate cache");
+
+        assertTrue(repository.delete(id));
+        assertTrue(repository.findById(id).isEmpty(), "Delete phải invalidate cache");
+        log.info("Test thành công: {}", JdbcStudentRepository.cacheStats().orElseThrow());
+    }
 }
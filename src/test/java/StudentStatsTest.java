@@ -0,0 +1,88 @@
+import lombok.extern.slf4j.Slf4j;
+import org.client_server.model.Sex;
+import org.client_server.model.Student;
+import org.client_server.server.LogStudentRepository;
+import org.client_server.server.StudentStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Thống kê giữ sẵn phải khớp với dữ liệu sau mọi lần ghi, dùng engine log nên không cần MySQL.
+ */
+@Slf4j
+public class StudentStatsTest {
+    private static final LogStudentRepository.Settings SETTINGS =
+            new LogStudentRepository.Settings(64 * 1024, 1 << 20, 0, false, 0);
+
+    @TempDir
+    Path dir;
+
+    private static Student student(double gpa, Sex sex, String major) {
+        return Student.builder()
+                .name("Student")
+                .dob(LocalDate.parse("2002-05-20"))
+                .gpa(gpa)
+                .sex(sex)
+                .major(major)
+                .build();
+    }
+
+    // ghi qua repository rồi báo cho stats, giống ClientHandler
+    private static long insert(LogStudentRepository repository, StudentStats stats, Student student) {
+        long id = repository.insert(student);
+        stats.put(student);
+        return id;
+    }
+
+    @Test
+    void testIncrementalUpdatesMatchReconcile() throws Exception {
+        try (LogStudentRepository repository = new LogStudentRepository(dir, SETTINGS)) {
+            StudentStats stats = new StudentStats(repository);
+            insert(repository, stats, student(3.0, Sex.MALE, "CNTT"));
+
+            // seed từ dữ liệu có sẵn
+            StudentStats.Snapshot seeded = stats.snapshot();
+            assertEquals(1, seeded.total().count());
+            assertNotNull(seeded.reconciledAt());
+
+            long low = insert(repository, stats, student(1.0, Sex.FEMALE, "CNTT"));
+            long high = insert(repository, stats, student(4.0, Sex.FEMALE, "Kinh tế"));
+
+            StudentStats.Snapshot snapshot = stats.snapshot();
+            assertEquals(3, snapshot.total().count());
+            assertEquals(8.0 / 3, snapshot.total().avgGpa(), 1e-9);
+            assertEquals(2, snapshot.byMajor().get("CNTT").count());
+            assertEquals(1.0, snapshot.byMajor().get("CNTT").minGpa());
+            assertEquals(2, snapshot.bySex().get(Sex.FEMALE).count());
+
+            // xóa phần tử đang là min: min mới lấy từ TreeMap, không duyệt lại
+            assertTrue(repository.delete(low));
+            stats.remove(low);
+            // đổi nhóm: Kinh tế rỗng thì không còn trong byMajor
+            Student moved = repository.findById(high).orElseThrow();
+            moved.setMajor("CNTT");
+            moved.setSex(Sex.OTHER);
+            assertTrue(repository.update(moved));
+            stats.put(moved);
+
+            snapshot = stats.snapshot();
+            assertEquals(2, snapshot.total().count());
+            assertEquals(3.0, snapshot.byMajor().get("CNTT").minGpa());
+            assertEquals(4.0, snapshot.byMajor().get("CNTT").maxGpa());
+            assertFalse(snapshot.byMajor().containsKey("Kinh tế"));
+            assertFalse(snapshot.bySex().containsKey(Sex.FEMALE));
+
+            stats.reconcile();
+            StudentStats.Snapshot reconciled = stats.snapshot();
+            assertEquals(snapshot.total(), reconciled.total());
+            assertEquals(snapshot.byMajor(), reconciled.byMajor());
+            assertEquals(snapshot.bySex(), reconciled.bySex());
+        }
+        log.info("Test thành công");
+    }
+}
@@ -0,0 +1,80 @@
+import org.client_server.util.TimerWheel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Timer wheel: không chạy sớm, trễ tối đa khoảng 1 tick, hủy được, hạn dài hơn 1 vòng wheel vẫn đúng.
+ */
+public class TimerWheelTest {
+    private static final long TICK_MS = 10;
+
+    private final TimerWheel wheel = new TimerWheel("test-timer", TICK_MS, 8);
+
+    @AfterEach
+    void close() {
+        wheel.close();
+    }
+
+    @Test
+    void testFiresAfterDelayInOrder() throws InterruptedException {
+        List<Integer> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        long started = System.nanoTime();
+        long[] firedAfterMs = new long[3];
+        // 8 ô x 10 ms: 250 ms phải đi hơn 3 vòng wheel
+        int[] delays = {250, 30, 120};
+        for (int i = 0; i < delays.length; i++) {
+            int index = i;
+            wheel.schedule(() -> {
+                firedAfterMs[index] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                fired.add(delays[index]);
+                done.countDown();
+            }, delays[i], TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of(30, 120, 250), fired);
+        for (int i = 0; i < delays.length; i++) {
+            assertTrue(firedAfterMs[i] >= delays[i], "chạy sớm: " + firedAfterMs[i] + " < " + delays[i]);
+            assertTrue(firedAfterMs[i] < delays[i] + 200, "trễ quá nhiều: " + firedAfterMs[i]);
+        }
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    void testCancelledTimeoutNeverRuns() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        TimerWheel.Timeout cancelled = wheel.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        CountDownLatch later = new CountDownLatch(1);
+        wheel.schedule(later::countDown, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel(), "hủy lần 2 không có tác dụng");
+        assertEquals(1, wheel.pending());
+        assertTrue(later.await(2, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+        assertFalse(cancelled.isExpired());
+    }
+
+    @Test
+    void testManyTimeoutsAndFailingTask() throws InterruptedException {
+        int count = 10_000;
+        CountDownLatch done = new CountDownLatch(count);
+        wheel.schedule(() -> {
+            throw new IllegalStateException("task lỗi không làm dừng wheel");
+        }, 0, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < count; i++) {
+            wheel.schedule(done::countDown, i % 200, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, wheel.pending());
+    }
+}